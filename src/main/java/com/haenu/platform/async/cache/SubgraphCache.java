@@ -0,0 +1,248 @@
+package com.haenu.platform.async.cache;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 子图结果缓存：key为子图的输入，value为子图中每个节点的结果（节点id -> 结果）。
+ * <p>
+ * 按条目数限制大小，超出时淘汰最久未访问的条目（LRU），条目保存在堆上。
+ * 同一个key同时只有一个run执行子图（single-flight），其余run等待它的结果，执行失败时等待的run各自执行。
+ * 执行者持有一个租约，到期仍未complete或fail时（如成员一直没有结束）视为放弃，等待的run各自执行，下一个run重新成为执行者。
+ * 缓存的结果会被多个run共享，子图中任务的返回值不应再被修改。
+ * 一个SubgraphCache只用于一种子图，不同子图的key可能相同，应使用各自的缓存。
+ */
+public class SubgraphCache {
+    private final int maxEntries;
+    private final Map<Object, Map<String, Object>> entries;
+    private final ConcurrentHashMap<Object, Loading> loading = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong waits = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+
+    public SubgraphCache(int maxEntries) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be positive");
+        }
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<Object, Map<String, Object>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Object, Map<String, Object>> eldest) {
+                if (size() > SubgraphCache.this.maxEntries) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * 查找key对应的结果，成为执行者时不设租约
+     */
+    public CompletableFuture<Map<String, Object>> lookup(Object key) {
+        return lookup(key, null, Long.MAX_VALUE);
+    }
+
+    /**
+     * 查找key对应的结果：
+     * 命中时返回已完成的future；其他run正在执行这个子图时返回它的future，执行失败或租约到期时future的结果为null；
+     * 都没有时返回null，调用方成为这个key的执行者，之后必须用同一个owner调用complete或fail。
+     *
+     * @param owner 执行者标识，complete、fail只释放自己的执行，不会误释放租约到期后新执行者的
+     * @param lease 租约，毫秒，通常取执行者所在run的剩余时间
+     */
+    public CompletableFuture<Map<String, Object>> lookup(Object key, Object owner, long lease) {
+        Map<String, Object> values = get(key);
+        if (values != null) {
+            hits.incrementAndGet();
+            return CompletableFuture.completedFuture(values);
+        }
+        long now = System.nanoTime();
+        long leaseNanos = TimeUnit.MILLISECONDS.toNanos(lease);
+        Loading created = new Loading(owner, leaseNanos == Long.MAX_VALUE ? Long.MAX_VALUE : now + leaseNanos);
+        while (true) {
+            Loading pending = loading.putIfAbsent(key, created);
+            if (pending == null) {
+                break;
+            }
+            if (!pending.expired(now)) {
+                waits.incrementAndGet();
+                return pending.future;
+            }
+            //上一个执行者的租约已到期，放弃它，等待它的run各自执行，自己重新成为执行者
+            release(key, pending, true);
+        }
+        //get和putIfAbsent之间，上一个执行者可能刚好完成，complete先写入缓存再移除future，这里再查一次即可
+        values = get(key);
+        if (values != null) {
+            loading.remove(key, created);
+            created.future.complete(values);
+            hits.incrementAndGet();
+            return created.future;
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * 等待执行者的run还能等多久：执行者的租约剩余时间，毫秒，没有正在执行的执行者时返回0
+     */
+    public long leaseLeft(Object key) {
+        Loading pending = loading.get(key);
+        if (pending == null) {
+            return 0;
+        }
+        if (pending.deadlineNanos == Long.MAX_VALUE) {
+            return Long.MAX_VALUE;
+        }
+        //向上取整，等到租约确实到期
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(pending.deadlineNanos - System.nanoTime() + 999_999));
+    }
+
+    /**
+     * 执行者的租约到期时放弃它，唤醒等待的run各自执行，返回是否放弃了
+     */
+    public boolean expire(Object key) {
+        Loading pending = loading.get(key);
+        return pending != null && pending.expired(System.nanoTime()) && release(key, pending, true);
+    }
+
+    /**
+     * 执行者成功执行完子图，写入缓存并唤醒等待的run
+     */
+    public void complete(Object key, Map<String, Object> values) {
+        complete(key, null, values);
+    }
+
+    /**
+     * 执行者成功执行完子图，写入缓存并唤醒等待的run，owner为null时释放当前的执行者
+     */
+    public void complete(Object key, Object owner, Map<String, Object> values) {
+        Map<String, Object> unmodifiable = Collections.unmodifiableMap(values);
+        synchronized (entries) {
+            entries.put(key, unmodifiable);
+        }
+        Loading pending = loading.get(key);
+        if (pending != null && (owner == null || pending.owner == owner) && loading.remove(key, pending)) {
+            pending.future.complete(unmodifiable);
+        }
+    }
+
+    /**
+     * 执行者没能成功执行完子图，结果不缓存，等待的run各自执行
+     */
+    public void fail(Object key) {
+        fail(key, null);
+    }
+
+    /**
+     * 执行者没能成功执行完子图，结果不缓存，等待的run各自执行，owner为null时释放当前的执行者
+     */
+    public void fail(Object key, Object owner) {
+        Loading pending = loading.get(key);
+        if (pending != null && (owner == null || pending.owner == owner)) {
+            release(key, pending, false);
+        }
+    }
+
+    private boolean release(Object key, Loading pending, boolean expire) {
+        if (!loading.remove(key, pending)) {
+            return false;
+        }
+        if (expire) {
+            expired.incrementAndGet();
+        }
+        pending.future.complete(null);
+        return true;
+    }
+
+    public Map<String, Object> get(Object key) {
+        synchronized (entries) {
+            return entries.get(key);
+        }
+    }
+
+    public void invalidate(Object key) {
+        synchronized (entries) {
+            entries.remove(key);
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * 等待其他run执行同一个key的次数
+     */
+    public long getWaits() {
+        return waits.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * 执行者租约到期被放弃的次数
+     */
+    public long getExpired() {
+        return expired.get();
+    }
+
+    @Override
+    public String toString() {
+        return "SubgraphCache{" +
+                "size=" + size() +
+                ", maxEntries=" + maxEntries +
+                ", hits=" + hits +
+                ", misses=" + misses +
+                ", waits=" + waits +
+                ", evictions=" + evictions +
+                ", expired=" + expired +
+                '}';
+    }
+
+    /**
+     * 正在执行的子图：执行者、租约截止时间，以及等待它的run共享的future
+     */
+    private static final class Loading {
+        final Object owner;
+        final long deadlineNanos;
+        final CompletableFuture<Map<String, Object>> future = new CompletableFuture<>();
+
+        Loading(Object owner, long deadlineNanos) {
+            this.owner = owner;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        boolean expired(long now) {
+            return deadlineNanos != Long.MAX_VALUE && now - deadlineNanos >= 0;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.haenu.platform.async.callback;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 异步回调分发器，把callback的begin、result从worker线程上移走，避免日志、埋点等回调拖慢关键路径。
+ * <p>
+ * 多个worker线程往一个有界环形队列里投递回调事件，由单个消费线程批量取出、按投递顺序依次执行。
+ * 单消费者保证了事件的先进先出，同一个任务的begin一定先于result执行（ASYNC_UNORDERED队列满时除外）。
+ */
+public class CallbackDispatcher {
+    private static final int DEFAULT_CAPACITY = 8192;
+    private static final int DEFAULT_BATCH_SIZE = 256;
+
+    private static class InstanceHolder {
+        private static final CallbackDispatcher INSTANCE = new CallbackDispatcher(DEFAULT_CAPACITY, DEFAULT_BATCH_SIZE);
+    }
+
+    private final ArrayBlockingQueue<Runnable> ring;
+    private final int batchSize;
+    /**
+     * 已投递、已执行的事件数，用于drain等待
+     */
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong consumed = new AtomicLong();
+
+    public CallbackDispatcher(int capacity, int batchSize) {
+        this.ring = new ArrayBlockingQueue<>(capacity);
+        this.batchSize = batchSize;
+        Thread consumer = new Thread(this::consume, "Async Callback Dispatcher");
+        consumer.setDaemon(true);
+        consumer.start();
+    }
+
+    public static CallbackDispatcher getDefault() {
+        return InstanceHolder.INSTANCE;
+    }
+
+    /**
+     * 投递一个回调事件
+     *
+     * @param event 回调事件
+     * @param mode  ASYNC_ORDERED队列满时阻塞等待；ASYNC_UNORDERED队列满时在当前线程直接执行
+     */
+    public void dispatch(Runnable event, CallbackMode mode) {
+        if (mode == CallbackMode.ASYNC_ORDERED) {
+            published.incrementAndGet();
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    ring.put(event);
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            return;
+        }
+        published.incrementAndGet();
+        if (!ring.offer(event)) {
+            published.decrementAndGet();
+            runSafely(event);
+        }
+    }
+
+    /**
+     * 等待调用时已投递的事件全部执行完毕
+     *
+     * @return 超时前全部执行完毕返回true
+     */
+    public boolean drain(long timeout, TimeUnit unit) {
+        long target = published.get();
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (consumed.get() < target) {
+            if (System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+        }
+        return true;
+    }
+
+    public int pending() {
+        return ring.size();
+    }
+
+    private void consume() {
+        List<Runnable> batch = new ArrayList<>(batchSize);
+        while (true) {
+            try {
+                //没有事件时阻塞，有事件时一次取出一批
+                batch.add(ring.take());
+                ring.drainTo(batch, batchSize - 1);
+            } catch (InterruptedException e) {
+                continue;
+            }
+            for (Runnable event : batch) {
+                runSafely(event);
+            }
+            consumed.addAndGet(batch.size());
+            batch.clear();
+        }
+    }
+
+    private static void runSafely(Runnable event) {
+        try {
+            event.run();
+        } catch (Throwable e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.haenu.platform.async.callback;
+
+/**
+ * 回调的分发方式
+ */
+public enum CallbackMode {
+    /**
+     * 在worker线程上同步回调，回调执行完后才开始后继任务（默认）
+     */
+    SYNC,
+    /**
+     * 交给CallbackDispatcher异步回调，后继任务立即开始。
+     * 同一个任务的begin一定先于result回调；分发队列满时，worker线程阻塞等待队列空出位置。
+     */
+    ASYNC_ORDERED,
+    /**
+     * 交给CallbackDispatcher异步回调，后继任务立即开始。
+     * 分发队列满时，不等待，直接在worker线程上回调，因此同一个任务的result可能先于begin回调。
+     */
+    ASYNC_UNORDERED
+}
@@ -0,0 +1,51 @@
+package com.haenu.platform.async.callback;
+
+import com.haenu.platform.async.wrapper.TaskWrapper;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 动态展开的任务。执行时不调用action，而是由expand根据param和上游结果生成一批子任务，
+ * 由引擎在同一个线程池、同一个截止时间内并行执行，全部完成后按顺序收集每个子任务的结果，作为自己的结果。
+ * 下游任务依赖该任务即可拿到所有子任务的结果，适用于扇出数量在运行时才确定的场景，如根据N个id查询详情。
+ * <p>
+ * 子任务可以带有自己的next，形成一个子图，引擎等待整个子图执行完毕，但只收集expand返回的子任务的结果。
+ * 子任务不能依赖子图之外的任务。
+ *
+ * @param <T> param类型
+ * @param <C> 子任务的结果类型
+ */
+public interface IDynamicTask<T, C> extends ITask<T, List<C>> {
+    /**
+     * 生成本次要并行执行的子任务
+     *
+     * @param object      object
+     * @param allWrappers 任务包装
+     */
+    List<TaskWrapper<?, C>> expand(T object, Map<String, TaskWrapper> allWrappers);
+
+    /**
+     * 子任务的最大并行度
+     */
+    default int parallelism() {
+        return Integer.MAX_VALUE;
+    }
+
+    /**
+     * 有子任务失败时，是否仍然收集结果（失败的子任务取其defaultValue）。
+     * 返回false时，任何一个子任务失败，该任务就失败。
+     */
+    default boolean allowPartial() {
+        return false;
+    }
+
+    /**
+     * 动态任务由引擎调用expand展开执行，引擎不会调用action，不需要实现。
+     * 在引擎之外直接调用时返回defaultValue()
+     */
+    @Override
+    default List<C> action(T object, Map<String, TaskWrapper> allWrappers) {
+        return defaultValue();
+    }
+}
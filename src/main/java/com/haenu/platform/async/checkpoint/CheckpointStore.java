@@ -0,0 +1,34 @@
+package com.haenu.platform.async.checkpoint;
+
+import com.haenu.platform.async.task.TaskResult;
+
+import java.io.Closeable;
+
+/**
+ * 任务结果的检查点存储。
+ * 设置到RunOptions后，每个成功完成的任务的结果都会保存下来；进程崩溃后用同一个存储重新beginTask，
+ * 已完成的任务直接恢复结果，不再执行，只有未完成的部分会继续执行。
+ * <p>
+ * 任务通过id识别，需要恢复的任务必须显式设置稳定的id；Builder随机生成id的任务不做检查点。
+ */
+public interface CheckpointStore extends Closeable {
+    /**
+     * 保存一个成功完成的任务结果，可以异步批量落盘
+     */
+    void save(String taskId, TaskResult<?> taskResult);
+
+    /**
+     * 读取任务的检查点结果，没有时返回null
+     */
+    TaskResult<?> load(String taskId);
+
+    /**
+     * 把尚未落盘的结果立即写入并刷盘
+     */
+    void flush();
+
+    /**
+     * 清空所有检查点，一般在整组任务成功完成后调用
+     */
+    void clear();
+}
@@ -0,0 +1,224 @@
+package com.haenu.platform.async.checkpoint;
+
+import com.haenu.platform.async.task.ResultState;
+import com.haenu.platform.async.task.TaskResult;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * 基于本地文件的检查点存储，只追加写的日志文件。
+ * <p>
+ * 每条记录的格式为：[int 长度][long crc32][Java序列化的任务id和结果]。
+ * save时只把记录放入内存中的待写队列，由后台线程按flushIntervalMillis批量写入并fsync，
+ * 攒批减少fsync次数，save只持有待写队列的锁，不会被fsync阻塞。
+ * 打开时顺序读取日志恢复结果，遇到不完整、长度异常或校验失败的尾部记录就截断；
+ * 校验通过但结果的类已不存在的记录只跳过，不影响之后的记录。
+ * <p>
+ * 任务结果需要可序列化，不可序列化的结果不做检查点，恢复时该任务会重新执行。
+ */
+public class FileCheckpointStore implements CheckpointStore {
+    private static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 50;
+    /**
+     * 单条记录的最大长度，超过认为记录已损坏
+     */
+    private static final int MAX_RECORD = 64 * 1024 * 1024;
+    /**
+     * ConcurrentHashMap不能存null，结果为null时用它占位
+     */
+    private static final Object NULL_RESULT = new Object();
+
+    private final Path file;
+    private final FileChannel channel;
+    private final Map<String, Object> restored = new ConcurrentHashMap<>();
+    private final Object writeLock = new Object();
+    private List<byte[]> pending = new ArrayList<>();
+    private final ScheduledExecutorService flusher;
+
+    public FileCheckpointStore(Path file) throws IOException {
+        this(file, DEFAULT_FLUSH_INTERVAL_MILLIS);
+    }
+
+    public FileCheckpointStore(Path file, long flushIntervalMillis) throws IOException {
+        this.file = file;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        recover();
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "Checkpoint Flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void save(String taskId, TaskResult<?> taskResult) {
+        if (taskResult.getResultState() != ResultState.SUCCESS) {
+            return;
+        }
+        byte[] record;
+        try {
+            record = encode(taskId, taskResult.getResult());
+        } catch (NotSerializableException e) {
+            //结果不可序列化，放弃检查点，恢复时重新执行
+            return;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        synchronized (writeLock) {
+            restored.put(taskId, taskResult.getResult() == null ? NULL_RESULT : taskResult.getResult());
+            pending.add(record);
+        }
+    }
+
+    @Override
+    public TaskResult<?> load(String taskId) {
+        Object result = restored.get(taskId);
+        if (result == null) {
+            return null;
+        }
+        return new TaskResult<>(result == NULL_RESULT ? null : result, ResultState.SUCCESS);
+    }
+
+    /**
+     * 取出待写队列和写入文件在同一把channel锁内完成，clear()也持有这把锁，
+     * 已取出但还没写入的批次不会在clear()截断文件之后再被写回
+     */
+    @Override
+    public void flush() {
+        synchronized (channel) {
+            List<byte[]> batch;
+            synchronized (writeLock) {
+                if (pending.isEmpty()) {
+                    return;
+                }
+                batch = pending;
+                pending = new ArrayList<>();
+            }
+            try {
+                channel.position(channel.size());
+                for (byte[] record : batch) {
+                    ByteBuffer buffer = ByteBuffer.wrap(record);
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                }
+                channel.force(false);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    @Override
+    public void clear() {
+        synchronized (channel) {
+            synchronized (writeLock) {
+                pending.clear();
+                restored.clear();
+            }
+            try {
+                channel.truncate(0);
+                channel.force(true);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * 已恢复或已保存的任务数
+     */
+    public int size() {
+        return restored.size();
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    @Override
+    public void close() throws IOException {
+        flusher.shutdown();
+        flush();
+        channel.close();
+    }
+
+    /**
+     * 顺序读取日志，恢复已完成任务的结果
+     */
+    private void recover() throws IOException {
+        if (Files.size(file) == 0) {
+            return;
+        }
+        long fileLength = Files.size(file);
+        long validLength = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            while (true) {
+                int length;
+                long crc;
+                byte[] payload;
+                try {
+                    length = in.readInt();
+                    crc = in.readLong();
+                    //长度在读取内容前校验，损坏的长度不会分配大数组
+                    if (length < 0 || length > MAX_RECORD || length > fileLength - validLength - 12) {
+                        break;
+                    }
+                    payload = new byte[length];
+                    in.readFully(payload);
+                } catch (EOFException e) {
+                    break;
+                }
+                if (crc(payload) != crc) {
+                    break;
+                }
+                validLength += 12 + length;
+                try (ObjectInputStream objectIn = new ObjectInputStream(new ByteArrayInputStream(payload))) {
+                    String taskId = objectIn.readUTF();
+                    Object result = objectIn.readObject();
+                    restored.put(taskId, result == null ? NULL_RESULT : result);
+                } catch (ClassNotFoundException | ObjectStreamException e) {
+                    //记录完整，只是结果的类已不存在或已变更，跳过这条，该任务恢复时重新执行
+                }
+            }
+        }
+        //截断崩溃时写了一半的尾部记录
+        if (validLength < channel.size()) {
+            channel.truncate(validLength);
+        }
+    }
+
+    private static byte[] encode(String taskId, Object result) throws IOException {
+        ByteArrayOutputStream payloadOut = new ByteArrayOutputStream();
+        try (ObjectOutputStream objectOut = new ObjectOutputStream(payloadOut)) {
+            objectOut.writeUTF(taskId);
+            objectOut.writeObject(result);
+        }
+        byte[] payload = payloadOut.toByteArray();
+        ByteBuffer record = ByteBuffer.allocate(12 + payload.length);
+        record.putInt(payload.length);
+        record.putLong(crc(payload));
+        record.put(payload);
+        return record.array();
+    }
+
+    private static long crc(byte[] payload) {
+        CRC32 crc32 = new CRC32();
+        crc32.update(payload, 0, payload.length);
+        return crc32.getValue();
+    }
+}
@@ -0,0 +1,294 @@
+package com.haenu.platform.async.compact;
+
+import com.haenu.platform.async.callback.ITask;
+import com.haenu.platform.async.exception.PlanException;
+
+import java.util.Arrays;
+
+/**
+ * 面向超大图（十万级节点）的紧凑表示，只保存不可变的图结构，多次run共享。每次run的状态在CompactRun中。
+ * <p>
+ * 节点用int下标表示，没有TaskWrapper、DependWrapper、id字符串等对象：
+ * 1.邻接关系用CSR存储：successorOffsets/successors为后继，predecessorOffsets/predecessors为前驱。
+ * 2.后继边的must标记存在按边下标的bitset中。
+ * 3.每个节点的must依赖数、依赖数预先算好，执行时只做计数。
+ * <p>
+ * 依赖语义和TaskWrapper一致：只有一个依赖时按must处理；有must依赖时，must依赖全部成功才执行，任一失败则失败；
+ * 全部是非must依赖时，第一个结束的依赖成功就执行，失败则失败。
+ * <p>
+ * 节点可以标记为阻塞的（如调用下游服务），在事件循环上执行时不能占用循环线程，见EventLoopGroup。
+ */
+public class CompactGraph {
+    private final int nodeCount;
+    private final Object[] tasks;
+    private final Object[] params;
+    private final long[] blockingBits;
+
+    private final int[] successorOffsets;
+    private final int[] successors;
+    private final long[] mustBits;
+    private final int[] predecessorOffsets;
+    private final int[] predecessors;
+
+    private final int[] mustCounts;
+    private final int[] roots;
+
+    private CompactGraph(Builder builder) {
+        int n = builder.nodeCount;
+        int m = builder.edgeCount;
+        this.nodeCount = n;
+        this.tasks = Arrays.copyOf(builder.tasks, n);
+        this.params = Arrays.copyOf(builder.params, n);
+        this.blockingBits = Arrays.copyOf(builder.blockingBits, (n + 63) >>> 6);
+
+        //1.统计出度、入度，前缀和得到CSR的偏移
+        successorOffsets = new int[n + 1];
+        predecessorOffsets = new int[n + 1];
+        for (int e = 0; e < m; e++) {
+            successorOffsets[builder.edgeFrom[e] + 1]++;
+            predecessorOffsets[builder.edgeTo[e] + 1]++;
+        }
+        for (int i = 0; i < n; i++) {
+            successorOffsets[i + 1] += successorOffsets[i];
+            predecessorOffsets[i + 1] += predecessorOffsets[i];
+        }
+
+        //2.填充邻接数组和must标记
+        successors = new int[m];
+        predecessors = new int[m];
+        mustBits = new long[(m + 63) >>> 6];
+        int[] successorFill = Arrays.copyOf(successorOffsets, n);
+        int[] predecessorFill = Arrays.copyOf(predecessorOffsets, n);
+        for (int e = 0; e < m; e++) {
+            int from = builder.edgeFrom[e];
+            int to = builder.edgeTo[e];
+            int index = successorFill[from]++;
+            successors[index] = to;
+            predecessors[predecessorFill[to]++] = from;
+            boolean must = (builder.edgeMust[e >>> 6] & (1L << e)) != 0
+                    || predecessorOffsets[to + 1] - predecessorOffsets[to] == 1;
+            if (must) {
+                mustBits[index >>> 6] |= 1L << index;
+            }
+        }
+
+        //3.must依赖数
+        mustCounts = new int[n];
+        for (int from = 0; from < n; from++) {
+            for (int index = successorOffsets[from]; index < successorOffsets[from + 1]; index++) {
+                if (isMust(index)) {
+                    mustCounts[successors[index]]++;
+                }
+            }
+        }
+
+        //4.拓扑排序检查环，同时收集起点
+        int rootCount = 0;
+        int[] inDegree = new int[n];
+        int[] queue = new int[n];
+        int tail = 0;
+        for (int i = 0; i < n; i++) {
+            inDegree[i] = predecessorOffsets[i + 1] - predecessorOffsets[i];
+            if (inDegree[i] == 0) {
+                queue[tail++] = i;
+                rootCount++;
+            }
+        }
+        roots = Arrays.copyOf(queue, rootCount);
+        for (int head = 0; head < tail; head++) {
+            int node = queue[head];
+            for (int index = successorOffsets[node]; index < successorOffsets[node + 1]; index++) {
+                if (--inDegree[successors[index]] == 0) {
+                    queue[tail++] = successors[index];
+                }
+            }
+        }
+        if (tail != n) {
+            throw new PlanException("compact graph has a cycle, " + (n - tail) + " nodes unreachable in topological order");
+        }
+    }
+
+    /**
+     * 创建一次新的执行
+     */
+    public CompactRun newRun() {
+        return new CompactRun(this);
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    public int getEdgeCount() {
+        return successors.length;
+    }
+
+    public int[] getRoots() {
+        return roots.clone();
+    }
+
+    int[] roots() {
+        return roots;
+    }
+
+    Object task(int node) {
+        return tasks[node];
+    }
+
+    public Object getParam(int node) {
+        return params[node];
+    }
+
+    /**
+     * 节点是否被标记为阻塞的
+     */
+    public boolean isBlocking(int node) {
+        return (blockingBits[node >>> 6] & (1L << node)) != 0;
+    }
+
+    public int successorStart(int node) {
+        return successorOffsets[node];
+    }
+
+    public int successorEnd(int node) {
+        return successorOffsets[node + 1];
+    }
+
+    public int successor(int index) {
+        return successors[index];
+    }
+
+    /**
+     * 后继边index是否为must边
+     */
+    public boolean isMust(int index) {
+        return (mustBits[index >>> 6] & (1L << index)) != 0;
+    }
+
+    public int predecessorStart(int node) {
+        return predecessorOffsets[node];
+    }
+
+    public int predecessorEnd(int node) {
+        return predecessorOffsets[node + 1];
+    }
+
+    public int predecessor(int index) {
+        return predecessors[index];
+    }
+
+    public int getMustCount(int node) {
+        return mustCounts[node];
+    }
+
+    public int getDependCount(int node) {
+        return predecessorOffsets[node + 1] - predecessorOffsets[node];
+    }
+
+    @Override
+    public String toString() {
+        return "CompactGraph{" +
+                "nodes=" + nodeCount +
+                ", edges=" + successors.length +
+                ", roots=" + roots.length +
+                '}';
+    }
+
+    public static class Builder {
+        private int nodeCount;
+        private Object[] tasks = new Object[16];
+        private Object[] params = new Object[16];
+
+        private int edgeCount;
+        private int[] edgeFrom = new int[16];
+        private int[] edgeTo = new int[16];
+        private long[] edgeMust = new long[1];
+        private long[] blockingBits = new long[1];
+
+        public Builder() {
+        }
+
+        /**
+         * 预估节点数、边数，避免构建过程中反复扩容
+         */
+        public Builder(int expectedNodes, int expectedEdges) {
+            tasks = new Object[Math.max(expectedNodes, 1)];
+            params = new Object[Math.max(expectedNodes, 1)];
+            edgeFrom = new int[Math.max(expectedEdges, 1)];
+            edgeTo = new int[Math.max(expectedEdges, 1)];
+            edgeMust = new long[(Math.max(expectedEdges, 1) + 63) >>> 6];
+        }
+
+        /**
+         * 添加节点，返回节点下标
+         */
+        public int addNode(ICompactTask<?> task) {
+            return add(task, null);
+        }
+
+        /**
+         * 添加普通ITask节点，action的参数为param
+         */
+        public <T> int addNode(ITask<T, ?> task, T param) {
+            return add(task, param);
+        }
+
+        private int add(Object task, Object param) {
+            if (task == null) {
+                throw new IllegalArgumentException("task is null");
+            }
+            if (nodeCount == tasks.length) {
+                tasks = Arrays.copyOf(tasks, nodeCount * 2);
+                params = Arrays.copyOf(params, nodeCount * 2);
+            }
+            tasks[nodeCount] = task;
+            params[nodeCount] = param;
+            return nodeCount++;
+        }
+
+        /**
+         * 把节点标记为阻塞的：action会等待IO、锁等，不能在事件循环线程上执行
+         */
+        public Builder blocking(int node) {
+            if (node < 0 || node >= nodeCount) {
+                throw new IllegalArgumentException("bad node " + node);
+            }
+            if ((node >>> 6) >= blockingBits.length) {
+                blockingBits = Arrays.copyOf(blockingBits, Math.max(blockingBits.length * 2, (node >>> 6) + 1));
+            }
+            blockingBits[node >>> 6] |= 1L << node;
+            return this;
+        }
+
+        /**
+         * 添加依赖边，to依赖from，must为true时from必须成功to才能执行
+         */
+        public Builder edge(int from, int to, boolean must) {
+            if (from < 0 || from >= nodeCount || to < 0 || to >= nodeCount || from == to) {
+                throw new IllegalArgumentException("bad edge " + from + " -> " + to);
+            }
+            if (edgeCount == edgeFrom.length) {
+                edgeFrom = Arrays.copyOf(edgeFrom, edgeCount * 2);
+                edgeTo = Arrays.copyOf(edgeTo, edgeCount * 2);
+            }
+            if ((edgeCount >>> 6) >= edgeMust.length) {
+                edgeMust = Arrays.copyOf(edgeMust, edgeMust.length * 2);
+            }
+            edgeFrom[edgeCount] = from;
+            edgeTo[edgeCount] = to;
+            if (must) {
+                edgeMust[edgeCount >>> 6] |= 1L << edgeCount;
+            }
+            edgeCount++;
+            return this;
+        }
+
+        public Builder edge(int from, int to) {
+            return edge(from, to, true);
+        }
+
+        public CompactGraph build() {
+            return new CompactGraph(this);
+        }
+    }
+}
@@ -0,0 +1,518 @@
+package com.haenu.platform.async.compact;
+
+import com.haenu.platform.async.callback.ITask;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * 紧凑图的一次执行，每个节点的状态都放在数组里：
+ * 状态、剩余依赖计数用AtomicIntegerArray，结果、异常用Object数组，按节点下标访问。
+ * <p>
+ * 调度不阻塞：节点结束后按CSR遍历后继，依赖计数减到0的后继变为就绪，第一个就绪的后继在当前线程继续执行，
+ * 其余的提交到线程池。所有节点都结束（成功、失败或超时）时，run的future完成。
+ * 上游失败时，下游在遍历中直接标记失败，不会占用线程。
+ * <p>
+ * 也可以交给EventLoopGroup在单个事件循环线程上执行，此时只有这个线程读写状态，用普通读和有序写代替CAS。
+ */
+public class CompactRun {
+    public static final int INIT = 0;
+    public static final int FINISH = 1;
+    public static final int ERROR = 2;
+    public static final int WORKING = 3;
+    /**
+     * 事件循环模式下stopNow等待循环线程处理完停止事件的最长时间，循环被阻塞的节点拖住时不一直等下去
+     */
+    private static final long STOP_WAIT_MILLIS = 1000;
+
+    private final CompactGraph graph;
+    private final AtomicIntegerArray states;
+    /**
+     * 有must依赖的节点为剩余的must依赖数；全部是非must依赖的节点为1，第一个结束的依赖将它减到0
+     */
+    private final AtomicIntegerArray pending;
+    private final Object[] results;
+    private final Throwable[] errors;
+
+    private final AtomicInteger unresolved;
+    private final CompletableFuture<CompactRun> future = new CompletableFuture<>();
+
+    private volatile ExecutorService executorService;
+    private volatile long deadlineNanos;
+    /**
+     * 事件循环模式下执行这个run的循环，线程池模式下为null
+     */
+    private volatile EventLoop loop;
+    /**
+     * 事件循环模式下开始事件和关闭时的拒绝只有一方生效，先认领的一方执行
+     */
+    private final AtomicBoolean admitted = new AtomicBoolean();
+
+    CompactRun(CompactGraph graph) {
+        this.graph = graph;
+        int n = graph.getNodeCount();
+        this.states = new AtomicIntegerArray(n);
+        this.results = new Object[n];
+        this.errors = new Throwable[n];
+        int[] counts = new int[n];
+        for (int i = 0; i < n; i++) {
+            counts[i] = graph.getMustCount(i) > 0 ? graph.getMustCount(i) : 1;
+        }
+        this.pending = new AtomicIntegerArray(counts);
+        this.unresolved = new AtomicInteger(n);
+        if (n == 0) {
+            future.complete(this);
+        }
+    }
+
+    /**
+     * 同步执行，直到所有节点结束或超时。超时时所有尚未开始的节点标记为超时失败，返回false
+     */
+    public boolean execute(ExecutorService executorService, long timeout) throws InterruptedException {
+        start(executorService, timeout);
+        try {
+            future.get(timeout, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (ExecutionException e) {
+            return false;
+        } catch (TimeoutException e) {
+            stopNow();
+            return false;
+        }
+    }
+
+    /**
+     * 异步开始执行，返回所有节点结束时完成的future
+     *
+     * @param timeout 超时时间，到期后未开始的节点不再执行，需要调用方在到期时调用stopNow结束整个run
+     */
+    public CompletableFuture<CompactRun> start(ExecutorService executorService, long timeout) {
+        this.executorService = executorService;
+        this.deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        for (int root : graph.roots()) {
+            dispatch(root);
+        }
+        return future;
+    }
+
+    /**
+     * 在事件循环上同步执行，直到所有节点结束或超时
+     */
+    public boolean execute(EventLoopGroup group, long timeout) throws InterruptedException {
+        group.submit(this, timeout);
+        try {
+            future.get(timeout, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (ExecutionException e) {
+            return false;
+        } catch (TimeoutException e) {
+            stopNow();
+            return false;
+        }
+    }
+
+    /**
+     * 在事件循环上异步开始执行，按轮转选择循环
+     */
+    public CompletableFuture<CompactRun> start(EventLoopGroup group, long timeout) {
+        return group.submit(this, timeout);
+    }
+
+    /**
+     * 停止：所有尚未开始的节点标记为超时失败。正在执行的节点不中断，结束后不再调度后继。
+     * 事件循环模式下投递到循环上执行，并等待执行完毕；交给offload、尚未送回的节点同样标记为超时失败，
+     * run的future立即完成，之后送回的结果被忽略。
+     * 循环线程已经退出时按线程池模式直接停止；循环线程在STOP_WAIT_MILLIS内没有处理停止事件或等待被中断时不再等待，
+     * 停止事件留在循环上稍后执行
+     */
+    public void stopNow() {
+        EventLoop owner = loop;
+        if (owner != null) {
+            //已经结束的run没有需要停止的节点，循环线程也可能已经退出
+            if (future.isDone()) {
+                return;
+            }
+            if (Thread.currentThread() == owner) {
+                stopOnLoop();
+                return;
+            }
+            if (owner.isAlive()) {
+                CountDownLatch stopped = new CountDownLatch(1);
+                owner.post(() -> {
+                    stopOnLoop();
+                    stopped.countDown();
+                });
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(STOP_WAIT_MILLIS);
+                try {
+                    //循环线程可能在投递前后退出，分段等待，期间检查线程是否还活着
+                    while (!stopped.await(10, TimeUnit.MILLISECONDS)) {
+                        if (!owner.isAlive()) {
+                            break;
+                        }
+                        if (System.nanoTime() - deadline >= 0) {
+                            return;
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                if (stopped.getCount() == 0) {
+                    return;
+                }
+            }
+            //循环线程已退出，只会是run没有开始过：节点都还是INIT，没有其他线程再写状态
+        }
+        for (int node = 0; node < graph.getNodeCount(); node++) {
+            if (states.compareAndSet(node, INIT, ERROR)) {
+                errors[node] = new TimeoutException();
+                resolved();
+            }
+        }
+    }
+
+    /**
+     * 从node开始执行，沿就绪的后继在当前线程继续，直到没有就绪节点。
+     * 栈中非负数为待执行的节点，负数-(node+1)为已失败、需要继续向后传播的节点。
+     */
+    private void drive(int start) {
+        int[] stack = new int[8];
+        int size = 0;
+        stack[size++] = start;
+        while (size > 0) {
+            int top = stack[--size];
+            int node;
+            boolean success;
+            if (top < 0) {
+                node = -top - 1;
+                success = false;
+            } else {
+                node = top;
+                if (!runNode(node)) {
+                    continue;
+                }
+                success = states.get(node) == FINISH;
+            }
+
+            //遍历后继，第一个就绪的留在当前线程，其余提交线程池
+            boolean inlineTaken = false;
+            for (int index = graph.successorStart(node); index < graph.successorEnd(node); index++) {
+                int next = graph.successor(index);
+                boolean must = graph.isMust(index);
+                int mustCount = graph.getMustCount(next);
+                //有must依赖的节点忽略非must依赖
+                if (mustCount > 0 && !must) {
+                    continue;
+                }
+                if (!success && must) {
+                    if (fail(next, errors[node])) {
+                        if (size == stack.length) {
+                            stack = Arrays.copyOf(stack, size * 2);
+                        }
+                        stack[size++] = -next - 1;
+                    }
+                    continue;
+                }
+                if (pending.decrementAndGet(next) != 0) {
+                    continue;
+                }
+                //全部是非must依赖，第一个结束的依赖决定成败
+                if (!success) {
+                    if (fail(next, errors[node])) {
+                        if (size == stack.length) {
+                            stack = Arrays.copyOf(stack, size * 2);
+                        }
+                        stack[size++] = -next - 1;
+                    }
+                    continue;
+                }
+                if (!inlineTaken) {
+                    inlineTaken = true;
+                    if (size == stack.length) {
+                        stack = Arrays.copyOf(stack, size * 2);
+                    }
+                    stack[size++] = next;
+                } else {
+                    dispatch(next);
+                }
+            }
+        }
+    }
+
+    /**
+     * 把就绪的节点提交到线程池，线程池拒绝时节点失败，在当前线程向后传播
+     */
+    private void dispatch(int node) {
+        try {
+            executorService.execute(() -> drive(node));
+        } catch (RejectedExecutionException e) {
+            if (fail(node, e)) {
+                drive(-node - 1);
+            }
+        }
+    }
+
+    /**
+     * 执行节点的action，返回false表示节点已被其他地方结束（如超时停止），不再处理后继
+     */
+    private boolean runNode(int node) {
+        if (System.nanoTime() - deadlineNanos >= 0) {
+            if (states.compareAndSet(node, INIT, ERROR)) {
+                errors[node] = new TimeoutException();
+                resolved();
+                return true;
+            }
+            return false;
+        }
+        if (!states.compareAndSet(node, INIT, WORKING)) {
+            return false;
+        }
+        Object task = graph.task(node);
+        try {
+            Object result = invoke(task, node);
+            results[node] = result;
+            states.set(node, FINISH);
+        } catch (Throwable e) {
+            //Error也要结束节点，否则run的future永远不会完成
+            errors[node] = e;
+            states.set(node, ERROR);
+        }
+        resolved();
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Object invoke(Object task, int node) throws Exception {
+        return task instanceof ICompactTask
+                ? ((ICompactTask<?>) task).action(this, node)
+                : ((ITask<Object, ?>) task).action(graph.getParam(node), Collections.emptyMap());
+    }
+
+    void bind(EventLoop loop) {
+        this.loop = loop;
+    }
+
+    /**
+     * 认领这个run，开始事件和关闭时的拒绝只有先认领的一方生效
+     */
+    boolean admit() {
+        return admitted.compareAndSet(false, true);
+    }
+
+    /**
+     * 事件循环模式：在循环线程上开始执行，从起点开始把就绪的节点依次执行完，
+     * 遇到交给offload的阻塞节点时返回，等它执行完毕投递回来再继续
+     */
+    void startOnLoop(long deadlineNanos) {
+        //关闭时已被拒绝
+        if (!admit()) {
+            return;
+        }
+        this.deadlineNanos = deadlineNanos;
+        EventLoop owner = loop;
+        owner.runs++;
+        if (unresolved.get() == 0) {
+            return;
+        }
+        owner.inflight++;
+        for (int root : graph.roots()) {
+            if (runOnLoop(root)) {
+                drainOnLoop(root);
+            }
+        }
+    }
+
+    /**
+     * 从已结束的节点开始，遍历后继，把依赖已满足的节点在当前线程执行，直到没有就绪节点。
+     * 和drive一样的依赖语义，栈中都是已结束、需要处理后继的节点
+     */
+    private void drainOnLoop(int start) {
+        int[] stack = new int[8];
+        int size = 0;
+        stack[size++] = start;
+        while (size > 0) {
+            int node = stack[--size];
+            boolean success = states.get(node) == FINISH;
+            for (int index = graph.successorStart(node); index < graph.successorEnd(node); index++) {
+                int next = graph.successor(index);
+                boolean must = graph.isMust(index);
+                //有must依赖的节点忽略非must依赖
+                if (graph.getMustCount(next) > 0 && !must) {
+                    continue;
+                }
+                boolean resolved;
+                if (!success && must) {
+                    resolved = failOnLoop(next, errors[node]);
+                } else {
+                    int left = pending.get(next) - 1;
+                    pending.lazySet(next, left);
+                    if (left != 0) {
+                        continue;
+                    }
+                    //全部是非must依赖，第一个结束的依赖决定成败
+                    resolved = success ? runOnLoop(next) : failOnLoop(next, errors[node]);
+                }
+                if (resolved) {
+                    if (size == stack.length) {
+                        stack = Arrays.copyOf(stack, size * 2);
+                    }
+                    stack[size++] = next;
+                }
+            }
+        }
+    }
+
+    /**
+     * 在循环线程上执行节点，返回true表示节点已结束，需要处理后继；
+     * 节点已结束或交给了offload时返回false
+     */
+    private boolean runOnLoop(int node) {
+        if (states.get(node) != INIT) {
+            return false;
+        }
+        if (System.nanoTime() - deadlineNanos >= 0) {
+            resolveOnLoop(node, ERROR, null, new TimeoutException());
+            return true;
+        }
+        Object task = graph.task(node);
+        if (graph.isBlocking(node)) {
+            return offload(node, task);
+        }
+        Object result;
+        try {
+            result = invoke(task, node);
+        } catch (Throwable e) {
+            resolveOnLoop(node, ERROR, null, e);
+            return true;
+        }
+        resolveOnLoop(node, FINISH, result, null);
+        return true;
+    }
+
+    /**
+     * 阻塞节点交给offload线程池执行，执行完毕投递回循环。没有offload线程池时直接失败
+     */
+    private boolean offload(int node, Object task) {
+        EventLoop owner = loop;
+        ExecutorService offload = owner.getOffload();
+        if (offload == null) {
+            owner.rejected++;
+            resolveOnLoop(node, ERROR, null, new RejectedExecutionException("blocking node " + node + " can not run on event loop"));
+            return true;
+        }
+        states.lazySet(node, WORKING);
+        try {
+            offload.execute(() -> {
+                Object result = null;
+                Throwable error = null;
+                try {
+                    result = invoke(task, node);
+                } catch (Throwable e) {
+                    error = e;
+                }
+                Object value = result;
+                Throwable cause = error;
+                owner.post(() -> completeOnLoop(node, value, cause));
+            });
+        } catch (RejectedExecutionException e) {
+            resolveOnLoop(node, ERROR, null, e);
+            return true;
+        }
+        owner.offloaded++;
+        return false;
+    }
+
+    /**
+     * offload的节点执行完毕，送回循环。节点已被stopNow结束时忽略这次结果
+     */
+    private void completeOnLoop(int node, Object result, Throwable error) {
+        if (states.get(node) != WORKING) {
+            return;
+        }
+        resolveOnLoop(node, error == null ? FINISH : ERROR, result, error);
+        drainOnLoop(node);
+    }
+
+    private boolean failOnLoop(int node, Throwable cause) {
+        if (states.get(node) != INIT) {
+            return false;
+        }
+        resolveOnLoop(node, ERROR, null, cause);
+        return true;
+    }
+
+    private void stopOnLoop() {
+        for (int node = 0; node < graph.getNodeCount(); node++) {
+            int state = states.get(node);
+            if (state == INIT || state == WORKING) {
+                resolveOnLoop(node, ERROR, null, new TimeoutException());
+            }
+        }
+    }
+
+    /**
+     * 循环线程上设置节点的结束状态，只有这个线程写，不需要CAS
+     */
+    private void resolveOnLoop(int node, int state, Object result, Throwable error) {
+        results[node] = result;
+        errors[node] = error;
+        states.lazySet(node, state);
+        int left = unresolved.get() - 1;
+        unresolved.lazySet(left);
+        if (left == 0) {
+            loop.inflight--;
+            future.complete(this);
+        }
+    }
+
+    private boolean fail(int node, Throwable cause) {
+        if (!states.compareAndSet(node, INIT, ERROR)) {
+            return false;
+        }
+        errors[node] = cause;
+        resolved();
+        return true;
+    }
+
+    private void resolved() {
+        if (unresolved.decrementAndGet() == 0) {
+            future.complete(this);
+        }
+    }
+
+    public CompactGraph getGraph() {
+        return graph;
+    }
+
+    public int getState(int node) {
+        return states.get(node);
+    }
+
+    public boolean isSuccess(int node) {
+        return states.get(node) == FINISH;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <V> V getResult(int node) {
+        return states.get(node) == FINISH ? (V) results[node] : null;
+    }
+
+    public Throwable getError(int node) {
+        return states.get(node) == ERROR ? errors[node] : null;
+    }
+
+    public CompletableFuture<CompactRun> getFuture() {
+        return future;
+    }
+
+    /**
+     * 尚未结束的节点数
+     */
+    public int getUnresolved() {
+        return unresolved.get();
+    }
+}
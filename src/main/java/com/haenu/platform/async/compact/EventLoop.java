@@ -0,0 +1,116 @@
+package com.haenu.platform.async.compact;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 单线程事件循环，依次处理投递进来的事件：开始一个run、阻塞节点执行完毕后继续它的run、停止一个run。
+ * 投递到同一个循环的run的所有状态只由这个线程读写。
+ * <p>
+ * 统计字段只由循环线程写，其他线程读到的是近似值。
+ */
+final class EventLoop extends Thread {
+    private final ConcurrentLinkedQueue<Runnable> inbox = new ConcurrentLinkedQueue<>();
+    private final ExecutorService offload;
+    private final long spinNanos;
+    private final long stallNanos;
+
+    private volatile boolean sleeping;
+    private volatile boolean shutdown;
+
+    /**
+     * 已开始、尚未结束的run数，关闭时等它们结束再退出
+     */
+    int inflight;
+    long runs;
+    long offloaded;
+    long rejected;
+    long stalls;
+    long maxBusyNanos;
+
+    EventLoop(String name, ExecutorService offload, long spinNanos, long stallNanos) {
+        super(name);
+        setDaemon(true);
+        this.offload = offload;
+        this.spinNanos = spinNanos;
+        this.stallNanos = stallNanos;
+    }
+
+    /**
+     * 投递事件，可以从任意线程调用
+     */
+    void post(Runnable event) {
+        inbox.offer(event);
+        if (sleeping) {
+            LockSupport.unpark(this);
+        }
+    }
+
+    ExecutorService getOffload() {
+        return offload;
+    }
+
+    boolean isShutdown() {
+        return shutdown;
+    }
+
+    /**
+     * 不再接收新的run，已投递的run都结束后线程退出
+     */
+    void shutdown() {
+        shutdown = true;
+        LockSupport.unpark(this);
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            Runnable event = poll();
+            if (event == null) {
+                if (shutdown && inflight == 0) {
+                    //退出前再看一次队列，关闭前后投递进来的事件照常处理
+                    if (inbox.isEmpty()) {
+                        return;
+                    }
+                    continue;
+                }
+                //先设置sleeping再检查一次队列，post在入队后检查sleeping，不会丢失唤醒
+                sleeping = true;
+                if (inbox.isEmpty() && (!shutdown || inflight > 0)) {
+                    LockSupport.park(this);
+                }
+                sleeping = false;
+                continue;
+            }
+            long start = System.nanoTime();
+            try {
+                event.run();
+            } catch (Throwable e) {
+                e.printStackTrace();
+            }
+            long busy = System.nanoTime() - start;
+            if (busy > maxBusyNanos) {
+                maxBusyNanos = busy;
+            }
+            if (busy >= stallNanos) {
+                stalls++;
+            }
+        }
+    }
+
+    /**
+     * 取下一个事件，队列为空时先自旋spinNanos，避免频繁park/unpark
+     */
+    private Runnable poll() {
+        Runnable event = inbox.poll();
+        if (event != null || spinNanos <= 0) {
+            return event;
+        }
+        long deadline = System.nanoTime() + spinNanos;
+        while (event == null && !shutdown && System.nanoTime() - deadline < 0) {
+            event = inbox.poll();
+        }
+        return event;
+    }
+}
@@ -0,0 +1,236 @@
+package com.haenu.platform.async.compact;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 一组单线程事件循环，用来执行节点都是微秒级计算的小图。
+ * <p>
+ * 每个run整体分到一个循环上，从开始到结束都在这个循环的线程上执行：节点就绪后直接在循环线程上执行，
+ * 不再提交线程池，也没有线程切换。run的状态只由一个线程读写，调度过程中没有锁，也没有CAS，
+ * 只有投递run时经过一次无锁队列。多个run按轮转或按分片key分到各个循环上，循环数一般取CPU核数。
+ * 循环线程是固定的专用线程，需要绑核时在进程外用taskset/cgroup设置。
+ * <p>
+ * 阻塞的节点（CompactGraph.Builder.blocking标记）不能在循环线程上执行：设置了offload线程池时交给它执行，
+ * 执行完毕再投递回原来的循环继续调度；没有设置时该节点直接失败，异常为RejectedExecutionException。
+ * 未标记的节点如果实际阻塞了，会拖住同一循环上的所有run，单次事件处理超过stall阈值时计入stalls。
+ * <p>
+ * run的future在循环线程上完成，依赖它的回调应使用xxxAsync，避免在循环线程上执行。
+ */
+public class EventLoopGroup {
+    private static final AtomicInteger GROUP_SEQ = new AtomicInteger();
+
+    private final EventLoop[] loops;
+    /**
+     * 轮转下标，多个线程同时投递时可能重复或跳过，只影响分配的均匀程度
+     */
+    private int next;
+
+    private EventLoopGroup(Builder builder) {
+        String name = builder.name != null ? builder.name : "EventLoop-" + GROUP_SEQ.incrementAndGet();
+        loops = new EventLoop[builder.loops];
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new EventLoop(name + "-" + (i + 1), builder.offload, builder.spinNanos, builder.stallNanos);
+            loops[i].start();
+        }
+    }
+
+    /**
+     * 按轮转选择循环，异步开始执行run
+     *
+     * @param timeout 超时时间，到期后未开始的节点不再执行；已交给offload的阻塞节点需要调用方在到期时调用run.stopNow
+     */
+    public CompletableFuture<CompactRun> submit(CompactRun run, long timeout) {
+        int index = next++;
+        return submit(run, timeout, loops[(index & Integer.MAX_VALUE) % loops.length]);
+    }
+
+    /**
+     * 按分片key选择循环，同一个key的run总是在同一个循环上执行
+     */
+    public CompletableFuture<CompactRun> submit(CompactRun run, long timeout, Object shardKey) {
+        if (shardKey == null) {
+            return submit(run, timeout);
+        }
+        int hash = shardKey.hashCode();
+        hash ^= hash >>> 16;
+        return submit(run, timeout, loops[(hash & Integer.MAX_VALUE) % loops.length]);
+    }
+
+    /**
+     * 已关闭时拒绝run，run的future以RejectedExecutionException完成，execute等待的也是这个future
+     */
+    private CompletableFuture<CompactRun> submit(CompactRun run, long timeout, EventLoop loop) {
+        if (loop.isShutdown()) {
+            return reject(run);
+        }
+        long deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        run.bind(loop);
+        loop.post(() -> run.startOnLoop(deadlineNanos));
+        //检查和投递之间循环被关闭时，循环可能已经退出，开始事件没人处理；这时抢在循环之前认领的run按拒绝处理
+        if (loop.isShutdown()) {
+            return reject(run);
+        }
+        return run.getFuture();
+    }
+
+    private static CompletableFuture<CompactRun> reject(CompactRun run) {
+        if (run.admit()) {
+            run.getFuture().completeExceptionally(new RejectedExecutionException("event loop group has been shut down"));
+        }
+        return run.getFuture();
+    }
+
+    /**
+     * 不再接收新的run，已开始的run执行完毕后循环线程退出
+     */
+    public void shutdown() {
+        for (EventLoop loop : loops) {
+            loop.shutdown();
+        }
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (EventLoop loop : loops) {
+            long left = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (left <= 0) {
+                return !loop.isAlive();
+            }
+            loop.join(left);
+            if (loop.isAlive()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int getLoopCount() {
+        return loops.length;
+    }
+
+    /**
+     * 已开始的run数
+     */
+    public long getRuns() {
+        long total = 0;
+        for (EventLoop loop : loops) {
+            total += loop.runs;
+        }
+        return total;
+    }
+
+    /**
+     * 交给offload线程池执行的阻塞节点数
+     */
+    public long getOffloaded() {
+        long total = 0;
+        for (EventLoop loop : loops) {
+            total += loop.offloaded;
+        }
+        return total;
+    }
+
+    /**
+     * 因为没有offload线程池而直接失败的阻塞节点数
+     */
+    public long getRejected() {
+        long total = 0;
+        for (EventLoop loop : loops) {
+            total += loop.rejected;
+        }
+        return total;
+    }
+
+    /**
+     * 单次事件处理超过stall阈值的次数
+     */
+    public long getStalls() {
+        long total = 0;
+        for (EventLoop loop : loops) {
+            total += loop.stalls;
+        }
+        return total;
+    }
+
+    /**
+     * 单次事件处理的最长耗时
+     */
+    public long getMaxBusyNanos() {
+        long max = 0;
+        for (EventLoop loop : loops) {
+            max = Math.max(max, loop.maxBusyNanos);
+        }
+        return max;
+    }
+
+    @Override
+    public String toString() {
+        return "EventLoopGroup{" +
+                "loops=" + loops.length +
+                ", runs=" + getRuns() +
+                ", offloaded=" + getOffloaded() +
+                ", rejected=" + getRejected() +
+                ", stalls=" + getStalls() +
+                ", maxBusyMicros=" + TimeUnit.NANOSECONDS.toMicros(getMaxBusyNanos()) +
+                '}';
+    }
+
+    public static class Builder {
+        private int loops = Runtime.getRuntime().availableProcessors();
+        private String name;
+        private ExecutorService offload;
+        private long spinNanos = TimeUnit.MICROSECONDS.toNanos(10);
+        private long stallNanos = TimeUnit.MILLISECONDS.toNanos(1);
+
+        /**
+         * 循环数，默认为CPU核数
+         */
+        public Builder loops(int loops) {
+            if (loops < 1) {
+                throw new IllegalArgumentException("loops must be positive");
+            }
+            this.loops = loops;
+            return this;
+        }
+
+        /**
+         * 循环线程名前缀
+         */
+        public Builder name(String name) {
+            this.name = name;
+            return this;
+        }
+
+        /**
+         * 执行阻塞节点的线程池，不设置时阻塞节点直接失败
+         */
+        public Builder offload(ExecutorService offload) {
+            this.offload = offload;
+            return this;
+        }
+
+        /**
+         * 队列为空时park前的自旋时间，默认10微秒，0表示不自旋
+         */
+        public Builder spin(long spin, TimeUnit unit) {
+            this.spinNanos = unit.toNanos(spin);
+            return this;
+        }
+
+        /**
+         * 单次事件处理超过该时间计为一次stall，默认1毫秒
+         */
+        public Builder stallThreshold(long threshold, TimeUnit unit) {
+            this.stallNanos = unit.toNanos(threshold);
+            return this;
+        }
+
+        public EventLoopGroup build() {
+            return new EventLoopGroup(this);
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.haenu.platform.async.compact;
+
+/**
+ * 紧凑图中的任务。节点没有TaskWrapper，通过run和节点下标读取上游结果。
+ * 普通的ITask也可以直接加入紧凑图，它拿到的是节点的param，allWrappers为空map。
+ */
+@FunctionalInterface
+public interface ICompactTask<V> {
+    /**
+     * @param run  本次执行，可通过run.getGraph().predecessors(node)遍历上游节点，用run.getResult读取结果
+     * @param node 当前节点下标
+     */
+    V action(CompactRun run, int node);
+}
@@ -0,0 +1,14 @@
+package com.haenu.platform.async.exception;
+
+/**
+ * 任务所属的资源key已达到并发上限，并且排队已满或等待超时，则抛该exception
+ */
+public class LimitExceededException extends RuntimeException {
+    public LimitExceededException() {
+        super();
+    }
+
+    public LimitExceededException(String message) {
+        super(message);
+    }
+}
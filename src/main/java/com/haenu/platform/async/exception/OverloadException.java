@@ -0,0 +1,14 @@
+package com.haenu.platform.async.exception;
+
+/**
+ * 线程池排队过长，估算的排队延迟已超过整组任务的超时时间，拒绝执行本次run，则抛该exception
+ */
+public class OverloadException extends RuntimeException {
+    public OverloadException() {
+        super();
+    }
+
+    public OverloadException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,14 @@
+package com.haenu.platform.async.exception;
+
+/**
+ * DAG定义解析、校验失败时抛该exception
+ */
+public class PlanException extends RuntimeException {
+    public PlanException(String message) {
+        super(message);
+    }
+
+    public PlanException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
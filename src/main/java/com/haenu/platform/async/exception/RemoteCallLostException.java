@@ -0,0 +1,15 @@
+package com.haenu.platform.async.exception;
+
+/**
+ * 远程worker回执收到请求后连接断开，任务可能已经在worker上执行过，则抛该exception。
+ * 结果未知，不做转移，避免非幂等任务被执行两次。
+ */
+public class RemoteCallLostException extends RemoteTaskException {
+    public RemoteCallLostException() {
+        super();
+    }
+
+    public RemoteCallLostException(String message) {
+        super(message);
+    }
+}
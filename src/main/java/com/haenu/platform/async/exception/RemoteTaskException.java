@@ -0,0 +1,14 @@
+package com.haenu.platform.async.exception;
+
+/**
+ * 远程worker上执行任务时，任务本身抛出异常，则抛该exception。传输失败不用它，而是按IOException处理。
+ */
+public class RemoteTaskException extends RuntimeException {
+    public RemoteTaskException() {
+        super();
+    }
+
+    public RemoteTaskException(String message) {
+        super(message);
+    }
+}
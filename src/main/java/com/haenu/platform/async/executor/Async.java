@@ -2,6 +2,10 @@ package com.haenu.platform.async.executor;
 
 import com.haenu.platform.async.callback.IGroupCallback;
 import com.haenu.platform.async.callback.defback.DefaultGroupCallback;
+import com.haenu.platform.async.exception.OverloadException;
+import com.haenu.platform.async.metrics.BlockingKind;
+import com.haenu.platform.async.trace.ExecutionTracer;
+import com.haenu.platform.async.trace.TraceKind;
 import com.haenu.platform.async.wrapper.TaskWrapper;
 
 import java.util.*;
@@ -26,6 +30,22 @@ public class Async {
      */
     private static ExecutorService executorService;
 
+    /**
+     * 异步run的超时定时器，只负责到期时停止整组任务，不执行任务本身
+     */
+    private static final ScheduledThreadPoolExecutor TIMER = newTimer();
+
+    private static ScheduledThreadPoolExecutor newTimer() {
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "Async Timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        //正常完成的run会取消定时，直接从队列移除，避免大量超时时间较长的定时堆积
+        timer.setRemoveOnCancelPolicy(true);
+        return timer;
+    }
+
     /**
      * 同步阻塞,直到所有都完成,或失败
      * 如果想自定义线程池，请传pool。不自定义的话，就走默认的COMMON_POOL
@@ -39,85 +59,218 @@ public class Async {
     }
 
 
+    public static boolean beginTask(long timeout, RunOptions options, TaskWrapper... taskWrappers) throws ExecutionException, InterruptedException {
+        return beginTask(timeout, COMMON_POOL, options, taskWrappers);
+    }
+
     public static boolean beginTask(long timeout, ExecutorService executorService, TaskWrapper... taskWrappers) throws ExecutionException, InterruptedException {
+        return beginTask(timeout, executorService, RunOptions.defaults(), taskWrappers);
+    }
+
+    public static boolean beginTask(long timeout, ExecutorService executorService, RunOptions options, TaskWrapper... taskWrappers) throws ExecutionException, InterruptedException {
         if (taskWrappers == null || taskWrappers.length == 0) {
             return false;
         }
         List<TaskWrapper> taskWrapperList = Arrays.stream(taskWrappers).collect(Collectors.toList());
-        return beginTask(timeout, executorService, taskWrapperList);
+        return beginTask(timeout, executorService, options, taskWrapperList);
+    }
+
+    public static boolean beginTask(long timeout, ExecutorService executorService, List<TaskWrapper> taskWrappers) throws ExecutionException, InterruptedException {
+        return beginTask(timeout, executorService, RunOptions.defaults(), taskWrappers);
     }
 
     /**
      * 出发点
+     * options：本次run的可选配置，如DAG模板名
      */
-    public static boolean beginTask(long timeout, ExecutorService executorService, List<TaskWrapper> taskWrappers) throws ExecutionException, InterruptedException {
+    public static boolean beginTask(long timeout, ExecutorService executorService, RunOptions options, List<TaskWrapper> taskWrappers) throws ExecutionException, InterruptedException {
+        return beginTask(timeout, executorService, options, taskWrappers, new RunScope(executorService, options));
+    }
+
+    /**
+     * scope：本次run所属的作用域，超时时关闭作用域，停止并中断所有尚未结束的任务
+     */
+    static boolean beginTask(long timeout, ExecutorService executorService, RunOptions options, List<TaskWrapper> taskWrappers, RunScope scope) throws ExecutionException, InterruptedException {
         // 如果我们的工作单元为空 我们则不处理
         if (taskWrappers == null || taskWrappers.size() == 0) {
             return false;
         }
+        //线程池排队过长，本次run注定超时，直接拒绝
+        if (!admit(executorService, timeout, options)) {
+            stopAll(taskWrappers);
+            return false;
+        }
+        //本次run的上下文，整组任务共享
+        TaskWrapper<?, ?>[] runRoots = scope.addRoots(taskWrappers);
+        RunContext runContext = new RunContext(options, timeout, scope);
+        boolean traced = runContext.isTraced();
+        CompletableFuture[] futures = submit(timeout, executorService, runContext, taskWrappers);
+        long waitNanos = traced ? System.nanoTime() : runContext.measureStart();
+        try {
+            CompletableFuture.allOf(futures).get(timeout, TimeUnit.MILLISECONDS);
+            if (traced) {
+                ExecutionTracer.record(TraceKind.GROUP_WAIT, "group", runContext.getRunId(), waitNanos, System.nanoTime());
+            }
+            return true;
+        } catch (TimeoutException | ExecutionException e) {
+            //任务在FairExecutor中排队到截止时间被丢弃时，future以TimeoutException异常完成，同样按超时处理
+            if (e instanceof ExecutionException && !(e.getCause() instanceof TimeoutException)) {
+                throw (ExecutionException) e;
+            }
+            if (traced) {
+                ExecutionTracer.record(TraceKind.GROUP_WAIT, "group-timeout", runContext.getRunId(), waitNanos, System.nanoTime());
+            }
+            //停止所有尚未执行、正在执行的任务，中断正在执行的action，已出队的后继不再执行
+            scope.shutdown();
+            return false;
+        } finally {
+            runContext.recordBlocked(BlockingKind.GROUP, waitNanos);
+            runContext.finish();
+            scope.removeRoots(runRoots);
+        }
+    }
+
+    /**
+     * 非阻塞执行，返回整组任务的CompletableFuture，没有线程等待整组任务结束。
+     * 最后一个结束的任务完成该future，结果为传入的taskWrappers；到达超时时间时由定时器停止所有任务，future以TimeoutException异常完成。
+     * 线程池为FairExecutor且排队过长时拒绝执行，future以OverloadException异常完成。
+     */
+    public static CompletableFuture<List<TaskWrapper>> run(long timeout, TaskWrapper... taskWrappers) {
+        return run(timeout, COMMON_POOL, RunOptions.defaults(), taskWrappers);
+    }
+
+    public static CompletableFuture<List<TaskWrapper>> run(long timeout, ExecutorService executorService, TaskWrapper... taskWrappers) {
+        return run(timeout, executorService, RunOptions.defaults(), taskWrappers);
+    }
+
+    public static CompletableFuture<List<TaskWrapper>> run(long timeout, ExecutorService executorService, RunOptions options, TaskWrapper... taskWrappers) {
+        List<TaskWrapper> taskWrapperList = taskWrappers == null ? Collections.emptyList() : Arrays.asList(taskWrappers);
+        return run(timeout, executorService, options, taskWrapperList);
+    }
+
+    public static CompletableFuture<List<TaskWrapper>> run(long timeout, ExecutorService executorService, RunOptions options, List<TaskWrapper> taskWrappers) {
+        return run(timeout, executorService, options, taskWrappers, new RunScope(executorService, options));
+    }
+
+    static CompletableFuture<List<TaskWrapper>> run(long timeout, ExecutorService executorService, RunOptions options, List<TaskWrapper> taskWrappers, RunScope scope) {
+        CompletableFuture<List<TaskWrapper>> result = new CompletableFuture<>();
+        if (taskWrappers == null || taskWrappers.size() == 0) {
+            result.complete(Collections.emptyList());
+            return result;
+        }
+        if (!admit(executorService, timeout, options)) {
+            stopAll(taskWrappers);
+            result.completeExceptionally(new OverloadException("expected queue delay exceeds timeout " + timeout + "ms"));
+            return result;
+        }
+        TaskWrapper<?, ?>[] runRoots = scope.addRoots(taskWrappers);
+        RunContext runContext = new RunContext(options, timeout, scope);
+        boolean traced = runContext.isTraced();
+        CompletableFuture[] futures = submit(timeout, executorService, runContext, taskWrappers);
+        long waitNanos = traced ? System.nanoTime() : 0;
+        ScheduledFuture<?> timeoutFuture = TIMER.schedule(() -> {
+            if (!result.isDone()) {
+                if (traced) {
+                    ExecutionTracer.record(TraceKind.GROUP_WAIT, "group-timeout", runContext.getRunId(), waitNanos, System.nanoTime());
+                }
+                scope.shutdown();
+                runContext.finish();
+                result.completeExceptionally(new TimeoutException());
+            }
+        }, timeout, TimeUnit.MILLISECONDS);
+        CompletableFuture.allOf(futures).whenComplete((ignored, ex) -> {
+            timeoutFuture.cancel(false);
+            runContext.finish();
+            scope.removeRoots(runRoots);
+            if (ex != null) {
+                Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+                if (cause instanceof TimeoutException) {
+                    scope.shutdown();
+                }
+                result.completeExceptionally(cause);
+                return;
+            }
+            if (traced && !result.isDone()) {
+                ExecutionTracer.record(TraceKind.GROUP_WAIT, "group", runContext.getRunId(), waitNanos, System.nanoTime());
+            }
+            result.complete(taskWrappers);
+        });
+        return result;
+    }
+
+    /**
+     * 准入判断：FairExecutor估算的（同类别及更高类别的）排队延迟超过整组任务的超时时间时拒绝
+     */
+    private static boolean admit(ExecutorService executorService, long timeout, RunOptions options) {
+        return !(executorService instanceof FairExecutor)
+                || ((FairExecutor) executorService).admit(TimeUnit.MILLISECONDS.toNanos(timeout),
+                options == null ? RunPriority.NORMAL : options.getPriority());
+    }
+
+    /**
+     * 把所有起点任务提交到线程池，返回各起点的future
+     */
+    private static CompletableFuture[] submit(long timeout, ExecutorService executorService, RunContext runContext, List<TaskWrapper> taskWrappers) {
         //保存线程池变量
         Async.executorService = executorService;
         //定义一个map，存放所有的wrapper，key为wrapper的唯一id，value是该wrapper，可以从value中获取wrapper的result
         Map<String, TaskWrapper> forParamUseWrappers = new ConcurrentHashMap<>();
+        boolean traced = runContext.isTraced();
         CompletableFuture[] futures = new CompletableFuture[taskWrappers.size()];
         for (int i = 0; i < taskWrappers.size(); i++) {
             TaskWrapper wrapper = taskWrappers.get(i);
-            futures[i] = CompletableFuture.runAsync(() -> wrapper.task(executorService, timeout, forParamUseWrappers), executorService);
+            long submitNanos = traced ? System.nanoTime() : 0;
+            futures[i] = runContext.submit(executorService, () -> {
+                if (traced) {
+                    ExecutionTracer.record(TraceKind.QUEUED, wrapper.getId(), runContext.getRunId(), submitNanos, System.nanoTime());
+                }
+                wrapper.task(executorService, timeout, forParamUseWrappers, runContext);
+            }, wrapper::stopNow);
         }
-        try {
-            CompletableFuture.allOf(futures).get(timeout, TimeUnit.MILLISECONDS);
-            return true;
-        } catch (TimeoutException e) {
-            // 超时异常处理
-            Set<TaskWrapper> set = new HashSet<>();
-            // 递归获取所有的taskWrappers，通过一个Set将所有taskWrappers通过递归的方式统计起来。
-            totalTasks(taskWrappers, set);
-            // 循环停止所有尚未执行、正在执行的任务。注意已经执行完毕的任务是不处理的（包括异常的）。
-            for (TaskWrapper wrapper : set) {
-                wrapper.stopNow();
-            }
-            return false;
+        return futures;
+    }
+
+    /**
+     * 超时处理：停止整组任务
+     */
+    private static void stopAll(List<TaskWrapper> taskWrappers) {
+        Set<TaskWrapper> set = new HashSet<>();
+        // 递归获取所有的taskWrappers，通过一个Set将所有taskWrappers通过递归的方式统计起来。
+        totalTasks(taskWrappers, set);
+        // 循环停止所有尚未执行、正在执行的任务。注意已经执行完毕的任务是不处理的（包括异常的）。
+        for (TaskWrapper wrapper : set) {
+            wrapper.stopNow();
         }
     }
 
     /**
      * 异步执行,直到所有都完成,或失败后，发起回调
+     * 基于run实现，回调由最后结束的任务线程或超时定时器发起，不占用线程等待
      */
     public static void beginTaskAsync(long timeout, ExecutorService executorService, IGroupCallback groupCallback, TaskWrapper... taskWrappers) {
+        beginTaskAsync(timeout, executorService, RunOptions.defaults(), groupCallback, taskWrappers);
+    }
+
+    /**
+     * options：本次run的可选配置，如优先级类别
+     */
+    public static void beginTaskAsync(long timeout, ExecutorService executorService, RunOptions options, IGroupCallback groupCallback, TaskWrapper... taskWrappers) {
         if (groupCallback == null) {
             groupCallback = new DefaultGroupCallback();
         }
         IGroupCallback finalGroupCallback = groupCallback;
-        if (executorService != null) {
-            executorService.submit(() -> {
-                try {
-                    boolean success = beginTask(timeout, executorService, taskWrappers);
-                    if (success) {
-                        finalGroupCallback.success(Arrays.asList(taskWrappers));
-                    } else {
-                        finalGroupCallback.failure(Arrays.asList(taskWrappers), new TimeoutException());
-                    }
-                } catch (ExecutionException | InterruptedException e) {
-                    e.printStackTrace();
-                    finalGroupCallback.failure(Arrays.asList(taskWrappers), e);
-                }
-            });
-        } else {
-            COMMON_POOL.submit(() -> {
-                try {
-                    boolean success = beginTask(timeout, COMMON_POOL, taskWrappers);
-                    if (success) {
-                        finalGroupCallback.success(Arrays.asList(taskWrappers));
+        List<TaskWrapper> taskWrapperList = Arrays.asList(taskWrappers);
+        run(timeout, executorService == null ? COMMON_POOL : executorService, options, taskWrapperList)
+                .whenComplete((wrappers, ex) -> {
+                    if (ex == null) {
+                        finalGroupCallback.success(taskWrapperList);
                     } else {
-                        finalGroupCallback.failure(Arrays.asList(taskWrappers), new TimeoutException());
+                        if (!(ex instanceof TimeoutException)) {
+                            ex.printStackTrace();
+                        }
+                        finalGroupCallback.failure(taskWrapperList, ex instanceof Exception ? (Exception) ex : new ExecutionException(ex));
                     }
-                } catch (ExecutionException | InterruptedException e) {
-                    e.printStackTrace();
-                    finalGroupCallback.failure(Arrays.asList(taskWrappers), e);
-                }
-            });
-        }
-
+                });
     }
 
     /**
@@ -155,6 +308,13 @@ public class Async {
         }
     }
 
+    /**
+     * 默认线程池，供预热等同包工具使用
+     */
+    static ThreadPoolExecutor commonPool() {
+        return COMMON_POOL;
+    }
+
     public static String getThreadCount() {
         return "activeCount=" + COMMON_POOL.getActiveCount() +
                 "  completedCount " + COMMON_POOL.getCompletedTaskCount() +
@@ -0,0 +1,23 @@
+package com.haenu.platform.async.executor;
+
+/**
+ * 任务action的执行器类别，用于按负载类型隔离线程池
+ */
+public enum ExecutorClass {
+    /**
+     * 在编排线程上直接执行，适合极短的转换类任务
+     */
+    INLINE,
+    /**
+     * 在CPU线程池执行，线程数等于CPU核数
+     */
+    CPU,
+    /**
+     * 在IO线程池执行，适合阻塞的RPC、数据库调用
+     */
+    IO,
+    /**
+     * 根据历史执行的耗时和CPU占比自动选择INLINE、CPU或IO
+     */
+    AUTO
+}
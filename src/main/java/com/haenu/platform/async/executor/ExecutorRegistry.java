@@ -0,0 +1,76 @@
+package com.haenu.platform.async.executor;
+
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 按名字注册的线程池，任务可以通过名字或ExecutorClass指定action在哪个线程池执行，实现线程池隔离。
+ * 内置cpu、io两个线程池，第一次使用时创建，也可以在使用前用register替换为自定义的线程池。
+ */
+public class ExecutorRegistry {
+    public static final String CPU = "cpu";
+    public static final String IO = "io";
+
+    private static final Map<String, ExecutorService> EXECUTORS = new ConcurrentHashMap<>();
+
+    private ExecutorRegistry() {
+    }
+
+    public static void register(String name, ExecutorService executorService) {
+        EXECUTORS.put(name, executorService);
+    }
+
+    /**
+     * 按名字获取线程池，cpu、io未注册时按默认参数创建
+     */
+    public static ExecutorService get(String name) {
+        ExecutorService executorService = EXECUTORS.get(name);
+        if (executorService != null) {
+            return executorService;
+        }
+        if (CPU.equals(name)) {
+            return EXECUTORS.computeIfAbsent(name, key -> newPool("Async CPU", Runtime.getRuntime().availableProcessors()));
+        }
+        if (IO.equals(name)) {
+            return EXECUTORS.computeIfAbsent(name, key -> newPool("Async IO", Math.max(64, Runtime.getRuntime().availableProcessors() * 8)));
+        }
+        throw new IllegalArgumentException("no executor named " + name);
+    }
+
+    /**
+     * 按类别获取线程池，INLINE返回null，表示在当前线程执行
+     */
+    public static ExecutorService get(ExecutorClass executorClass) {
+        switch (executorClass) {
+            case CPU:
+                return get(CPU);
+            case IO:
+                return get(IO);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * 关闭所有注册的线程池
+     */
+    public static void shutDown() {
+        for (ExecutorService executorService : EXECUTORS.values()) {
+            executorService.shutdown();
+        }
+        EXECUTORS.clear();
+    }
+
+    private static ExecutorService newPool(String prefix, int threads) {
+        AtomicInteger index = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+}
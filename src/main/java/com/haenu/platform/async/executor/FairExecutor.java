@@ -0,0 +1,664 @@
+package com.haenu.platform.async.executor;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 多租户公平调度的线程池，多个run共用同一个线程池时，按租户（未设置租户时按run）公平分配线程。
+ * <p>
+ * 每个租户/run是一个flow，各自排队。工作线程按赤字轮转（DRR）在有任务的flow之间调度：
+ * 1.轮到某个flow时，它的赤字增加 quantum * weight，赤字为正才能取任务。
+ * 2.取任务时按该flow的平均任务耗时预扣赤字，执行完按实际耗时修正，耗时长的flow自然被少调度。
+ * 3.flow的队列取空后保留FLOW_IDLE_NANOS，期间再有任务时沿用原来的平均耗时和欠下的赤字；新flow的平均耗时取全局平均值。
+ * 这样大图一次提交上百个节点，也只占用和其权重相当的线程时间，小图不会排在大图后面。
+ * <p>
+ * 线程数固定。引擎内部的等待（beginNext汇合后继、动态任务的并行度限制和汇合、可缓存子图等待其他run）都通过await进行，
+ * 会先帮忙执行自己flow中排队的任务，所等待的任务要么已被取出正在执行，要么由自己执行，不会因为互相等待而死锁。
+ * action内部自行阻塞等待其他任务不在此列，仍可能占满线程。
+ * 有更高类别的任务排队时，等待中的线程先执行更高类别的任务。
+ * <p>
+ * 截止时间：任务可以带截止时间，已过期的任务在出队时、或由定期的批量清理直接丢弃，只执行丢弃回调，不再占用线程执行。
+ * 准入：按排队任务数和平均任务耗时估算排队延迟，Async发起新run时，估算的排队延迟超过run的超时时间则拒绝该run。
+ * <p>
+ * 优先级：每个RunPriority类别各有一组flow，严格按类别调度，有高类别的任务排队时不取低类别的任务，DRR只在同一类别内进行。
+ * 准入估算只计算同类别及更高类别的排队任务。
+ * <p>
+ * 通过Async.beginTask(timeout, fairExecutor, options, ...)使用，租户、权重和优先级在RunOptions中设置。
+ */
+public class FairExecutor extends AbstractExecutorService {
+    /**
+     * 没有指定flow的任务归到这里
+     */
+    public static final String DEFAULT_FLOW = "default";
+
+    /**
+     * 每轮给flow增加的赤字（纳秒），乘以flow的权重
+     */
+    private static final long QUANTUM_NANOS = TimeUnit.MICROSECONDS.toNanos(500);
+
+    /**
+     * 批量清理过期任务的间隔
+     */
+    private static final long SWEEP_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    /**
+     * 队列取空的flow保留的时间，超过后移除
+     */
+    private static final long FLOW_IDLE_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private static final AtomicInteger POOL_SEQ = new AtomicInteger();
+
+    private static final ThreadLocal<long[]> HELPED = ThreadLocal.withInitial(() -> new long[1]);
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition terminated = lock.newCondition();
+
+    private static final RunPriority[] PRIORITIES = RunPriority.values();
+
+    /**
+     * 以下按RunPriority.ordinal()分级，0为最高
+     */
+    private final Map<String, Flow>[] flows;
+    /**
+     * 有任务排队的flow，按轮转顺序排列
+     */
+    private final ArrayDeque<Flow>[] active;
+    private final int[] queuedByLevel;
+    private final Worker[] workers;
+
+    private int queued;
+    private int alive;
+    private volatile boolean shutdown;
+
+    /**
+     * 所有任务耗时的移动平均，用于估算排队延迟
+     */
+    private long avgTaskNanos = QUANTUM_NANOS / 4;
+    private long lastSweepNanos = System.nanoTime();
+    private long lastIdleSweepNanos = lastSweepNanos;
+    private long dropped;
+    private long rejected;
+
+    public FairExecutor(int threads) {
+        this(threads, "Fair-" + POOL_SEQ.incrementAndGet());
+    }
+
+    @SuppressWarnings("unchecked")
+    public FairExecutor(int threads, String name) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be positive");
+        }
+        flows = new Map[PRIORITIES.length];
+        active = new ArrayDeque[PRIORITIES.length];
+        for (int level = 0; level < PRIORITIES.length; level++) {
+            flows[level] = new HashMap<>();
+            active[level] = new ArrayDeque<>();
+        }
+        queuedByLevel = new int[PRIORITIES.length];
+        workers = new Worker[threads];
+        alive = threads;
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Worker(name + "-" + (i + 1));
+            workers[i].start();
+        }
+    }
+
+    /**
+     * 返回提交到指定flow的Executor视图
+     *
+     * @param weight flow的权重，权重越大分到的线程时间越多
+     */
+    public Executor forFlow(String flowKey, int weight) {
+        String key = flowKey == null ? DEFAULT_FLOW : flowKey;
+        int w = Math.max(1, weight);
+        return task -> execute(key, w, task);
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        execute(DEFAULT_FLOW, 1, command);
+    }
+
+    public void execute(String flowKey, int weight, Runnable command) {
+        execute(flowKey, weight, 0, command, null);
+    }
+
+    /**
+     * 提交带截止时间的任务
+     *
+     * @param deadlineNanos 截止时间，System.nanoTime()口径，0表示没有截止时间
+     * @param onDrop        任务过期被丢弃时执行的回调，在工作线程上执行，可以为null
+     */
+    public void execute(String flowKey, int weight, long deadlineNanos, Runnable command, Runnable onDrop) {
+        execute(flowKey, weight, RunPriority.NORMAL, deadlineNanos, command, onDrop);
+    }
+
+    /**
+     * 按优先级类别提交带截止时间的任务
+     */
+    public void execute(String flowKey, int weight, RunPriority priority, long deadlineNanos, Runnable command, Runnable onDrop) {
+        if (command == null) {
+            throw new NullPointerException();
+        }
+        int level = level(priority);
+        lock.lock();
+        try {
+            if (shutdown) {
+                throw new RejectedExecutionException("executor has been shut down");
+            }
+            Flow flow = flows[level].get(flowKey);
+            if (flow == null) {
+                flow = new Flow(flowKey, level, avgTaskNanos);
+                flows[level].put(flowKey, flow);
+            }
+            flow.weight = weight;
+            if (flow.queue.isEmpty()) {
+                active[level].addLast(flow);
+                flow.idleSince = 0;
+            }
+            flow.queue.addLast(new Entry(flow, command, deadlineNanos, onDrop));
+            queued++;
+            queuedByLevel[level]++;
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 等待future完成。当前线程是本线程池的工作线程时，等待前先执行flowKey中排队的任务。
+     */
+    public void await(Future<?> future, String flowKey) throws InterruptedException, ExecutionException {
+        await(future, flowKey, RunPriority.NORMAL);
+    }
+
+    /**
+     * 等待future完成，帮忙执行的是priority类别中flowKey排队的任务
+     */
+    public void await(Future<?> future, String flowKey, RunPriority priority) throws InterruptedException, ExecutionException {
+        help(future, flowKey, level(priority), false, 0);
+        future.get();
+    }
+
+    /**
+     * 限时等待future完成，规则同await(future, flowKey)
+     */
+    public void await(Future<?> future, String flowKey, long timeout, TimeUnit unit)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        await(future, flowKey, RunPriority.NORMAL, timeout, unit);
+    }
+
+    public void await(Future<?> future, String flowKey, RunPriority priority, long timeout, TimeUnit unit)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        help(future, flowKey, level(priority), true, deadline);
+        future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 当前线程在help中执行其他任务的累计时间，汇合等待的统计扣除这部分
+     */
+    static long helpedNanos() {
+        return HELPED.get()[0];
+    }
+
+    private void help(Future<?> future, String flowKey, int level, boolean timed, long deadline) {
+        Thread current = Thread.currentThread();
+        if (!(current instanceof Worker) || ((Worker) current).owner() != this) {
+            return;
+        }
+        while (!future.isDone() && (!timed || deadline - System.nanoTime() > 0)) {
+            Entry entry;
+            boolean expired;
+            lock.lock();
+            try {
+                //有更高类别的任务排队时先执行它们，低类别的run等待汇合时不会挡住高类别的任务。
+                //嵌套只会往更高的类别走，嵌套深度不超过类别数
+                Flow flow = null;
+                for (int i = 0; i < level; i++) {
+                    if (queuedByLevel[i] > 0) {
+                        flow = selectLocked();
+                        break;
+                    }
+                }
+                if (flow == null) {
+                    flow = flows[level].get(flowKey);
+                    if (flow == null || flow.queue.isEmpty()) {
+                        return;
+                    }
+                }
+                entry = takeLocked(flow);
+                expired = entry.expired(System.nanoTime());
+                if (expired) {
+                    dropped++;
+                }
+            } finally {
+                lock.unlock();
+            }
+            //按任务的总耗时累加，嵌套的help已包含在内，不重复累加
+            long[] helped = HELPED.get();
+            long before = helped[0];
+            long start = System.nanoTime();
+            try {
+                if (expired) {
+                    drop(entry);
+                } else {
+                    runEntry(entry);
+                }
+            } finally {
+                helped[0] = before + System.nanoTime() - start;
+            }
+        }
+    }
+
+    /**
+     * 估算新提交的任务的排队延迟（纳秒）
+     */
+    public long expectedQueueDelayNanos() {
+        lock.lock();
+        try {
+            return queued * avgTaskNanos / workers.length;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 准入判断：估算的排队延迟加上一个任务的平均耗时超过budgetNanos时拒绝，返回false
+     */
+    public boolean admit(long budgetNanos) {
+        return admit(budgetNanos, RunPriority.NORMAL);
+    }
+
+    /**
+     * 按优先级类别准入，只有同类别及更高类别的排队任务会排在新run的前面
+     */
+    public boolean admit(long budgetNanos, RunPriority priority) {
+        int level = level(priority);
+        lock.lock();
+        try {
+            int ahead = 0;
+            for (int i = 0; i <= level; i++) {
+                ahead += queuedByLevel[i];
+            }
+            if (ahead * avgTaskNanos / workers.length + avgTaskNanos <= budgetNanos) {
+                return true;
+            }
+            rejected++;
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 取下一个要执行的任务，调用前需持有锁且queued > 0。
+     * 到了清理间隔时先批量清理所有flow中的过期任务；取出的任务已过期时放入dropped，继续取下一个。
+     * 所有任务都过期时返回null。
+     */
+    private Entry nextLocked(long now, List<Entry> dropList) {
+        if (now - lastSweepNanos >= SWEEP_INTERVAL_NANOS) {
+            lastSweepNanos = now;
+            sweepLocked(now, dropList);
+        }
+        if (now - lastIdleSweepNanos >= FLOW_IDLE_NANOS) {
+            lastIdleSweepNanos = now;
+            expireIdleLocked(now);
+        }
+        while (queued > 0) {
+            Flow flow = selectLocked();
+            Entry entry = takeLocked(flow);
+            if (!entry.expired(now)) {
+                return entry;
+            }
+            //丢弃的任务没有占用线程，退回预扣的赤字
+            flow.deficit += entry.charge;
+            dropList.add(entry);
+            dropped++;
+        }
+        return null;
+    }
+
+    /**
+     * 清理所有flow中的过期任务
+     */
+    private void sweepLocked(long now, List<Entry> dropList) {
+        List<Flow> emptied = null;
+        for (ArrayDeque<Flow> levelActive : active) {
+            for (Flow flow : levelActive) {
+                Iterator<Entry> iterator = flow.queue.iterator();
+                while (iterator.hasNext()) {
+                    Entry entry = iterator.next();
+                    if (entry.expired(now)) {
+                        iterator.remove();
+                        dropList.add(entry);
+                        queued--;
+                        queuedByLevel[flow.level]--;
+                        dropped++;
+                    }
+                }
+                if (flow.queue.isEmpty()) {
+                    if (emptied == null) {
+                        emptied = new ArrayList<>();
+                    }
+                    emptied.add(flow);
+                }
+            }
+        }
+        if (emptied != null) {
+            for (Flow flow : emptied) {
+                idleLocked(flow, now);
+            }
+        }
+    }
+
+    /**
+     * flow的队列取空：移出轮转，保留平均耗时和欠下的赤字，结余的赤字清零，不能攒到下次使用
+     */
+    private void idleLocked(Flow flow, long now) {
+        active[flow.level].remove(flow);
+        flow.deficit = Math.min(flow.deficit, 0);
+        flow.idleSince = now == 0 ? 1 : now;
+    }
+
+    /**
+     * 移除空闲超过FLOW_IDLE_NANOS的flow
+     */
+    private void expireIdleLocked(long now) {
+        for (Map<String, Flow> levelFlows : flows) {
+            levelFlows.values().removeIf(flow -> flow.idleSince != 0 && now - flow.idleSince >= FLOW_IDLE_NANOS);
+        }
+    }
+
+    private void drop(Entry entry) {
+        if (entry.onDrop == null) {
+            return;
+        }
+        try {
+            entry.onDrop.run();
+        } catch (Throwable e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * 在有任务排队的最高类别中按DRR选出下一个可以取任务的flow，调用前需持有锁且queued > 0
+     */
+    private Flow selectLocked() {
+        int level = 0;
+        while (queuedByLevel[level] == 0) {
+            level++;
+        }
+        ArrayDeque<Flow> levelActive = active[level];
+        for (; ; ) {
+            Flow flow = levelActive.peekFirst();
+            if (flow.deficit > 0) {
+                return flow;
+            }
+            flow.deficit += QUANTUM_NANOS * flow.weight;
+            levelActive.addLast(levelActive.pollFirst());
+        }
+    }
+
+    private Entry takeLocked(Flow flow) {
+        Entry entry = flow.queue.pollFirst();
+        queued--;
+        queuedByLevel[flow.level]--;
+        entry.charge = flow.avgCost;
+        flow.deficit -= entry.charge;
+        if (flow.queue.isEmpty()) {
+            //flow没有任务了，移出轮转，保留一段时间，下次有任务时沿用它的历史
+            idleLocked(flow, System.nanoTime());
+        }
+        return entry;
+    }
+
+    private static int level(RunPriority priority) {
+        return priority == null ? RunPriority.NORMAL.ordinal() : priority.ordinal();
+    }
+
+    private void runEntry(Entry entry) {
+        long start = System.nanoTime();
+        try {
+            entry.task.run();
+        } catch (Throwable e) {
+            e.printStackTrace();
+        }
+        long cost = System.nanoTime() - start;
+        lock.lock();
+        try {
+            Flow flow = entry.flow;
+            //按实际耗时修正预扣的赤字，flow空闲时只保留欠下的部分
+            flow.deficit -= cost - entry.charge;
+            if (flow.idleSince != 0) {
+                flow.deficit = Math.min(flow.deficit, 0);
+            }
+            flow.avgCost += (cost - flow.avgCost) >> 3;
+            avgTaskNanos += (cost - avgTaskNanos) >> 3;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void workerLoop() {
+        List<Entry> dropList = new ArrayList<>();
+        try {
+            for (; ; ) {
+                Entry entry;
+                lock.lock();
+                try {
+                    while (queued == 0) {
+                        if (shutdown) {
+                            return;
+                        }
+                        notEmpty.await();
+                    }
+                    entry = nextLocked(System.nanoTime(), dropList);
+                } finally {
+                    lock.unlock();
+                }
+                //过期任务的丢弃回调在锁外批量执行
+                if (!dropList.isEmpty()) {
+                    for (Entry droppedEntry : dropList) {
+                        drop(droppedEntry);
+                    }
+                    dropList.clear();
+                }
+                if (entry != null) {
+                    runEntry(entry);
+                }
+            }
+        } catch (InterruptedException e) {
+            //shutdownNow
+        } finally {
+            lock.lock();
+            try {
+                if (--alive == 0) {
+                    terminated.signalAll();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 当前排队的任务数
+     */
+    public int getQueued() {
+        lock.lock();
+        try {
+            return queued;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 指定类别当前排队的任务数
+     */
+    public int getQueued(RunPriority priority) {
+        lock.lock();
+        try {
+            return queuedByLevel[level(priority)];
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 因过期被丢弃的任务数
+     */
+    public long getDropped() {
+        lock.lock();
+        try {
+            return dropped;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 准入时被拒绝的run数
+     */
+    public long getRejected() {
+        lock.lock();
+        try {
+            return rejected;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        lock.lock();
+        try {
+            shutdown = true;
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        List<Runnable> tasks = new ArrayList<>();
+        lock.lock();
+        try {
+            shutdown = true;
+            for (int level = 0; level < PRIORITIES.length; level++) {
+                for (Flow flow : active[level]) {
+                    for (Entry entry : flow.queue) {
+                        tasks.add(entry.task);
+                    }
+                    flow.queue.clear();
+                }
+                active[level].clear();
+                flows[level].clear();
+                queuedByLevel[level] = 0;
+            }
+            queued = 0;
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        for (Worker worker : workers) {
+            worker.interrupt();
+        }
+        return tasks;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        lock.lock();
+        try {
+            return shutdown && alive == 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lock();
+        try {
+            while (!(shutdown && alive == 0)) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = terminated.awaitNanos(nanos);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static final class Flow {
+        private final String key;
+        private final int level;
+        private final ArrayDeque<Entry> queue = new ArrayDeque<>();
+        private int weight = 1;
+        private long deficit;
+        /**
+         * 任务耗时的移动平均，用于取任务时预扣赤字
+         */
+        private long avgCost;
+        /**
+         * 队列取空的时间，System.nanoTime()口径，0表示有任务排队
+         */
+        private long idleSince;
+
+        private Flow(String key, int level, long avgCost) {
+            this.key = key;
+            this.level = level;
+            this.avgCost = avgCost;
+        }
+    }
+
+    private static final class Entry {
+        private final Flow flow;
+        private final Runnable task;
+        private final long deadlineNanos;
+        private final Runnable onDrop;
+        private long charge;
+
+        private Entry(Flow flow, Runnable task, long deadlineNanos, Runnable onDrop) {
+            this.flow = flow;
+            this.task = task;
+            this.deadlineNanos = deadlineNanos;
+            this.onDrop = onDrop;
+        }
+
+        private boolean expired(long now) {
+            return deadlineNanos != 0 && now - deadlineNanos >= 0;
+        }
+    }
+
+    private final class Worker extends Thread {
+        private Worker(String name) {
+            super(name);
+            setDaemon(true);
+        }
+
+        private FairExecutor owner() {
+            return FairExecutor.this;
+        }
+
+        @Override
+        public void run() {
+            workerLoop();
+        }
+    }
+}
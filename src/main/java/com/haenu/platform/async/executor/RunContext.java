@@ -0,0 +1,381 @@
+package com.haenu.platform.async.executor;
+
+import com.haenu.platform.async.metrics.BlockingKind;
+import com.haenu.platform.async.metrics.EngineStats;
+import com.haenu.platform.async.metrics.TemplateStats;
+import com.haenu.platform.async.trace.ExecutionTracer;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 一次run（一次beginTask发起的整组任务）的上下文，由Async创建，随task()传递给这组任务中的每一个TaskWrapper。
+ */
+public class RunContext {
+    private static final AtomicLong RUN_ID = new AtomicLong();
+
+    /**
+     * 当前线程正在执行的submit任务
+     */
+    private static final ThreadLocal<Branch> CURRENT = new ThreadLocal<>();
+
+    /**
+     * run的唯一标识
+     */
+    private final long runId;
+
+    /**
+     * 本次run是否被追踪采样
+     */
+    private final boolean traced;
+
+    private final RunOptions options;
+
+    /**
+     * 所属模板的引擎计数，未开启统计时为null
+     */
+    private final TemplateStats stats;
+
+    /**
+     * 公平调度的flow，租户优先，否则按run区分
+     */
+    private final String flowKey;
+
+    /**
+     * 整组任务的截止时间，System.nanoTime()口径，0表示没有截止时间
+     */
+    private final long deadlineNanos;
+
+    /**
+     * 本次run所属的作用域，为null时不受作用域管理
+     */
+    private final RunScope scope;
+
+    /**
+     * 本次run在引擎内部阻塞的时间（按BlockingKind）和action的耗时，只在开启统计时记录
+     */
+    private final AtomicLongArray blockedNanos;
+    private final AtomicLong actionNanos;
+    private final AtomicInteger finished;
+
+    public RunContext() {
+        this(RunOptions.defaults());
+    }
+
+    public RunContext(RunOptions options) {
+        this(options, 0);
+    }
+
+    /**
+     * @param timeout 整组任务的超时时间（毫秒），小于等于0表示没有截止时间
+     */
+    public RunContext(RunOptions options, long timeout) {
+        this(options, timeout, null);
+    }
+
+    public RunContext(RunOptions options, long timeout, RunScope scope) {
+        this.scope = scope;
+        this.deadlineNanos = timeout > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout) : 0;
+        this.runId = RUN_ID.incrementAndGet();
+        this.traced = ExecutionTracer.shouldSample();
+        this.options = options == null ? RunOptions.defaults() : options;
+        this.stats = EngineStats.forTemplate(this.options.getTemplate());
+        this.flowKey = this.options.getTenant() != null ? this.options.getTenant() : "run-" + runId;
+        if (stats != null) {
+            stats.incrementRuns();
+            this.blockedNanos = new AtomicLongArray(BlockingKind.values().length);
+            this.actionNanos = new AtomicLong();
+            this.finished = new AtomicInteger();
+        } else {
+            this.blockedNanos = null;
+            this.actionNanos = null;
+            this.finished = null;
+        }
+    }
+
+    public long getRunId() {
+        return runId;
+    }
+
+    public boolean isTraced() {
+        return traced;
+    }
+
+    public RunOptions getOptions() {
+        return options;
+    }
+
+    public TemplateStats getStats() {
+        return stats;
+    }
+
+    public String getFlowKey() {
+        return flowKey;
+    }
+
+    public RunScope getScope() {
+        return scope;
+    }
+
+    public long getDeadlineNanos() {
+        return deadlineNanos;
+    }
+
+    /**
+     * 开启统计时返回当前纳秒时间，作为一次计时的开始，否则返回0
+     */
+    public long measureStart() {
+        return stats == null ? 0 : System.nanoTime();
+    }
+
+    /**
+     * 记录一次引擎内部的阻塞等待，从startNanos到现在。startNanos为0或未开启统计时不记录
+     */
+    public void recordBlocked(BlockingKind kind, long startNanos) {
+        if (stats == null || startNanos == 0) {
+            return;
+        }
+        long nanos = System.nanoTime() - startNanos;
+        blockedNanos.addAndGet(kind.ordinal(), nanos);
+        stats.addBlockedNanos(kind, nanos);
+    }
+
+    /**
+     * 记录一次汇合等待，从startNanos到现在，扣除期间帮忙执行其他任务的时间。helpedStart为开始时的FairExecutor.helpedNanos()
+     */
+    private void recordJoin(BlockingKind kind, long startNanos, long helpedStart) {
+        if (stats == null || startNanos == 0) {
+            return;
+        }
+        long nanos = System.nanoTime() - startNanos - (FairExecutor.helpedNanos() - helpedStart);
+        blockedNanos.addAndGet(kind.ordinal(), nanos);
+        stats.addBlockedNanos(kind, nanos);
+    }
+
+    /**
+     * 记录一次action的耗时，从startNanos到现在。startNanos为0或未开启统计时不记录
+     */
+    public void recordAction(long startNanos) {
+        if (stats == null || startNanos == 0) {
+            return;
+        }
+        long nanos = System.nanoTime() - startNanos;
+        actionNanos.addAndGet(nanos);
+        stats.addActionNanos(nanos);
+    }
+
+    /**
+     * run结束（完成或超时）时调用一次，把本次run的阻塞总时间计入模板统计
+     */
+    void finish() {
+        if (stats != null && finished.compareAndSet(0, 1)) {
+            stats.recordRun(getBlockedNanos());
+        }
+    }
+
+    /**
+     * 本次run在kind处阻塞的累计时间，未开启统计时为0
+     */
+    public long getBlockedNanos(BlockingKind kind) {
+        return blockedNanos == null ? 0 : blockedNanos.get(kind.ordinal());
+    }
+
+    /**
+     * 本次run在引擎内部阻塞的总时间，未开启统计时为0
+     */
+    public long getBlockedNanos() {
+        if (blockedNanos == null) {
+            return 0;
+        }
+        long total = 0;
+        for (int i = 0; i < blockedNanos.length(); i++) {
+            total += blockedNanos.get(i);
+        }
+        return total;
+    }
+
+    /**
+     * 本次run中action的累计耗时，未开启统计时为0
+     */
+    public long getActionNanos() {
+        return actionNanos == null ? 0 : actionNanos.get();
+    }
+
+    /**
+     * 本次run向线程池提交任务。FairExecutor按本次run的优先级类别和所属的flow排队，并带上整组任务的截止时间，
+     * 排队到截止时间还没执行的任务会被丢弃：执行onDrop，停止作用域内的所有任务，返回的future以TimeoutException异常完成，
+     * 由等待它的一方按超时处理；其他线程池直接提交。
+     * <p>
+     * 返回的future在work以及work中通过detach交出去的任务全部结束后才完成。
+     */
+    public CompletableFuture<Void> submit(ExecutorService executorService, Runnable work, Runnable onDrop) {
+        Branch branch = new Branch(this);
+        dispatch(executorService, branch, work, onDrop);
+        return branch.future;
+    }
+
+    /**
+     * 在submit提交的任务中，把后续工作交给另一个线程池继续执行，当前线程不等待。
+     * 交出去的工作计入当前任务，submit返回的future等它结束后才完成，等待方看到的仍是完整的一段执行。
+     * 当前线程不在本次run提交的任务中时（如直接调用task()）返回false，调用方需要自己执行或等待。
+     */
+    public boolean detach(ExecutorService executorService, Runnable work, Runnable onDrop) {
+        Branch branch = CURRENT.get();
+        if (branch == null || branch.owner != this) {
+            return false;
+        }
+        branch.pending.incrementAndGet();
+        try {
+            dispatch(executorService, branch, work, onDrop);
+        } catch (RejectedExecutionException e) {
+            //当前线程自己还持有一个计数，这里不会减到0
+            branch.pending.decrementAndGet();
+            throw e;
+        }
+        return true;
+    }
+
+    private void dispatch(ExecutorService executorService, Branch branch, Runnable work, Runnable onDrop) {
+        Runnable task = () -> {
+            Branch previous = CURRENT.get();
+            CURRENT.set(branch);
+            try {
+                runScoped(work, onDrop);
+            } catch (Throwable e) {
+                branch.fail(e);
+            } finally {
+                if (previous == null) {
+                    CURRENT.remove();
+                } else {
+                    CURRENT.set(previous);
+                }
+                branch.release();
+            }
+        };
+        if (!(executorService instanceof FairExecutor)) {
+            executorService.execute(task);
+            return;
+        }
+        ((FairExecutor) executorService).execute(flowKey, options.getWeight(), options.getPriority(), deadlineNanos, task, () -> {
+            try {
+                onDrop.run();
+                //已过截止时间，整组任务注定超时，停止被丢弃任务的后继，不让它们一直停在INIT
+                if (scope != null) {
+                    scope.shutdown();
+                }
+            } finally {
+                branch.fail(new TimeoutException("task dropped after the run deadline"));
+                branch.release();
+            }
+        });
+    }
+
+    /**
+     * 属于作用域的任务，执行期间计入作用域；作用域关闭后出队的任务不再执行
+     */
+    private void runScoped(Runnable work, Runnable onDrop) {
+        if (scope == null) {
+            work.run();
+            return;
+        }
+        if (!scope.enter()) {
+            onDrop.run();
+            return;
+        }
+        try {
+            work.run();
+        } finally {
+            scope.exit();
+        }
+    }
+
+    /**
+     * 在线程池的工作线程中等待future完成。FairExecutor会先帮忙执行本次run排队的任务，避免固定线程数下互相等待。
+     */
+    public void join(ExecutorService executorService, Future<?> future) throws InterruptedException, ExecutionException {
+        if (executorService instanceof FairExecutor) {
+            ((FairExecutor) executorService).await(future, flowKey, options.getPriority());
+        } else {
+            future.get();
+        }
+    }
+
+    public void join(ExecutorService executorService, Future<?> future, long timeout, TimeUnit unit)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        if (executorService instanceof FairExecutor) {
+            ((FairExecutor) executorService).await(future, flowKey, options.getPriority(), timeout, unit);
+        } else {
+            future.get(timeout, unit);
+        }
+    }
+
+    /**
+     * 同join，等待的时间计入kind，FairExecutor帮忙执行其他任务的时间不计入
+     */
+    public void join(BlockingKind kind, ExecutorService executorService, Future<?> future)
+            throws InterruptedException, ExecutionException {
+        long startNanos = measureStart();
+        long helped = startNanos == 0 ? 0 : FairExecutor.helpedNanos();
+        try {
+            join(executorService, future);
+        } finally {
+            recordJoin(kind, startNanos, helped);
+        }
+    }
+
+    public void join(BlockingKind kind, ExecutorService executorService, Future<?> future, long timeout, TimeUnit unit)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        long startNanos = measureStart();
+        long helped = startNanos == 0 ? 0 : FairExecutor.helpedNanos();
+        try {
+            join(executorService, future, timeout, unit);
+        } finally {
+            recordJoin(kind, startNanos, helped);
+        }
+    }
+
+    /**
+     * submit提交的一个任务，连同它通过detach交出去的工作，全部结束时完成future
+     */
+    private static final class Branch {
+        private final RunContext owner;
+        private final AtomicInteger pending = new AtomicInteger(1);
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+        private volatile Throwable failure;
+
+        private Branch(RunContext owner) {
+            this.owner = owner;
+        }
+
+        private void fail(Throwable e) {
+            if (failure == null) {
+                failure = e;
+            }
+        }
+
+        private void release() {
+            if (pending.decrementAndGet() != 0) {
+                return;
+            }
+            Throwable e = failure;
+            if (e == null) {
+                future.complete(null);
+            } else {
+                future.completeExceptionally(e);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "RunContext{" +
+                "runId=" + runId +
+                ", traced=" + traced +
+                ", template='" + options.getTemplate() + '\'' +
+                ", actionNanos=" + getActionNanos() +
+                ", blockedNanos=" + getBlockedNanos() +
+                '}';
+    }
+}
@@ -0,0 +1,159 @@
+package com.haenu.platform.async.executor;
+
+import com.haenu.platform.async.checkpoint.CheckpointStore;
+
+/**
+ * 一次run的可选配置，通过Builder构建后传给Async.beginTask。
+ */
+public class RunOptions {
+    /**
+     * 默认的模板名，未指定模板的run的统计都归到这里
+     */
+    public static final String DEFAULT_TEMPLATE = "default";
+
+    private static final RunOptions DEFAULT = new Builder().build();
+
+    /**
+     * DAG模板名，同一种图结构的run使用相同的模板名，引擎统计按模板聚合
+     */
+    private final String template;
+
+    /**
+     * 检查点存储，为null时不做检查点
+     */
+    private final CheckpointStore checkpointStore;
+
+    /**
+     * 租户，使用FairExecutor时按租户公平调度，为null时每个run单独算一个租户
+     */
+    private final String tenant;
+
+    /**
+     * 公平调度的权重
+     */
+    private final int weight;
+
+    /**
+     * 优先级类别，默认NORMAL
+     */
+    private final RunPriority priority;
+
+    /**
+     * 是否记录分支耗时画像，并按画像决定多个后继任务的执行方式，默认关闭
+     */
+    private final boolean adaptiveFanout;
+
+    private RunOptions(Builder builder) {
+        this.template = builder.template;
+        this.checkpointStore = builder.checkpointStore;
+        this.tenant = builder.tenant;
+        this.weight = builder.weight;
+        this.priority = builder.priority;
+        this.adaptiveFanout = builder.adaptiveFanout;
+    }
+
+    public static RunOptions defaults() {
+        return DEFAULT;
+    }
+
+    public String getTemplate() {
+        return template;
+    }
+
+    public CheckpointStore getCheckpointStore() {
+        return checkpointStore;
+    }
+
+    public String getTenant() {
+        return tenant;
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+
+    public RunPriority getPriority() {
+        return priority;
+    }
+
+    public boolean isAdaptiveFanout() {
+        return adaptiveFanout;
+    }
+
+    @Override
+    public String toString() {
+        return "RunOptions{" +
+                "template='" + template + '\'' +
+                ", checkpointStore=" + checkpointStore +
+                ", tenant='" + tenant + '\'' +
+                ", weight=" + weight +
+                ", priority=" + priority +
+                ", adaptiveFanout=" + adaptiveFanout +
+                '}';
+    }
+
+    public static class Builder {
+        private String template = DEFAULT_TEMPLATE;
+        private CheckpointStore checkpointStore;
+        private String tenant;
+        private int weight = 1;
+        private RunPriority priority = RunPriority.NORMAL;
+        private boolean adaptiveFanout;
+
+        public Builder template(String template) {
+            if (template != null) {
+                this.template = template;
+            }
+            return this;
+        }
+
+        /**
+         * 设置检查点存储，已完成的任务结果会保存下来，重新执行时直接恢复
+         */
+        public Builder checkpointStore(CheckpointStore checkpointStore) {
+            this.checkpointStore = checkpointStore;
+            return this;
+        }
+
+        /**
+         * 设置租户，同一租户的run在FairExecutor中共享一份调度份额
+         */
+        public Builder tenant(String tenant) {
+            this.tenant = tenant;
+            return this;
+        }
+
+        /**
+         * 设置公平调度的权重，默认为1
+         */
+        public Builder weight(int weight) {
+            if (weight < 1) {
+                throw new IllegalArgumentException("weight must be positive");
+            }
+            this.weight = weight;
+            return this;
+        }
+
+        /**
+         * 设置优先级类别，FairExecutor按类别严格分级调度
+         */
+        public Builder priority(RunPriority priority) {
+            this.priority = priority == null ? RunPriority.NORMAL : priority;
+            return this;
+        }
+
+        /**
+         * 开启后记录每个任务的分支耗时画像（按模板名和任务id区分），积累足够样本后，
+         * 多个后继任务中的短分支在当前线程执行或合并成组提交，不再各自占用一次线程切换。
+         * 同一模板的run结构相同，任务id需要在模板内稳定
+         */
+        public Builder adaptiveFanout(boolean adaptiveFanout) {
+            this.adaptiveFanout = adaptiveFanout;
+            return this;
+        }
+
+        public RunOptions build() {
+            return new RunOptions(this);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.haenu.platform.async.executor;
+
+/**
+ * run的优先级类别，通过RunOptions设置，随RunContext传给这次run提交的每一个任务。
+ * <p>
+ * FairExecutor按类别严格分级：有高类别的任务排队时不会取低类别的任务，同一类别内的flow之间仍按DRR公平调度。
+ * 准入时只计算同类别及更高类别排队的任务，后台任务排得再多也不会导致交互请求被拒绝。
+ * 类别之间的截止时间由各自run的timeout决定：后台run一般设置较长的timeout，只使用交互请求剩下的线程时间，
+ * 排队超过截止时间的任务照常丢弃。
+ * 其他线程池没有排队顺序的控制，优先级只随run传递，不起作用。
+ */
+public enum RunPriority {
+    /**
+     * 交互请求，延迟敏感，最先调度
+     */
+    INTERACTIVE,
+    /**
+     * 默认类别
+     */
+    NORMAL,
+    /**
+     * 后台任务，只在没有更高类别的任务排队时执行
+     */
+    BACKGROUND
+}
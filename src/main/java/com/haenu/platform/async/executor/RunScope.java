@@ -0,0 +1,163 @@
+package com.haenu.platform.async.executor;
+
+import com.haenu.platform.async.wrapper.TaskWrapper;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * run的作用域，用法类似StructuredTaskScope：
+ * <pre>
+ * try (RunScope scope = new RunScope(executorService)) {
+ *     scope.beginTask(timeout, wrapperA, wrapperB);
+ * }
+ * </pre>
+ * 作用域内发起的run，所有提交到线程池的任务（起点、beginNext分出的后继、动态子任务）都属于这个作用域。
+ * <p>
+ * shutdown()：停止作用域内所有尚未结束的任务，中断正在执行的action；之后出队的任务不再执行。
+ * close()：shutdown()之后，等待作用域内所有正在执行的任务退出。close返回后，这个作用域不会再占用任何线程。
+ * 不能在作用域自己的任务中调用close，否则会等待自己。
+ * <p>
+ * Async.beginTask超时时也会对本次run的作用域调用shutdown()，不等待。
+ */
+public class RunScope implements AutoCloseable {
+    private final ExecutorService executorService;
+    private final RunOptions options;
+
+    /**
+     * 作用域内尚未结束的各run的起点任务，每个run一个数组，run结束时按数组的引用移除。
+     * TaskWrapper的equals、hashCode会递归整个下游，这里不用Set，也不按TaskWrapper移除
+     */
+    private final Queue<TaskWrapper<?, ?>[]> roots = new ConcurrentLinkedQueue<>();
+    /**
+     * 正在线程池中执行的任务数
+     */
+    private final AtomicInteger running = new AtomicInteger();
+    private final Object lock = new Object();
+    private volatile boolean shutdown;
+
+    public RunScope(ExecutorService executorService) {
+        this(executorService, RunOptions.defaults());
+    }
+
+    public RunScope(ExecutorService executorService, RunOptions options) {
+        this.executorService = executorService;
+        this.options = options == null ? RunOptions.defaults() : options;
+    }
+
+    /**
+     * 在作用域内同步执行一组任务，语义同Async.beginTask
+     */
+    public boolean beginTask(long timeout, TaskWrapper... taskWrappers) throws ExecutionException, InterruptedException {
+        if (taskWrappers == null || taskWrappers.length == 0) {
+            return false;
+        }
+        return Async.beginTask(timeout, executorService, options, Arrays.asList(taskWrappers), this);
+    }
+
+    /**
+     * 在作用域内异步执行一组任务，语义同Async.run
+     */
+    public CompletableFuture<List<TaskWrapper>> run(long timeout, TaskWrapper... taskWrappers) {
+        List<TaskWrapper> taskWrapperList = taskWrappers == null ? Collections.emptyList() : Arrays.asList(taskWrappers);
+        return Async.run(timeout, executorService, options, taskWrapperList, this);
+    }
+
+    /**
+     * 登记一个run的起点任务，返回值在run结束时传给removeRoots
+     */
+    TaskWrapper<?, ?>[] addRoots(List<TaskWrapper> taskWrappers) {
+        if (shutdown) {
+            throw new IllegalStateException("run scope has been shut down");
+        }
+        TaskWrapper<?, ?>[] runRoots = taskWrappers.toArray(new TaskWrapper<?, ?>[0]);
+        roots.add(runRoots);
+        return runRoots;
+    }
+
+    /**
+     * run的所有任务都已结束，不再持有它的图，长期使用的作用域不会留住过去所有run的图
+     */
+    void removeRoots(TaskWrapper<?, ?>[] runRoots) {
+        roots.remove(runRoots);
+    }
+
+    /**
+     * 任务开始在线程池中执行时调用，作用域已关闭时返回false，任务不再执行
+     */
+    boolean enter() {
+        running.incrementAndGet();
+        if (shutdown) {
+            exit();
+            return false;
+        }
+        return true;
+    }
+
+    void exit() {
+        if (running.decrementAndGet() == 0 && shutdown) {
+            synchronized (lock) {
+                lock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * 停止作用域内所有尚未结束的任务并中断正在执行的action，不等待
+     */
+    public void shutdown() {
+        shutdown = true;
+        Set<TaskWrapper<?, ?>> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<TaskWrapper<?, ?>> stack = new ArrayDeque<>();
+        for (TaskWrapper<?, ?>[] runRoots : roots) {
+            stack.addAll(Arrays.asList(runRoots));
+        }
+        while (!stack.isEmpty()) {
+            TaskWrapper<?, ?> wrapper = stack.pop();
+            if (!visited.add(wrapper)) {
+                continue;
+            }
+            wrapper.stopNow(true);
+            List<TaskWrapper<?, ?>> nextWrappers = wrapper.getNextWrappers();
+            if (nextWrappers != null) {
+                stack.addAll(nextWrappers);
+            }
+        }
+    }
+
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    /**
+     * 正在线程池中执行的任务数
+     */
+    public int getRunning() {
+        return running.get();
+    }
+
+    /**
+     * 关闭作用域：shutdown()，然后等待所有正在执行的任务退出。等待期间的中断会在返回前恢复
+     */
+    @Override
+    public void close() {
+        shutdown();
+        boolean interrupted = false;
+        synchronized (lock) {
+            while (running.get() > 0) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
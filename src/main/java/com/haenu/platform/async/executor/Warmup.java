@@ -0,0 +1,333 @@
+package com.haenu.platform.async.executor;
+
+import com.haenu.platform.async.callback.ITask;
+import com.haenu.platform.async.plan.ExecutionPlan;
+import com.haenu.platform.async.wrapper.TaskWrapper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+/**
+ * 启动预热：让TaskWrapper调度、CompletableFuture、回调等热点路径在接入流量前完成JIT编译，并提前创建线程池的线程。
+ * <pre>
+ * Warmup.Report report = new Warmup.Builder()
+ *         .plan(pricingPlan)
+ *         .prestart(executorService, 64)
+ *         .iterations(5000)
+ *         .build()
+ *         .run();
+ * </pre>
+ * 1.先按配置把线程池的线程建好（ThreadPoolExecutor调大核心线程数并prestart，其他线程池提交占位任务）。
+ * 2.注册的执行计划用stub任务构建（见ExecutionPlan.instantiateStub），结构、线程池、回调模式不变，不执行真实的业务task。
+ * 3.每轮依次执行所有模板，交替使用beginTask和run，按批记录平均耗时。
+ * <p>
+ * 预热的run使用模板名"warmup"，节点id带"warmup-"前缀，不会混入真实模板的统计和节点画像。
+ * run结束后isReady()为true，可作为就绪探针；Report中最后一批的平均耗时即稳态耗时。
+ * 类加载部分可以配合AppCDS，见WarmupMain。
+ */
+public class Warmup {
+    public static final String TEMPLATE = "warmup";
+
+    private static final int BATCHES = 10;
+
+    private static volatile boolean ready;
+
+    private final List<Supplier<List<TaskWrapper>>> graphs;
+    private final Map<ExecutorService, Integer> prestarts;
+    private final ExecutorService executorService;
+    private final int iterations;
+    private final int concurrency;
+    private final long timeout;
+
+    private Warmup(Builder builder) {
+        this.graphs = new ArrayList<>(builder.graphs);
+        this.prestarts = new ConcurrentHashMap<>(builder.prestarts);
+        this.executorService = builder.executorService == null ? Async.commonPool() : builder.executorService;
+        this.iterations = builder.iterations;
+        this.concurrency = builder.concurrency;
+        this.timeout = builder.timeout;
+    }
+
+    /**
+     * 是否已完成预热
+     */
+    public static boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * 执行预热，阻塞到所有轮次结束
+     */
+    public Report run() throws InterruptedException {
+        long start = System.nanoTime();
+        int threads = 0;
+        for (Map.Entry<ExecutorService, Integer> entry : prestarts.entrySet()) {
+            threads += prestart(entry.getKey(), entry.getValue());
+        }
+        if (graphs.isEmpty()) {
+            ready = true;
+            return new Report(0, threads, new long[0], 0, System.nanoTime() - start);
+        }
+
+        RunOptions options = new RunOptions.Builder().template(TEMPLATE).build();
+        int perBatch = Math.max(1, iterations / BATCHES);
+        int batches = (iterations + perBatch - 1) / perBatch;
+        long[] batchNanos = new long[batches];
+        int failed = 0;
+        ExecutorService callers = Executors.newFixedThreadPool(concurrency, runnable -> {
+            Thread thread = new Thread(runnable, "Async Warmup");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            int done = 0;
+            for (int batch = 0; batch < batches; batch++) {
+                int count = Math.min(perBatch, iterations - done);
+                List<Future<Long>> futures = new ArrayList<>(concurrency);
+                int share = (count + concurrency - 1) / concurrency;
+                for (int c = 0, offset = done; c < concurrency && offset < done + count; c++, offset += share) {
+                    int from = offset;
+                    int to = Math.min(offset + share, done + count);
+                    futures.add(callers.submit(() -> runIterations(from, to, options)));
+                }
+                long elapsed = 0;
+                for (Future<Long> future : futures) {
+                    try {
+                        long nanos = future.get();
+                        if (nanos < 0) {
+                            failed++;
+                            nanos = -nanos;
+                        }
+                        elapsed += nanos;
+                    } catch (ExecutionException e) {
+                        failed++;
+                        e.printStackTrace();
+                    }
+                }
+                batchNanos[batch] = elapsed / Math.max(1, count);
+                done += count;
+            }
+        } finally {
+            callers.shutdown();
+        }
+        ready = true;
+        return new Report(iterations, threads, batchNanos, failed, System.nanoTime() - start);
+    }
+
+    /**
+     * 执行[from, to)轮，返回总耗时，有失败的run时返回负数
+     */
+    private long runIterations(int from, int to, RunOptions options) throws Exception {
+        long total = 0;
+        boolean failed = false;
+        for (int i = from; i < to; i++) {
+            for (Supplier<List<TaskWrapper>> graph : graphs) {
+                List<TaskWrapper> roots = graph.get();
+                long begin = System.nanoTime();
+                boolean success;
+                if ((i & 1) == 0) {
+                    success = Async.beginTask(timeout, executorService, options, roots);
+                } else {
+                    try {
+                        Async.run(timeout, executorService, options, roots).get();
+                        success = true;
+                    } catch (ExecutionException e) {
+                        success = false;
+                    }
+                }
+                total += System.nanoTime() - begin;
+                failed |= !success;
+            }
+        }
+        return failed ? -total : total;
+    }
+
+    /**
+     * 提前创建线程池的线程，返回创建后（或确认已存在）的线程数。
+     * ThreadPoolExecutor把核心线程数调到threads（不超过最大线程数）并prestart，之后这些线程常驻；
+     * 其他线程池同时提交threads个互相等待的占位任务，迫使线程池建出线程，最多等待1秒。
+     */
+    public static int prestart(ExecutorService executorService, int threads) throws InterruptedException {
+        if (executorService instanceof ThreadPoolExecutor) {
+            ThreadPoolExecutor pool = (ThreadPoolExecutor) executorService;
+            int target = Math.min(threads, pool.getMaximumPoolSize());
+            if (pool.getCorePoolSize() < target) {
+                pool.setCorePoolSize(target);
+            }
+            pool.prestartAllCoreThreads();
+            return pool.getPoolSize();
+        }
+        CountDownLatch started = new CountDownLatch(threads);
+        CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < threads; i++) {
+            executorService.execute(() -> {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        started.await(1, TimeUnit.SECONDS);
+        release.countDown();
+        return (int) (threads - started.getCount());
+    }
+
+    /**
+     * 预热结果
+     */
+    public static class Report {
+        private final int iterations;
+        private final int threads;
+        private final long[] batchNanos;
+        private final int failed;
+        private final long elapsedNanos;
+
+        Report(int iterations, int threads, long[] batchNanos, int failed, long elapsedNanos) {
+            this.iterations = iterations;
+            this.threads = threads;
+            this.batchNanos = batchNanos;
+            this.failed = failed;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public int getIterations() {
+            return iterations;
+        }
+
+        /**
+         * prestart建好的线程数
+         */
+        public int getThreads() {
+            return threads;
+        }
+
+        /**
+         * 每批每轮的平均耗时，按批次顺序
+         */
+        public long[] getBatchNanos() {
+            return batchNanos.clone();
+        }
+
+        public long getFirstBatchNanos() {
+            return batchNanos.length == 0 ? 0 : batchNanos[0];
+        }
+
+        /**
+         * 最后一批的平均耗时，即预热后的稳态耗时
+         */
+        public long getLastBatchNanos() {
+            return batchNanos.length == 0 ? 0 : batchNanos[batchNanos.length - 1];
+        }
+
+        /**
+         * 失败（超时等）的run数，预热用的是stub任务，正常应为0
+         */
+        public int getFailed() {
+            return failed;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return "Warmup.Report{" +
+                    "iterations=" + iterations +
+                    ", threads=" + threads +
+                    ", firstBatchMicros=" + getFirstBatchNanos() / 1000 +
+                    ", lastBatchMicros=" + getLastBatchNanos() / 1000 +
+                    ", failed=" + failed +
+                    ", elapsedMillis=" + elapsedNanos / 1000000 +
+                    '}';
+        }
+    }
+
+    public static class Builder {
+        private final List<Supplier<List<TaskWrapper>>> graphs = new ArrayList<>();
+        private final Map<ExecutorService, Integer> prestarts = new ConcurrentHashMap<>();
+        private ExecutorService executorService;
+        private int iterations = 5000;
+        private int concurrency = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        private long timeout = 1000;
+        private ITask<Object, Object> stubTask = (param, allWrappers) -> param;
+
+        /**
+         * 预热一个执行计划，每轮用stub任务构建一份新的TaskWrapper
+         */
+        public Builder plan(ExecutionPlan plan) {
+            ITask<Object, Object> stub = stubTask;
+            graphs.add(() -> plan.instantiateStub(stub).getRoots());
+            return this;
+        }
+
+        /**
+         * 预热自定义的图，supplier每轮返回一组新的起点TaskWrapper，其中的task应当是无副作用的stub
+         */
+        public Builder graph(Supplier<List<TaskWrapper>> supplier) {
+            graphs.add(supplier);
+            return this;
+        }
+
+        /**
+         * 执行计划使用的stub任务，默认直接返回param，需要在plan之前设置
+         */
+        public Builder stubTask(ITask<Object, Object> stubTask) {
+            this.stubTask = stubTask;
+            return this;
+        }
+
+        /**
+         * 预热run使用的线程池，默认为Async的COMMON_POOL
+         */
+        public Builder executor(ExecutorService executorService) {
+            this.executorService = executorService;
+            return this;
+        }
+
+        /**
+         * 预热前为线程池建好threads个线程，可多次调用
+         */
+        public Builder prestart(ExecutorService executorService, int threads) {
+            prestarts.put(executorService, threads);
+            return this;
+        }
+
+        /**
+         * 预热Async的COMMON_POOL
+         */
+        public Builder prestart(int threads) {
+            return prestart(Async.commonPool(), threads);
+        }
+
+        public Builder iterations(int iterations) {
+            this.iterations = Math.max(1, iterations);
+            return this;
+        }
+
+        /**
+         * 同时发起run的线程数
+         */
+        public Builder concurrency(int concurrency) {
+            this.concurrency = Math.max(1, concurrency);
+            return this;
+        }
+
+        /**
+         * 每次预热run的超时时间，单位毫秒
+         */
+        public Builder timeout(long timeout) {
+            this.timeout = timeout;
+            return this;
+        }
+
+        public Warmup build() {
+            return new Warmup(this);
+        }
+    }
+}
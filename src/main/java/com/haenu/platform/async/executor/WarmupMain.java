@@ -0,0 +1,90 @@
+package com.haenu.platform.async.executor;
+
+import com.haenu.platform.async.callback.ICallback;
+import com.haenu.platform.async.callback.ITask;
+import com.haenu.platform.async.compact.CompactGraph;
+import com.haenu.platform.async.plan.ExecutionPlan;
+import com.haenu.platform.async.plan.PlanRegistry;
+import com.haenu.platform.async.plan.TaskRegistry;
+import com.haenu.platform.async.wrapper.TaskWrapper;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * AppCDS训练入口：用stub任务把引擎的主要路径（JSON计划编译、TaskWrapper调度、Async.run、回调线程池、
+ * FairExecutor、紧凑图）都跑一遍，让这些类全部被加载，然后退出。用法：java ... WarmupMain [iterations]
+ * <p>
+ * JDK 13及以上，训练时生成动态归档，启动时使用：
+ * <pre>
+ * java -XX:ArchiveClassesAtExit=async.jsa -cp app.jar com.haenu.platform.async.executor.WarmupMain
+ * java -XX:SharedArchiveFile=async.jsa -cp app.jar ...
+ * </pre>
+ * JDK 10~12先用-XX:DumpLoadedClassList=async.classlist导出类列表，再-Xshare:dump -XX:SharedClassListFile生成归档。
+ * 归档要求classpath中都是jar，不能是目录。归档只省去类加载和校验，JIT仍需要在进程内用Warmup预热。
+ */
+public class WarmupMain {
+    private static final String PLAN = "{\n" +
+            "  \"name\": \"warmup-main\",\n" +
+            "  \"nodes\": [\n" +
+            "    {\"id\": \"a\", \"task\": \"stub\", \"callback\": \"noop\", \"param\": \"a\"},\n" +
+            "    {\"id\": \"b\", \"task\": \"stub\", \"param\": \"b\", \"depends\": [\"a\"]},\n" +
+            "    {\"id\": \"c\", \"task\": \"stub\", \"param\": \"c\", \"callbackMode\": \"ASYNC_ORDERED\", \"depends\": [\"a\"]},\n" +
+            "    {\"id\": \"d\", \"task\": \"stub\", \"param\": \"d\", \"depends\": [\"b\", {\"id\": \"c\", \"must\": false}]}\n" +
+            "  ]\n" +
+            "}";
+
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        ITask<Object, Object> stub = (param, allWrappers) -> param;
+        ICallback<Object, Object> noop = (success, param, taskResult) -> {
+        };
+        PlanRegistry planRegistry = new PlanRegistry(new TaskRegistry()
+                .register("stub", stub)
+                .registerCallback("noop", noop));
+        ExecutionPlan plan = planRegistry.load(PLAN);
+
+        CompactGraph.Builder compact = new CompactGraph.Builder();
+        int root = compact.addNode(stub, "root");
+        for (int i = 0; i < 8; i++) {
+            compact.edge(root, compact.addNode(stub, i));
+        }
+        CompactGraph compactGraph = compact.build();
+
+        FairExecutor fairExecutor = new FairExecutor(Math.max(2, Runtime.getRuntime().availableProcessors()));
+        try {
+            Warmup.Report report = new Warmup.Builder()
+                    .plan(plan)
+                    .graph(WarmupMain::fanOut)
+                    .prestart(Runtime.getRuntime().availableProcessors())
+                    .iterations(iterations)
+                    .build()
+                    .run();
+            Warmup.Report fairReport = new Warmup.Builder()
+                    .plan(plan)
+                    .executor(fairExecutor)
+                    .iterations(Math.max(1, iterations / 10))
+                    .build()
+                    .run();
+            for (int i = 0; i < Math.max(1, iterations / 10); i++) {
+                compactGraph.newRun().execute(fairExecutor, 1000);
+            }
+            System.out.println(report);
+            System.out.println(fairReport);
+        } finally {
+            fairExecutor.shutdown();
+            Async.commonPool().shutdown();
+            ExecutorRegistry.shutDown();
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static List<TaskWrapper> fanOut() {
+        ITask<Object, Object> stub = (param, allWrappers) -> param;
+        TaskWrapper last = new TaskWrapper.Builder().id("warmup-last").task(stub).param("last").build();
+        TaskWrapper left = new TaskWrapper.Builder().id("warmup-left").task(stub).param("left").next(last).build();
+        TaskWrapper right = new TaskWrapper.Builder().id("warmup-right").task(stub).param("right").next(last).build();
+        TaskWrapper first = new TaskWrapper.Builder().id("warmup-first").task(stub).param("first").next(left, right).build();
+        return Arrays.asList(first);
+    }
+}
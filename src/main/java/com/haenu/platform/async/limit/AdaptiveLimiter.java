@@ -0,0 +1,180 @@
+package com.haenu.platform.async.limit;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 自适应并发限制器，用来限制同一个资源key（如同一个下游后端）上同时执行的action数量。
+ * <p>
+ * 采用AIMD算法，由action的实际耗时驱动：
+ * 1.耗时正常，且并发已接近上限时，limit加性增长，每个limit周期约+1。
+ * 2.耗时超过基线耗时的tolerance倍，或action执行失败时，limit乘性下降。
+ * 基线耗时取最近一个采样窗口中的最小耗时，近似为下游无负载时的耗时。
+ * <p>
+ * 超过limit的任务进入有界等待队列；队列已满，或等待超过maxWaitMillis，获取失败，由调用方快速失败。
+ */
+public class AdaptiveLimiter {
+    /**
+     * 每个采样窗口的样本数，窗口结束时刷新基线耗时
+     */
+    private static final int WINDOW_SIZE = 100;
+    /**
+     * 耗时抖动的容忍值，超出基线的部分小于该值时不认为是拥塞，避免微秒级的action频繁降级
+     */
+    private static final long MIN_RTT_JITTER = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final int maxQueue;
+    private final long maxWaitMillis;
+    private final double backoffRatio;
+    private final double tolerance;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+
+    /**
+     * 当前的并发上限，保留小数以便做加性增长
+     */
+    private double limit;
+    private int inFlight;
+    private int waiting;
+
+    private long baselineRtt;
+    private long windowMinRtt = Long.MAX_VALUE;
+    private int windowSamples;
+
+    public AdaptiveLimiter(int initialLimit, int maxQueue, long maxWaitMillis) {
+        this(initialLimit, 1, Math.max(initialLimit, 1000), maxQueue, maxWaitMillis, 0.9, 2.0);
+    }
+
+    public AdaptiveLimiter(int initialLimit, int minLimit, int maxLimit, int maxQueue, long maxWaitMillis,
+                           double backoffRatio, double tolerance) {
+        if (minLimit < 1 || maxLimit < minLimit || initialLimit < minLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("limit must satisfy 1 <= minLimit <= initialLimit <= maxLimit");
+        }
+        if (backoffRatio <= 0 || backoffRatio >= 1) {
+            throw new IllegalArgumentException("backoffRatio must be in (0, 1)");
+        }
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.maxQueue = Math.max(maxQueue, 0);
+        this.maxWaitMillis = Math.max(maxWaitMillis, 0);
+        this.backoffRatio = backoffRatio;
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * 获取一个执行许可。未超过limit时立即返回true；
+     * 否则进入等待队列，直到有许可释放，或者队列已满、等待超时、线程被中断，返回false。
+     */
+    public boolean acquire() {
+        lock.lock();
+        try {
+            if (inFlight < (int) limit) {
+                inFlight++;
+                return true;
+            }
+            //排队已满，直接拒绝
+            if (waiting >= maxQueue) {
+                return false;
+            }
+            waiting++;
+            try {
+                long nanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+                while (inFlight >= (int) limit) {
+                    if (nanos <= 0) {
+                        return false;
+                    }
+                    nanos = available.awaitNanos(nanos);
+                }
+                inFlight++;
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            } finally {
+                waiting--;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 释放许可，并用本次action的耗时调整limit
+     *
+     * @param rttNanos action耗时，纳秒
+     * @param dropped  action是否失败（异常、超时）
+     */
+    public void release(long rttNanos, boolean dropped) {
+        lock.lock();
+        try {
+            int currentInFlight = inFlight;
+            inFlight--;
+            if (rttNanos < windowMinRtt) {
+                windowMinRtt = rttNanos;
+            }
+            long baseline = baselineRtt > 0 ? baselineRtt : windowMinRtt;
+            if (++windowSamples >= WINDOW_SIZE) {
+                baselineRtt = windowMinRtt;
+                windowMinRtt = Long.MAX_VALUE;
+                windowSamples = 0;
+            }
+
+            boolean congested = dropped
+                    || (rttNanos > baseline * tolerance && rttNanos - baseline > MIN_RTT_JITTER);
+            if (congested) {
+                //乘性下降
+                limit = Math.max(minLimit, limit * backoffRatio);
+            } else if (currentInFlight * 2 >= (int) limit) {
+                //加性增长，并发未用到一半时不增长，避免limit在低负载下无限膨胀
+                limit = Math.min(maxLimit, limit + 1.0 / limit);
+            }
+
+            for (int permits = (int) limit - inFlight; permits > 0 && waiting > 0; permits--) {
+                available.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getLimit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getWaiting() {
+        lock.lock();
+        try {
+            return waiting;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "AdaptiveLimiter{" +
+                "limit=" + getLimit() +
+                ", inFlight=" + getInFlight() +
+                ", waiting=" + getWaiting() +
+                '}';
+    }
+}
@@ -0,0 +1,32 @@
+package com.haenu.platform.async.limit;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按资源key管理AdaptiveLimiter。
+ * 可以通过register为某个key定制限制器参数，未注册的key在第一次使用时按默认参数创建。
+ */
+public class ConcurrencyLimiters {
+    private static final int DEFAULT_INITIAL_LIMIT = 20;
+    private static final int DEFAULT_MAX_QUEUE = 50;
+    private static final long DEFAULT_MAX_WAIT_MILLIS = 100;
+
+    private static final Map<String, AdaptiveLimiter> LIMITERS = new ConcurrentHashMap<>();
+
+    private ConcurrencyLimiters() {
+    }
+
+    public static void register(String resourceKey, AdaptiveLimiter limiter) {
+        LIMITERS.put(resourceKey, limiter);
+    }
+
+    public static AdaptiveLimiter get(String resourceKey) {
+        return LIMITERS.computeIfAbsent(resourceKey,
+                key -> new AdaptiveLimiter(DEFAULT_INITIAL_LIMIT, DEFAULT_MAX_QUEUE, DEFAULT_MAX_WAIT_MILLIS));
+    }
+
+    public static void remove(String resourceKey) {
+        LIMITERS.remove(resourceKey);
+    }
+}
@@ -0,0 +1,209 @@
+package com.haenu.platform.async.loadtest;
+
+import com.haenu.platform.async.callback.ITask;
+import com.haenu.platform.async.wrapper.TaskWrapper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * 压测用的随机DAG生成器。按层生成：第0层为起点，之后每层的节点从上一层随机选1~maxFanIn个依赖，
+ * 每条依赖边以mustRatio的概率为must。只有一个依赖时引擎按must处理。
+ * <p>
+ * 图的形状由seed决定，可以复现；shapes大于1时预先生成多种形状，每次get()随机取一种。
+ * 每次get()都按形状构建一组新的TaskWrapper，返回起点，可以直接传给Async.run。
+ * 节点id为"L层号-序号"，同一形状的节点跨run共用画像。
+ */
+public class GraphGenerator implements Supplier<List<TaskWrapper>> {
+    private final Shape[] shapes;
+    private final ITask<Object, Object> task;
+
+    private GraphGenerator(Builder builder) {
+        Random random = new Random(builder.seed);
+        this.shapes = new Shape[builder.shapes];
+        for (int i = 0; i < shapes.length; i++) {
+            shapes[i] = new Shape(builder, random, shapes.length == 1 ? "" : "S" + i + "-");
+        }
+        this.task = builder.task;
+    }
+
+    @Override
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public List<TaskWrapper> get() {
+        Shape shape = shapes.length == 1 ? shapes[0] : shapes[ThreadLocalRandom.current().nextInt(shapes.length)];
+        TaskWrapper[] wrappers = new TaskWrapper[shape.ids.length];
+        List<TaskWrapper> roots = new ArrayList<>();
+        for (int node = 0; node < wrappers.length; node++) {
+            TaskWrapper.Builder builder = new TaskWrapper.Builder()
+                    .id(shape.ids[node])
+                    .task(task)
+                    .param(node);
+            for (int d = 0; d < shape.depends[node].length; d++) {
+                builder.depend(wrappers[shape.depends[node][d]], shape.must[node][d]);
+            }
+            wrappers[node] = builder.build();
+            if (shape.depends[node].length == 0) {
+                roots.add(wrappers[node]);
+            }
+        }
+        return roots;
+    }
+
+    /**
+     * 第一种形状的节点数
+     */
+    public int getNodeCount() {
+        return shapes[0].ids.length;
+    }
+
+    /**
+     * 第一种形状的边数
+     */
+    public int getEdgeCount() {
+        int edges = 0;
+        for (int[] depend : shapes[0].depends) {
+            edges += depend.length;
+        }
+        return edges;
+    }
+
+    @Override
+    public String toString() {
+        return "GraphGenerator{" +
+                "shapes=" + shapes.length +
+                ", nodes=" + getNodeCount() +
+                ", edges=" + getEdgeCount() +
+                '}';
+    }
+
+    /**
+     * 一种图的形状，节点按层排列
+     */
+    private static final class Shape {
+        private final String[] ids;
+        private final int[][] depends;
+        private final boolean[][] must;
+
+        private Shape(Builder builder, Random random, String prefix) {
+            List<String> idList = new ArrayList<>();
+            List<int[]> dependList = new ArrayList<>();
+            List<boolean[]> mustList = new ArrayList<>();
+            int previousStart = 0;
+            int previousSize = 0;
+            for (int level = 0; level < builder.depth; level++) {
+                int size = builder.fixedWidth ? builder.width : 1 + random.nextInt(builder.width);
+                int start = idList.size();
+                for (int i = 0; i < size; i++) {
+                    idList.add(prefix + "L" + level + "-" + i);
+                    if (level == 0) {
+                        dependList.add(new int[0]);
+                        mustList.add(new boolean[0]);
+                        continue;
+                    }
+                    //从上一层不重复地选出依赖
+                    int fanIn = 1 + random.nextInt(Math.min(builder.maxFanIn, previousSize));
+                    int[] parents = new int[fanIn];
+                    boolean[] musts = new boolean[fanIn];
+                    int[] candidates = new int[previousSize];
+                    for (int c = 0; c < previousSize; c++) {
+                        candidates[c] = previousStart + c;
+                    }
+                    for (int d = 0; d < fanIn; d++) {
+                        int pick = d + random.nextInt(previousSize - d);
+                        int chosen = candidates[pick];
+                        candidates[pick] = candidates[d];
+                        candidates[d] = chosen;
+                        parents[d] = chosen;
+                        musts[d] = random.nextDouble() < builder.mustRatio;
+                    }
+                    dependList.add(parents);
+                    mustList.add(musts);
+                }
+                previousStart = start;
+                previousSize = size;
+            }
+            this.ids = idList.toArray(new String[0]);
+            this.depends = dependList.toArray(new int[0][]);
+            this.must = mustList.toArray(new boolean[0][]);
+        }
+    }
+
+    public static class Builder {
+        private int depth = 4;
+        private int width = 4;
+        private boolean fixedWidth;
+        private int maxFanIn = 2;
+        private double mustRatio = 1;
+        private long seed = 42;
+        private int shapes = 1;
+        private ITask<Object, Object> task = new StubTask(LatencyDistribution.fixed(0), 0, false);
+
+        /**
+         * 层数
+         */
+        public Builder depth(int depth) {
+            this.depth = Math.max(1, depth);
+            return this;
+        }
+
+        /**
+         * 每层最多的节点数，每层实际节点数在1~width之间随机
+         */
+        public Builder width(int width) {
+            this.width = Math.max(1, width);
+            return this;
+        }
+
+        /**
+         * 每层固定为width个节点
+         */
+        public Builder fixedWidth(boolean fixedWidth) {
+            this.fixedWidth = fixedWidth;
+            return this;
+        }
+
+        /**
+         * 每个节点最多的依赖数
+         */
+        public Builder maxFanIn(int maxFanIn) {
+            this.maxFanIn = Math.max(1, maxFanIn);
+            return this;
+        }
+
+        /**
+         * 依赖边为must的比例，0~1
+         */
+        public Builder mustRatio(double mustRatio) {
+            this.mustRatio = mustRatio;
+            return this;
+        }
+
+        public Builder seed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        /**
+         * 预先生成的形状数
+         */
+        public Builder shapes(int shapes) {
+            this.shapes = Math.max(1, shapes);
+            return this;
+        }
+
+        /**
+         * 所有节点使用的任务，一般为StubTask
+         */
+        public Builder task(ITask<Object, Object> task) {
+            this.task = task;
+            return this;
+        }
+
+        public GraphGenerator build() {
+            return new GraphGenerator(this);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.haenu.platform.async.loadtest;
+
+import java.util.Random;
+
+/**
+ * stub任务的耗时分布，单位纳秒
+ */
+@FunctionalInterface
+public interface LatencyDistribution {
+    /**
+     * 采样一次耗时，纳秒
+     */
+    long sample(Random random);
+
+    /**
+     * 固定耗时
+     */
+    static LatencyDistribution fixed(long nanos) {
+        return random -> nanos;
+    }
+
+    /**
+     * [min, max)上的均匀分布
+     */
+    static LatencyDistribution uniform(long minNanos, long maxNanos) {
+        if (maxNanos <= minNanos) {
+            return fixed(minNanos);
+        }
+        return random -> minNanos + (long) (random.nextDouble() * (maxNanos - minNanos));
+    }
+
+    /**
+     * 指数分布，均值为meanNanos
+     */
+    static LatencyDistribution exponential(long meanNanos) {
+        return random -> (long) (-meanNanos * Math.log(1 - random.nextDouble()));
+    }
+
+    /**
+     * 对数正态分布，中位数为medianNanos，sigma越大长尾越重，线上RPC的耗时一般接近这个分布
+     */
+    static LatencyDistribution logNormal(long medianNanos, double sigma) {
+        return random -> (long) (medianNanos * Math.exp(sigma * random.nextGaussian()));
+    }
+
+    /**
+     * 双峰分布：以slowProbability的概率取slow，否则取fast，用来模拟缓存未命中、GC停顿等偶发慢请求
+     */
+    static LatencyDistribution bimodal(LatencyDistribution fast, LatencyDistribution slow, double slowProbability) {
+        return random -> random.nextDouble() < slowProbability ? slow.sample(random) : fast.sample(random);
+    }
+}
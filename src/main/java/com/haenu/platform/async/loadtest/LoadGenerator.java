@@ -0,0 +1,335 @@
+package com.haenu.platform.async.loadtest;
+
+import com.haenu.platform.async.exception.OverloadException;
+import com.haenu.platform.async.executor.Async;
+import com.haenu.platform.async.executor.RunOptions;
+import com.haenu.platform.async.wrapper.TaskWrapper;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * 开环压测：按固定QPS发起Async.run，不等待上一次run结束，用来测引擎在给定负载下的延迟。
+ * <p>
+ * 第i次run的计划发起时间为start + i * 周期，延迟从计划发起时间算起到run结束，
+ * 这样引擎变慢导致发压线程落后时，落后的时间也计入延迟，不会因协调遗漏（coordinated omission）而低估长尾。
+ * 同时记录从实际发起时间算起的服务时间，两者差距大说明发压线程已跟不上或被停顿拖住。
+ * <p>
+ * 报告中还包含压测期间的峰值线程数和分配字节数。分配字节数取所有存活线程的累计分配量之差，
+ * 压测期间退出的线程的分配不计入，需要JVM支持com.sun.management.ThreadMXBean，否则为-1。
+ */
+public class LoadGenerator {
+    private final Supplier<List<TaskWrapper>> graph;
+    private final double qps;
+    private final long durationNanos;
+    private final long warmupNanos;
+    private final ExecutorService executorService;
+    private final RunOptions options;
+    private final long timeout;
+
+    private LoadGenerator(Builder builder) {
+        this.graph = builder.graph;
+        this.qps = builder.qps;
+        this.durationNanos = builder.durationNanos;
+        this.warmupNanos = builder.warmupNanos;
+        this.executorService = builder.executorService;
+        this.options = builder.options;
+        this.timeout = builder.timeout;
+    }
+
+    /**
+     * 执行压测并返回报告，阻塞到压测结束且所有已发起的run都结束
+     */
+    public Report run() throws InterruptedException {
+        ExecutorService es = executorService != null ? executorService : Executors.newCachedThreadPool();
+        try {
+            if (warmupNanos > 0) {
+                drive(es, warmupNanos, null);
+            }
+            ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+            threadBean.resetPeakThreadCount();
+            long allocatedBefore = allocatedBytes(threadBean);
+            Report report = new Report(qps);
+            long start = System.nanoTime();
+            drive(es, durationNanos, report);
+            report.elapsedNanos = System.nanoTime() - start;
+            long allocatedAfter = allocatedBytes(threadBean);
+            report.allocatedBytes = allocatedBefore < 0 || allocatedAfter < 0 ? -1 : allocatedAfter - allocatedBefore;
+            report.peakThreads = threadBean.getPeakThreadCount();
+            report.liveThreads = threadBean.getThreadCount();
+            return report;
+        } finally {
+            if (executorService == null) {
+                es.shutdown();
+            }
+        }
+    }
+
+    /**
+     * 按计划时间发起run，report为null时为预热，只发压不记录
+     */
+    private void drive(ExecutorService es, long phaseNanos, Report report) throws InterruptedException {
+        long period = (long) (TimeUnit.SECONDS.toNanos(1) / qps);
+        long start = System.nanoTime();
+        long total = phaseNanos / period;
+        AtomicInteger inflight = new AtomicInteger();
+        for (long i = 0; i < total; i++) {
+            List<TaskWrapper> roots = graph.get();
+            long intended = start + i * period;
+            long remain;
+            while ((remain = intended - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(remain);
+            }
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            long sent = System.nanoTime();
+            int current = inflight.incrementAndGet();
+            if (report != null) {
+                report.sent++;
+                report.maxInflight = Math.max(report.maxInflight, current);
+            }
+            Async.run(timeout, es, options, roots).whenComplete((result, ex) -> {
+                inflight.decrementAndGet();
+                if (report == null) {
+                    return;
+                }
+                long end = System.nanoTime();
+                report.latency.record(end - intended);
+                report.serviceTime.record(end - sent);
+                if (ex == null) {
+                    report.ok.incrementAndGet();
+                } else if (ex instanceof TimeoutException) {
+                    report.timeouts.incrementAndGet();
+                } else if (ex instanceof OverloadException) {
+                    report.rejected.incrementAndGet();
+                } else {
+                    report.errors.incrementAndGet();
+                }
+            });
+        }
+        //等待已发起的run结束，超时的run由引擎的定时器结束
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout) + TimeUnit.SECONDS.toNanos(1);
+        while (inflight.get() > 0 && deadline - System.nanoTime() > 0) {
+            Thread.sleep(1);
+        }
+    }
+
+    /**
+     * 所有存活线程的累计分配字节数，不支持时返回-1
+     */
+    private static long allocatedBytes(ThreadMXBean threadBean) {
+        if (!(threadBean instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) threadBean;
+        if (!bean.isThreadAllocatedMemorySupported() || !bean.isThreadAllocatedMemoryEnabled()) {
+            return -1;
+        }
+        long total = 0;
+        for (long bytes : bean.getThreadAllocatedBytes(bean.getAllThreadIds())) {
+            if (bytes > 0) {
+                total += bytes;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * 压测报告，延迟单位纳秒
+     */
+    public static class Report {
+        private final double qps;
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LatencyHistogram serviceTime = new LatencyHistogram();
+        private final AtomicLong ok = new AtomicLong();
+        private final AtomicLong timeouts = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+        private long sent;
+        private int maxInflight;
+        private long elapsedNanos;
+        private long allocatedBytes;
+        private int peakThreads;
+        private int liveThreads;
+
+        private Report(double qps) {
+            this.qps = qps;
+        }
+
+        /**
+         * 从计划发起时间算起的延迟，已修正协调遗漏
+         */
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+
+        /**
+         * 从实际发起时间算起的服务时间
+         */
+        public LatencyHistogram getServiceTime() {
+            return serviceTime;
+        }
+
+        public long getSent() {
+            return sent;
+        }
+
+        public long getOk() {
+            return ok.get();
+        }
+
+        public long getTimeouts() {
+            return timeouts.get();
+        }
+
+        public long getRejected() {
+            return rejected.get();
+        }
+
+        public long getErrors() {
+            return errors.get();
+        }
+
+        /**
+         * 同时在执行的run的最大数量
+         */
+        public int getMaxInflight() {
+            return maxInflight;
+        }
+
+        /**
+         * 实际达到的QPS
+         */
+        public double getAchievedQps() {
+            return elapsedNanos == 0 ? 0 : sent * 1e9 / elapsedNanos;
+        }
+
+        /**
+         * 压测期间的分配字节数，不支持时为-1
+         */
+        public long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+
+        /**
+         * 平均每次run的分配字节数，不支持时为-1
+         */
+        public long getAllocatedBytesPerRun() {
+            return allocatedBytes < 0 || sent == 0 ? -1 : allocatedBytes / sent;
+        }
+
+        public int getPeakThreads() {
+            return peakThreads;
+        }
+
+        public int getLiveThreads() {
+            return liveThreads;
+        }
+
+        @Override
+        public String toString() {
+            return "Report{" +
+                    "targetQps=" + qps +
+                    ", achievedQps=" + String.format("%.1f", getAchievedQps()) +
+                    ", sent=" + sent +
+                    ", ok=" + ok +
+                    ", timeouts=" + timeouts +
+                    ", rejected=" + rejected +
+                    ", errors=" + errors +
+                    ", maxInflight=" + maxInflight +
+                    ", peakThreads=" + peakThreads +
+                    ", liveThreads=" + liveThreads +
+                    ", allocatedBytesPerRun=" + getAllocatedBytesPerRun() +
+                    ",\n  latency{" + latency + "}" +
+                    ",\n  serviceTime{" + serviceTime + "}" +
+                    '}';
+        }
+    }
+
+    public static class Builder {
+        private Supplier<List<TaskWrapper>> graph;
+        private double qps = 1000;
+        private long durationNanos = TimeUnit.SECONDS.toNanos(10);
+        private long warmupNanos = TimeUnit.SECONDS.toNanos(2);
+        private ExecutorService executorService;
+        private RunOptions options = RunOptions.defaults();
+        private long timeout = 1000;
+
+        /**
+         * 每次run的图，每次调用都要返回一组新的TaskWrapper，例如GraphGenerator
+         */
+        public Builder graph(Supplier<List<TaskWrapper>> graph) {
+            this.graph = graph;
+            return this;
+        }
+
+        /**
+         * 目标QPS，不能超过每秒1e9次，否则发起周期不足1纳秒
+         */
+        public Builder qps(double qps) {
+            this.qps = qps;
+            return this;
+        }
+
+        /**
+         * 压测时长，不含预热
+         */
+        public Builder duration(long duration, TimeUnit unit) {
+            this.durationNanos = unit.toNanos(duration);
+            return this;
+        }
+
+        /**
+         * 预热时长，以同样的QPS发压，结果不计入报告，默认2秒
+         */
+        public Builder warmup(long warmup, TimeUnit unit) {
+            this.warmupNanos = unit.toNanos(warmup);
+            return this;
+        }
+
+        /**
+         * 执行run的线程池，不设置时新建一个Executors.newCachedThreadPool()，压测结束后关闭
+         */
+        public Builder executor(ExecutorService executorService) {
+            this.executorService = executorService;
+            return this;
+        }
+
+        public Builder options(RunOptions options) {
+            this.options = options;
+            return this;
+        }
+
+        /**
+         * 每次run的超时时间，毫秒
+         */
+        public Builder timeout(long timeout) {
+            this.timeout = timeout;
+            return this;
+        }
+
+        public LoadGenerator build() {
+            if (graph == null) {
+                throw new IllegalArgumentException("graph can not be null");
+            }
+            //NaN也在这里拒绝
+            if (!(qps > 0)) {
+                throw new IllegalArgumentException("qps must be positive");
+            }
+            if (qps > TimeUnit.SECONDS.toNanos(1)) {
+                throw new IllegalArgumentException("qps must not exceed 1e9");
+            }
+            return new LoadGenerator(this);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.haenu.platform.async.loadtest;
+
+import com.haenu.platform.async.executor.FairExecutor;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 压测入口：同一张随机图分别跑在新建的CachedThreadPool和FairExecutor上，打印两份报告。
+ * 用法：java ... LoadTestMain [qps] [seconds] [depth] [width] [mustRatio]
+ * <p>
+ * stub任务的耗时为对数正态分布（中位数200微秒），1%的概率注入失败。
+ */
+public class LoadTestMain {
+
+    public static void main(String[] args) throws Exception {
+        double qps = args.length > 0 ? Double.parseDouble(args[0]) : 500;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int depth = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+        int width = args.length > 3 ? Integer.parseInt(args[3]) : 4;
+        double mustRatio = args.length > 4 ? Double.parseDouble(args[4]) : 0.8;
+
+        StubTask task = new StubTask(LatencyDistribution.logNormal(TimeUnit.MICROSECONDS.toNanos(200), 0.8), 0.01, false);
+        GraphGenerator graph = new GraphGenerator.Builder()
+                .depth(depth)
+                .width(width)
+                .maxFanIn(3)
+                .mustRatio(mustRatio)
+                .shapes(8)
+                .task(task)
+                .build();
+        System.out.println(graph + ", " + task);
+
+        LoadGenerator.Report cached = new LoadGenerator.Builder()
+                .graph(graph)
+                .qps(qps)
+                .duration(seconds, TimeUnit.SECONDS)
+                .build()
+                .run();
+        System.out.println("cached thread pool: " + cached);
+
+        FairExecutor fairExecutor = new FairExecutor(Math.max(4, Runtime.getRuntime().availableProcessors() * 4));
+        try {
+            LoadGenerator.Report fair = new LoadGenerator.Builder()
+                    .graph(graph)
+                    .qps(qps)
+                    .duration(seconds, TimeUnit.SECONDS)
+                    .executor(fairExecutor)
+                    .build()
+                    .run();
+            System.out.println("fair executor: " + fair);
+        } finally {
+            fairExecutor.shutdown();
+        }
+    }
+}
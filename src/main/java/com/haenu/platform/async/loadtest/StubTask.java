@@ -0,0 +1,83 @@
+package com.haenu.platform.async.loadtest;
+
+import com.haenu.platform.async.callback.ITask;
+import com.haenu.platform.async.wrapper.TaskWrapper;
+
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 压测用的stub任务：按耗时分布模拟执行时间，按概率注入失败，返回param。
+ * <p>
+ * 模拟方式：cpuBound为true时空转，模拟计算任务；否则park，模拟等待下游的IO任务。
+ * 多个节点可以共用同一个实例，注入的失败次数在实例上累计。
+ */
+public class StubTask implements ITask<Object, Object> {
+    private final LatencyDistribution latency;
+    private final double failureProbability;
+    private final boolean cpuBound;
+    private final AtomicLong executions = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    public StubTask(LatencyDistribution latency, double failureProbability, boolean cpuBound) {
+        this.latency = latency;
+        this.failureProbability = failureProbability;
+        this.cpuBound = cpuBound;
+    }
+
+    @Override
+    public Object action(Object object, Map<String, TaskWrapper> allWrappers) {
+        executions.incrementAndGet();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long nanos = latency.sample(random);
+        if (nanos > 0) {
+            long deadline = System.nanoTime() + nanos;
+            if (cpuBound) {
+                while (deadline - System.nanoTime() > 0) {
+                    //空转
+                }
+            } else {
+                long remain;
+                while ((remain = deadline - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(remain);
+                    if (Thread.interrupted()) {
+                        //被取消，保留中断标记后直接结束
+                        Thread.currentThread().interrupt();
+                        throw new IllegalStateException("stub task interrupted");
+                    }
+                }
+            }
+        }
+        if (failureProbability > 0 && random.nextDouble() < failureProbability) {
+            failures.incrementAndGet();
+            throw new IllegalStateException("injected failure");
+        }
+        return object;
+    }
+
+    /**
+     * 已执行的次数
+     */
+    public long getExecutions() {
+        return executions.get();
+    }
+
+    /**
+     * 注入失败的次数
+     */
+    public long getFailures() {
+        return failures.get();
+    }
+
+    @Override
+    public String toString() {
+        return "StubTask{" +
+                "failureProbability=" + failureProbability +
+                ", cpuBound=" + cpuBound +
+                ", executions=" + executions +
+                ", failures=" + failures +
+                '}';
+    }
+}
@@ -0,0 +1,30 @@
+package com.haenu.platform.async.metrics;
+
+/**
+ * 引擎内部阻塞线程的位置，不含action本身的耗时
+ */
+public enum BlockingKind {
+    /**
+     * beginNext中，多个后继任务并行时，发起线程等待它们完成；动态任务等待子任务完成。
+     * FairExecutor在等待期间帮忙执行其他任务的时间不计入，这部分已计入那些任务的action耗时
+     */
+    JOIN,
+    /**
+     * Async.beginTask中，调用线程等待整组任务完成
+     */
+    GROUP,
+    /**
+     * doDependsJobs、doQuorumJobs中，多个依赖同时唤醒时等待进入同一个任务的锁
+     */
+    MONITOR,
+    /**
+     * 可缓存子图的起点等待其他run执行同一个key
+     */
+    CACHE,
+    /**
+     * 隔离线程池的任务无法交出当前线程时，当前线程阻塞等待action执行完毕，和该任务的action耗时重叠
+     */
+    ISOLATED;
+
+    static final BlockingKind[] VALUES = values();
+}
@@ -0,0 +1,25 @@
+package com.haenu.platform.async.metrics;
+
+/**
+ * 引擎内部的计数事件
+ */
+public enum EngineCounter {
+    /**
+     * task()被再次调用，多依赖的任务每个依赖完成都会唤醒一次
+     */
+    REENTRY,
+    /**
+     * 再次唤醒时，任务已经开始或执行完毕，这次唤醒是多余的
+     */
+    DUPLICATE_WAKEUP,
+    /**
+     * 因为后继任务已开始执行而跳过（SkippedException）
+     */
+    SKIP,
+    /**
+     * 快速失败，包括超时、依赖失败、action异常、跳过
+     */
+    FAST_FAIL;
+
+    static final EngineCounter[] VALUES = values();
+}
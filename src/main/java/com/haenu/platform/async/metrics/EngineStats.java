@@ -0,0 +1,73 @@
+package com.haenu.platform.async.metrics;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 引擎计数的入口，按DAG模板管理TemplateStats。
+ * 每个模板第一次使用时注册到平台MBeanServer，ObjectName为 com.haenu.platform.async:type=TemplateStats,name=模板名
+ * <p>
+ * 默认关闭，需要时在启动时调用setEnabled(true)。开启后每次run都会计数、计时，
+ * 并在阻塞、汇合处多读几次纳秒时钟，关闭时RunContext不分配任何统计对象。
+ */
+public class EngineStats {
+    private static final String DOMAIN = "com.haenu.platform.async";
+
+    private static volatile boolean enabled;
+
+    private static final Map<String, TemplateStats> TEMPLATES = new ConcurrentHashMap<>();
+
+    private EngineStats() {
+    }
+
+    /**
+     * 开启或关闭统计，只影响之后开始的run
+     */
+    public static void setEnabled(boolean enabled) {
+        EngineStats.enabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 获取模板的统计，未开启统计时返回null
+     */
+    public static TemplateStats forTemplate(String template) {
+        if (!enabled) {
+            return null;
+        }
+        TemplateStats stats = TEMPLATES.get(template);
+        if (stats != null) {
+            return stats;
+        }
+        return TEMPLATES.computeIfAbsent(template, key -> {
+            TemplateStats created = new TemplateStats(key);
+            register(created);
+            return created;
+        });
+    }
+
+    public static Collection<TemplateStats> all() {
+        return Collections.unmodifiableCollection(TEMPLATES.values());
+    }
+
+    private static void register(TemplateStats stats) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(DOMAIN + ":type=TemplateStats,name=" + ObjectName.quote(stats.getTemplate()));
+            if (!server.isRegistered(name)) {
+                server.registerMBean(stats, name);
+            }
+        } catch (Exception e) {
+            //JMX不可用时不影响计数
+            e.printStackTrace();
+        }
+    }
+}
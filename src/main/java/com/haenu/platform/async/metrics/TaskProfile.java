@@ -0,0 +1,86 @@
+package com.haenu.platform.async.metrics;
+
+/**
+ * 同一类任务跨run的执行画像：action耗时、CPU耗时、分支耗时的指数移动平均。
+ * 分支耗时是从任务开始执行到它的后继任务（当前线程上执行的，以及它等待的）全部结束的耗时。
+ * 多线程并发更新时不加锁，允许丢失个别样本。
+ */
+public class TaskProfile {
+    /**
+     * EWMA的平滑系数
+     */
+    private static final double ALPHA = 0.2;
+
+    private volatile long samples;
+    private volatile double wallNanos;
+    private volatile double cpuNanos;
+
+    private volatile long branchSamples;
+    private volatile double branchNanos;
+
+    /**
+     * 记录一次执行
+     *
+     * @param wall action的耗时，纳秒
+     * @param cpu  action的CPU耗时，纳秒，小于0表示不可用
+     */
+    public void record(long wall, long cpu) {
+        long count = samples;
+        if (count == 0) {
+            wallNanos = wall;
+            cpuNanos = cpu < 0 ? wall : cpu;
+        } else {
+            wallNanos = wallNanos + ALPHA * (wall - wallNanos);
+            cpuNanos = cpuNanos + ALPHA * ((cpu < 0 ? wall : cpu) - cpuNanos);
+        }
+        samples = count + 1;
+    }
+
+    /**
+     * 记录一次分支耗时，纳秒
+     */
+    public void recordBranch(long nanos) {
+        long count = branchSamples;
+        branchNanos = count == 0 ? nanos : branchNanos + ALPHA * (nanos - branchNanos);
+        branchSamples = count + 1;
+    }
+
+    public long getSamples() {
+        return samples;
+    }
+
+    public long getWallNanos() {
+        return (long) wallNanos;
+    }
+
+    public long getCpuNanos() {
+        return (long) cpuNanos;
+    }
+
+    public long getBranchSamples() {
+        return branchSamples;
+    }
+
+    public long getBranchNanos() {
+        return (long) branchNanos;
+    }
+
+    /**
+     * CPU耗时占总耗时的比例，越低说明等待越多
+     */
+    public double getCpuRatio() {
+        double wall = wallNanos;
+        return wall <= 0 ? 1 : Math.min(1, cpuNanos / wall);
+    }
+
+    @Override
+    public String toString() {
+        return "TaskProfile{" +
+                "samples=" + samples +
+                ", wallNanos=" + getWallNanos() +
+                ", cpuNanos=" + getCpuNanos() +
+                ", branchSamples=" + branchSamples +
+                ", branchNanos=" + getBranchNanos() +
+                '}';
+    }
+}
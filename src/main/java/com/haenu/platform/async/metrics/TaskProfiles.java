@@ -0,0 +1,53 @@
+package com.haenu.platform.async.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按任务key管理TaskProfile，key为"模板名/任务id"，未设置id时任务id部分为ITask的类名
+ */
+public class TaskProfiles {
+    /**
+     * 最多记录的任务数，避免key不稳定时无限膨胀
+     */
+    private static final int MAX_PROFILES = 4096;
+
+    private static final Map<String, TaskProfile> PROFILES = new ConcurrentHashMap<>();
+
+    private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+    private static final boolean CPU_TIME_SUPPORTED = THREAD_MX_BEAN.isCurrentThreadCpuTimeSupported();
+
+    private TaskProfiles() {
+    }
+
+    /**
+     * 获取画像，没有时创建；数量超过上限时返回null
+     */
+    public static TaskProfile get(String key) {
+        TaskProfile profile = PROFILES.get(key);
+        if (profile != null || PROFILES.size() >= MAX_PROFILES) {
+            return profile;
+        }
+        return PROFILES.computeIfAbsent(key, k -> new TaskProfile());
+    }
+
+    /**
+     * 只查询，不创建
+     */
+    public static TaskProfile peek(String key) {
+        return PROFILES.get(key);
+    }
+
+    /**
+     * 当前线程的CPU时间，不支持时返回-1
+     */
+    public static long currentThreadCpuTime() {
+        return CPU_TIME_SUPPORTED ? THREAD_MX_BEAN.getCurrentThreadCpuTime() : -1;
+    }
+
+    public static void clear() {
+        PROFILES.clear();
+    }
+}
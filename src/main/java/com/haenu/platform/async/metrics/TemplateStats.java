@@ -0,0 +1,225 @@
+package com.haenu.platform.async.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个DAG模板的引擎计数，按模板汇总，同时按节点id分别统计。
+ * 节点只统计显式设置了id的任务，未设置id的任务id是随机的，只计入模板汇总。
+ */
+public class TemplateStats implements TemplateStatsMXBean {
+    /**
+     * 单个模板最多统计的节点数，避免id不稳定时无限膨胀
+     */
+    private static final int MAX_NODES = 1024;
+
+    private final String template;
+    private final LongAdder runs = new LongAdder();
+    private final LongAdder reentryNanos = new LongAdder();
+    private final LongAdder actionNanos = new LongAdder();
+    private final LongAdder[] blockedNanos = newAdders(BlockingKind.VALUES.length);
+    private final LongAdder finishedRuns = new LongAdder();
+    private final LongAccumulator maxRunBlockedNanos = new LongAccumulator(Math::max, 0);
+    private final LongAdder[] totals = newCounters();
+    private final Map<String, LongAdder[]> nodes = new ConcurrentHashMap<>();
+
+    TemplateStats(String template) {
+        this.template = template;
+    }
+
+    public void incrementRuns() {
+        runs.increment();
+    }
+
+    /**
+     * 计数
+     *
+     * @param nodeId 节点id，为null时只计入模板汇总
+     */
+    public void increment(EngineCounter counter, String nodeId) {
+        totals[counter.ordinal()].increment();
+        if (nodeId == null) {
+            return;
+        }
+        LongAdder[] nodeCounters = nodes.get(nodeId);
+        if (nodeCounters == null) {
+            if (nodes.size() >= MAX_NODES) {
+                return;
+            }
+            nodeCounters = nodes.computeIfAbsent(nodeId, key -> newCounters());
+        }
+        nodeCounters[counter.ordinal()].increment();
+    }
+
+    public void addReentryNanos(long nanos) {
+        reentryNanos.add(nanos);
+    }
+
+    public void addActionNanos(long nanos) {
+        actionNanos.add(nanos);
+    }
+
+    public void addBlockedNanos(BlockingKind kind, long nanos) {
+        blockedNanos[kind.ordinal()].add(nanos);
+    }
+
+    /**
+     * run结束时记录这次run在引擎内部阻塞的总时间
+     */
+    public void recordRun(long runBlockedNanos) {
+        finishedRuns.increment();
+        maxRunBlockedNanos.accumulate(runBlockedNanos);
+    }
+
+    public long getBlockedNanos(BlockingKind kind) {
+        return blockedNanos[kind.ordinal()].sum();
+    }
+
+    public long get(EngineCounter counter) {
+        return totals[counter.ordinal()].sum();
+    }
+
+    @Override
+    public String getTemplate() {
+        return template;
+    }
+
+    @Override
+    public long getRuns() {
+        return runs.sum();
+    }
+
+    @Override
+    public long getReentries() {
+        return get(EngineCounter.REENTRY);
+    }
+
+    @Override
+    public long getDuplicateWakeups() {
+        return get(EngineCounter.DUPLICATE_WAKEUP);
+    }
+
+    @Override
+    public long getSkips() {
+        return get(EngineCounter.SKIP);
+    }
+
+    @Override
+    public long getFastFails() {
+        return get(EngineCounter.FAST_FAIL);
+    }
+
+    @Override
+    public long getReentryNanos() {
+        return reentryNanos.sum();
+    }
+
+    @Override
+    public long getActionNanos() {
+        return actionNanos.sum();
+    }
+
+    @Override
+    public Map<String, Long> getBlockedNanos() {
+        Map<String, Long> blocked = new LinkedHashMap<>();
+        for (BlockingKind kind : BlockingKind.VALUES) {
+            blocked.put(kind.name(), getBlockedNanos(kind));
+        }
+        return blocked;
+    }
+
+    @Override
+    public long getTotalBlockedNanos() {
+        long total = 0;
+        for (LongAdder adder : blockedNanos) {
+            total += adder.sum();
+        }
+        return total;
+    }
+
+    @Override
+    public long getFinishedRuns() {
+        return finishedRuns.sum();
+    }
+
+    @Override
+    public long getMaxRunBlockedNanos() {
+        return maxRunBlockedNanos.get();
+    }
+
+    @Override
+    public Map<String, Long> getNodeReentries() {
+        return nodeCounts(EngineCounter.REENTRY);
+    }
+
+    @Override
+    public Map<String, Long> getNodeDuplicateWakeups() {
+        return nodeCounts(EngineCounter.DUPLICATE_WAKEUP);
+    }
+
+    @Override
+    public Map<String, Long> getNodeSkips() {
+        return nodeCounts(EngineCounter.SKIP);
+    }
+
+    @Override
+    public Map<String, Long> getNodeFastFails() {
+        return nodeCounts(EngineCounter.FAST_FAIL);
+    }
+
+    @Override
+    public void reset() {
+        runs.reset();
+        reentryNanos.reset();
+        actionNanos.reset();
+        finishedRuns.reset();
+        maxRunBlockedNanos.reset();
+        for (LongAdder total : totals) {
+            total.reset();
+        }
+        for (LongAdder blocked : blockedNanos) {
+            blocked.reset();
+        }
+        nodes.clear();
+    }
+
+    private Map<String, Long> nodeCounts(EngineCounter counter) {
+        Map<String, Long> counts = new TreeMap<>();
+        for (Map.Entry<String, LongAdder[]> entry : nodes.entrySet()) {
+            counts.put(entry.getKey(), entry.getValue()[counter.ordinal()].sum());
+        }
+        return counts;
+    }
+
+    private static LongAdder[] newCounters() {
+        return newAdders(EngineCounter.VALUES.length);
+    }
+
+    private static LongAdder[] newAdders(int length) {
+        LongAdder[] adders = new LongAdder[length];
+        for (int i = 0; i < adders.length; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    @Override
+    public String toString() {
+        return "TemplateStats{" +
+                "template='" + template + '\'' +
+                ", runs=" + getRuns() +
+                ", reentries=" + getReentries() +
+                ", duplicateWakeups=" + getDuplicateWakeups() +
+                ", skips=" + getSkips() +
+                ", fastFails=" + getFastFails() +
+                ", reentryNanos=" + getReentryNanos() +
+                ", actionNanos=" + getActionNanos() +
+                ", blockedNanos=" + getBlockedNanos() +
+                ", maxRunBlockedNanos=" + getMaxRunBlockedNanos() +
+                '}';
+    }
+}
@@ -0,0 +1,58 @@
+package com.haenu.platform.async.metrics;
+
+import java.util.Map;
+
+/**
+ * 单个DAG模板的引擎计数，通过JMX暴露
+ */
+public interface TemplateStatsMXBean {
+    String getTemplate();
+
+    long getRuns();
+
+    long getReentries();
+
+    long getDuplicateWakeups();
+
+    long getSkips();
+
+    long getFastFails();
+
+    /**
+     * 多余的再次唤醒在task()中消耗的时间，不含后继任务的执行
+     */
+    long getReentryNanos();
+
+    /**
+     * action的累计耗时
+     */
+    long getActionNanos();
+
+    /**
+     * 引擎内部阻塞线程的累计时间，按BlockingKind分别统计。和getActionNanos对比，
+     * 可以区分是下游慢，还是编排本身在浪费线程
+     */
+    Map<String, Long> getBlockedNanos();
+
+    long getTotalBlockedNanos();
+
+    /**
+     * 已结束的run数，超时的run在超时时计为结束
+     */
+    long getFinishedRuns();
+
+    /**
+     * 单次run在引擎内部阻塞的最长总时间
+     */
+    long getMaxRunBlockedNanos();
+
+    Map<String, Long> getNodeReentries();
+
+    Map<String, Long> getNodeDuplicateWakeups();
+
+    Map<String, Long> getNodeSkips();
+
+    Map<String, Long> getNodeFastFails();
+
+    void reset();
+}
@@ -0,0 +1,146 @@
+package com.haenu.platform.async.plan;
+
+import com.haenu.platform.async.callback.CallbackMode;
+import com.haenu.platform.async.callback.ICallback;
+import com.haenu.platform.async.callback.ITask;
+import com.haenu.platform.async.executor.ExecutorClass;
+import com.haenu.platform.async.wrapper.TaskWrapper;
+
+import java.util.*;
+
+/**
+ * 编译好的DAG执行计划，不可变，可以被多个run、多个线程同时使用。
+ * <p>
+ * 节点已按拓扑序排好，起始节点预先找出。
+ * 每次run调用instantiate，按拓扑序直接构建TaskWrapper，不再做解析和校验。
+ */
+public class ExecutionPlan {
+    private final String name;
+    /**
+     * 以下数组都按拓扑序排列
+     */
+    private final String[] ids;
+    private final ITask<?, ?>[] tasks;
+    private final ICallback<?, ?>[] callbacks;
+    private final Object[] params;
+    private final String[] resourceKeys;
+    private final CallbackMode[] callbackModes;
+    private final String[] executorNames;
+    private final ExecutorClass[] executorClasses;
+    private final int[][] depends;
+    private final boolean[][] dependMust;
+    private final int[] roots;
+    private final Map<String, Integer> index;
+
+    ExecutionPlan(String name, String[] ids, ITask<?, ?>[] tasks, ICallback<?, ?>[] callbacks, Object[] params,
+                  String[] resourceKeys, CallbackMode[] callbackModes, String[] executorNames, ExecutorClass[] executorClasses,
+                  int[][] depends, boolean[][] dependMust) {
+        this.name = name;
+        this.ids = ids;
+        this.tasks = tasks;
+        this.callbacks = callbacks;
+        this.params = params;
+        this.resourceKeys = resourceKeys;
+        this.callbackModes = callbackModes;
+        this.executorNames = executorNames;
+        this.executorClasses = executorClasses;
+        this.depends = depends;
+        this.dependMust = dependMust;
+
+        int size = ids.length;
+        this.index = new HashMap<>(size * 2);
+        int rootCount = 0;
+        for (int i = 0; i < size; i++) {
+            index.put(ids[i], i);
+            if (depends[i].length == 0) {
+                rootCount++;
+            }
+        }
+        this.roots = new int[rootCount];
+        for (int i = 0, r = 0; i < size; i++) {
+            if (depends[i].length == 0) {
+                roots[r++] = i;
+            }
+        }
+    }
+
+    /**
+     * 为一次run构建TaskWrapper
+     *
+     * @param runParams 本次run的参数，key为节点id，没有的节点使用定义中的param
+     */
+    public PlanInstance instantiate(Map<String, ?> runParams) {
+        return build(runParams, null);
+    }
+
+    /**
+     * 构建用于预热的TaskWrapper：结构、线程池、回调模式和计划相同，task全部替换为stubTask，
+     * 不带回调和resourceKey，id加上"warmup-"前缀，预热数据不会混入真实节点的画像和限流统计
+     */
+    public PlanInstance instantiateStub(ITask<?, ?> stubTask) {
+        return build(null, stubTask);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private PlanInstance build(Map<String, ?> runParams, ITask<?, ?> stubTask) {
+        boolean stub = stubTask != null;
+        TaskWrapper[] wrappers = new TaskWrapper[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            Object param = runParams != null && runParams.containsKey(ids[i]) ? runParams.get(ids[i]) : params[i];
+            TaskWrapper.Builder builder = new TaskWrapper.Builder()
+                    .id(stub ? "warmup-" + ids[i] : ids[i])
+                    .task((ITask) (stub ? stubTask : tasks[i]))
+                    .callback(stub ? null : (ICallback) callbacks[i])
+                    .param(param)
+                    .resourceKey(stub ? null : resourceKeys[i])
+                    .callbackMode(callbackModes[i])
+                    .executor(executorNames[i])
+                    .executorClass(executorClasses[i]);
+            for (int d = 0; d < depends[i].length; d++) {
+                builder.depend(wrappers[depends[i][d]], dependMust[i][d]);
+            }
+            wrappers[i] = builder.build();
+        }
+        List<TaskWrapper> rootWrappers = new ArrayList<>(roots.length);
+        for (int root : roots) {
+            rootWrappers.add(wrappers[root]);
+        }
+        return new PlanInstance(this, wrappers, rootWrappers);
+    }
+
+    public PlanInstance instantiate() {
+        return instantiate(Collections.emptyMap());
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    /**
+     * 按拓扑序排列的节点id
+     */
+    public List<String> getIds() {
+        return Collections.unmodifiableList(Arrays.asList(ids));
+    }
+
+    int indexOf(String id) {
+        Integer i = index.get(id);
+        if (i == null) {
+            throw new NoSuchElementException("no node " + id + " in plan " + name);
+        }
+        return i;
+    }
+
+    @Override
+    public String toString() {
+        return "ExecutionPlan{" +
+                "name='" + name + '\'' +
+                ", nodes=" + ids.length +
+                ", roots=" + roots.length +
+                '}';
+    }
+}
@@ -0,0 +1,221 @@
+package com.haenu.platform.async.plan;
+
+import com.haenu.platform.async.callback.CallbackMode;
+import com.haenu.platform.async.callback.ICallback;
+import com.haenu.platform.async.callback.ITask;
+import com.haenu.platform.async.exception.PlanException;
+import com.haenu.platform.async.executor.ExecutorClass;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * 把JSON格式的DAG定义编译成ExecutionPlan，编译时完成全部校验：
+ * 节点id唯一、依赖的节点存在、引用的task和callback已注册、图中没有环。
+ * <p>
+ * 定义格式：
+ * <pre>
+ * {
+ *   "name": "pricing",
+ *   "nodes": [
+ *     {"id": "user", "task": "userTask", "callback": "logCallback", "param": "u1"},
+ *     {"id": "coupon", "task": "couponTask", "resourceKey": "coupon-service", "executorClass": "IO"},
+ *     {"id": "price", "task": "priceTask", "callbackMode": "ASYNC_ORDERED",
+ *      "depends": ["user", {"id": "coupon", "must": false}]}
+ *   ]
+ * }
+ * </pre>
+ * depends中直接写id表示must依赖。executor为ExecutorRegistry中注册的线程池名。
+ */
+public class PlanCompiler {
+    private final TaskRegistry registry;
+
+    public PlanCompiler(TaskRegistry registry) {
+        this.registry = registry;
+    }
+
+    public ExecutionPlan compile(Path file) throws IOException {
+        return compile(new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+    }
+
+    @SuppressWarnings("unchecked")
+    public ExecutionPlan compile(String json) {
+        Object root = JsonParser.parse(json);
+        if (!(root instanceof Map)) {
+            throw new PlanException("plan must be a json object");
+        }
+        Map<String, Object> definition = (Map<String, Object>) root;
+        String name = string(definition, "name", null);
+        if (name == null) {
+            throw new PlanException("plan name is required");
+        }
+        Object nodesValue = definition.get("nodes");
+        if (!(nodesValue instanceof List) || ((List<?>) nodesValue).isEmpty()) {
+            throw new PlanException("plan " + name + " has no nodes");
+        }
+        List<Map<String, Object>> nodes = new ArrayList<>();
+        Map<String, Integer> position = new HashMap<>();
+        for (Object node : (List<Object>) nodesValue) {
+            if (!(node instanceof Map)) {
+                throw new PlanException("plan " + name + ": node must be a json object");
+            }
+            Map<String, Object> nodeMap = (Map<String, Object>) node;
+            String id = string(nodeMap, "id", null);
+            if (id == null) {
+                throw new PlanException("plan " + name + ": node id is required");
+            }
+            if (position.put(id, nodes.size()) != null) {
+                throw new PlanException("plan " + name + ": duplicate node id " + id);
+            }
+            nodes.add(nodeMap);
+        }
+
+        //1.解析依赖
+        int size = nodes.size();
+        List<List<Integer>> dependIndexes = new ArrayList<>(size);
+        List<List<Boolean>> dependMusts = new ArrayList<>(size);
+        List<List<Integer>> nextIndexes = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            nextIndexes.add(new ArrayList<>());
+        }
+        for (int i = 0; i < size; i++) {
+            Map<String, Object> node = nodes.get(i);
+            List<Integer> indexes = new ArrayList<>();
+            List<Boolean> musts = new ArrayList<>();
+            Object dependsValue = node.get("depends");
+            if (dependsValue != null) {
+                if (!(dependsValue instanceof List)) {
+                    throw new PlanException("plan " + name + ": depends of " + node.get("id") + " must be an array");
+                }
+                for (Object depend : (List<Object>) dependsValue) {
+                    String dependId;
+                    boolean must = true;
+                    if (depend instanceof Map) {
+                        dependId = string((Map<String, Object>) depend, "id", null);
+                        Object mustValue = ((Map<String, Object>) depend).get("must");
+                        if (mustValue != null) {
+                            //"true"、1这类写法不能悄悄当成非must
+                            if (!(mustValue instanceof Boolean)) {
+                                throw new PlanException("plan " + name + ": must of depend " + dependId + " in node "
+                                        + node.get("id") + " must be a boolean, got " + mustValue);
+                            }
+                            must = (Boolean) mustValue;
+                        }
+                    } else if (depend instanceof String) {
+                        dependId = (String) depend;
+                    } else {
+                        throw new PlanException("plan " + name + ": bad depend " + depend);
+                    }
+                    Integer dependIndex = position.get(dependId);
+                    if (dependIndex == null) {
+                        throw new PlanException("plan " + name + ": node " + node.get("id") + " depends on unknown node " + dependId);
+                    }
+                    if (indexes.contains(dependIndex)) {
+                        continue;
+                    }
+                    indexes.add(dependIndex);
+                    musts.add(must);
+                    nextIndexes.get(dependIndex).add(i);
+                }
+            }
+            dependIndexes.add(indexes);
+            dependMusts.add(musts);
+        }
+
+        //2.拓扑排序，同时检查环
+        int[] inDegree = new int[size];
+        for (int i = 0; i < size; i++) {
+            inDegree[i] = dependIndexes.get(i).size();
+        }
+        Deque<Integer> ready = new ArrayDeque<>();
+        for (int i = 0; i < size; i++) {
+            if (inDegree[i] == 0) {
+                ready.add(i);
+            }
+        }
+        int[] order = new int[size];
+        int[] orderOf = new int[size];
+        int sorted = 0;
+        while (!ready.isEmpty()) {
+            int current = ready.poll();
+            orderOf[current] = sorted;
+            order[sorted++] = current;
+            for (int next : nextIndexes.get(current)) {
+                if (--inDegree[next] == 0) {
+                    ready.add(next);
+                }
+            }
+        }
+        if (sorted != size) {
+            throw new PlanException("plan " + name + " contains a cycle");
+        }
+
+        //3.按拓扑序生成计划
+        String[] ids = new String[size];
+        ITask<?, ?>[] tasks = new ITask[size];
+        ICallback<?, ?>[] callbacks = new ICallback[size];
+        Object[] params = new Object[size];
+        String[] resourceKeys = new String[size];
+        CallbackMode[] callbackModes = new CallbackMode[size];
+        String[] executorNames = new String[size];
+        ExecutorClass[] executorClasses = new ExecutorClass[size];
+        int[][] depends = new int[size][];
+        boolean[][] dependMust = new boolean[size][];
+        for (int o = 0; o < size; o++) {
+            Map<String, Object> node = nodes.get(order[o]);
+            ids[o] = (String) node.get("id");
+            String taskName = string(node, "task", null);
+            tasks[o] = taskName == null ? null : registry.getTask(taskName);
+            if (tasks[o] == null) {
+                throw new PlanException("plan " + name + ": task " + taskName + " of node " + ids[o] + " is not registered");
+            }
+            String callbackName = string(node, "callback", null);
+            if (callbackName != null) {
+                callbacks[o] = registry.getCallback(callbackName);
+                if (callbacks[o] == null) {
+                    throw new PlanException("plan " + name + ": callback " + callbackName + " of node " + ids[o] + " is not registered");
+                }
+            }
+            params[o] = node.get("param");
+            resourceKeys[o] = string(node, "resourceKey", null);
+            String mode = string(node, "callbackMode", CallbackMode.SYNC.name());
+            try {
+                callbackModes[o] = CallbackMode.valueOf(mode);
+            } catch (IllegalArgumentException e) {
+                throw new PlanException("plan " + name + ": bad callbackMode " + mode + " of node " + ids[o]);
+            }
+            executorNames[o] = string(node, "executor", null);
+            String executorClass = string(node, "executorClass", null);
+            if (executorClass != null) {
+                try {
+                    executorClasses[o] = ExecutorClass.valueOf(executorClass);
+                } catch (IllegalArgumentException e) {
+                    throw new PlanException("plan " + name + ": bad executorClass " + executorClass + " of node " + ids[o]);
+                }
+            }
+            List<Integer> indexes = dependIndexes.get(order[o]);
+            depends[o] = new int[indexes.size()];
+            dependMust[o] = new boolean[indexes.size()];
+            for (int d = 0; d < indexes.size(); d++) {
+                depends[o][d] = orderOf[indexes.get(d)];
+                dependMust[o][d] = dependMusts.get(order[o]).get(d);
+            }
+        }
+        return new ExecutionPlan(name, ids, tasks, callbacks, params, resourceKeys, callbackModes, executorNames,
+                executorClasses, depends, dependMust);
+    }
+
+    private static String string(Map<String, Object> map, String key, String defaultValue) {
+        Object value = map.get(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        if (!(value instanceof String)) {
+            throw new PlanException(key + " must be a string");
+        }
+        return (String) value;
+    }
+}
@@ -0,0 +1,59 @@
+package com.haenu.platform.async.plan;
+
+import com.haenu.platform.async.executor.Async;
+import com.haenu.platform.async.executor.RunOptions;
+import com.haenu.platform.async.task.TaskResult;
+import com.haenu.platform.async.wrapper.TaskWrapper;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * 执行计划为一次run构建出的TaskWrapper集合
+ */
+@SuppressWarnings("rawtypes")
+public class PlanInstance {
+    private final ExecutionPlan plan;
+    private final TaskWrapper[] wrappers;
+    private final List<TaskWrapper> roots;
+
+    PlanInstance(ExecutionPlan plan, TaskWrapper[] wrappers, List<TaskWrapper> roots) {
+        this.plan = plan;
+        this.wrappers = wrappers;
+        this.roots = Collections.unmodifiableList(roots);
+    }
+
+    /**
+     * 起始节点，可以直接传给Async.beginTask
+     */
+    public List<TaskWrapper> getRoots() {
+        return roots;
+    }
+
+    public TaskWrapper getWrapper(String id) {
+        return wrappers[plan.indexOf(id)];
+    }
+
+    public TaskResult getResult(String id) {
+        return getWrapper(id).getTaskResult();
+    }
+
+    /**
+     * 使用指定线程池执行，模板名为计划名
+     */
+    public boolean run(long timeout, ExecutorService executorService) throws ExecutionException, InterruptedException {
+        return Async.beginTask(timeout, executorService,
+                new RunOptions.Builder().template(plan.getName()).build(), roots);
+    }
+
+    public boolean run(long timeout) throws ExecutionException, InterruptedException {
+        return Async.beginTask(timeout, new RunOptions.Builder().template(plan.getName()).build(),
+                roots.toArray(new TaskWrapper[0]));
+    }
+
+    public ExecutionPlan getPlan() {
+        return plan;
+    }
+}
@@ -0,0 +1,99 @@
+package com.haenu.platform.async.plan;
+
+import com.haenu.platform.async.exception.PlanException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按名字缓存编译好的执行计划，支持热更新。
+ * <p>
+ * 更新时先完整编译、校验新定义，成功后再原子替换；执行计划本身不可变，
+ * 正在执行的run继续使用旧计划构建出的TaskWrapper，不受影响，也不需要暂停。
+ * 新定义编译失败时保留旧计划。
+ */
+public class PlanRegistry {
+    private final PlanCompiler compiler;
+    private final Map<String, ExecutionPlan> plans = new ConcurrentHashMap<>();
+    private final Map<Path, FileTime> watchedFiles = new ConcurrentHashMap<>();
+    private volatile ScheduledExecutorService watcher;
+
+    public PlanRegistry(TaskRegistry taskRegistry) {
+        this.compiler = new PlanCompiler(taskRegistry);
+    }
+
+    /**
+     * 编译并注册（或替换）一个计划
+     */
+    public ExecutionPlan load(String json) {
+        ExecutionPlan plan = compiler.compile(json);
+        plans.put(plan.getName(), plan);
+        return plan;
+    }
+
+    public ExecutionPlan load(Path file) throws IOException {
+        ExecutionPlan plan = compiler.compile(file);
+        plans.put(plan.getName(), plan);
+        return plan;
+    }
+
+    public ExecutionPlan get(String name) {
+        ExecutionPlan plan = plans.get(name);
+        if (plan == null) {
+            throw new NoSuchElementException("no plan named " + name);
+        }
+        return plan;
+    }
+
+    public PlanInstance instantiate(String name, Map<String, ?> runParams) {
+        return get(name).instantiate(runParams);
+    }
+
+    /**
+     * 监听定义文件，文件修改后自动重新编译并替换
+     */
+    public synchronized void watch(Path file, long intervalMillis) throws IOException {
+        load(file);
+        watchedFiles.put(file, Files.getLastModifiedTime(file));
+        if (watcher == null) {
+            watcher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "Plan Watcher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            watcher.scheduleWithFixedDelay(this::reloadChanged, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public synchronized void stopWatching() {
+        if (watcher != null) {
+            watcher.shutdown();
+            watcher = null;
+        }
+        watchedFiles.clear();
+    }
+
+    private void reloadChanged() {
+        for (Map.Entry<Path, FileTime> entry : watchedFiles.entrySet()) {
+            try {
+                FileTime modified = Files.getLastModifiedTime(entry.getKey());
+                if (modified.equals(entry.getValue())) {
+                    continue;
+                }
+                entry.setValue(modified);
+                load(entry.getKey());
+            } catch (IOException | PlanException e) {
+                //编译失败保留旧计划
+                e.printStackTrace();
+            }
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.haenu.platform.async.plan;
+
+import com.haenu.platform.async.callback.ICallback;
+import com.haenu.platform.async.callback.ITask;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按名字注册ITask、ICallback，DAG定义中通过名字引用。
+ * 注册的实例会被所有run共享，需要是无状态或线程安全的。
+ */
+public class TaskRegistry {
+    private final Map<String, ITask<?, ?>> tasks = new ConcurrentHashMap<>();
+    private final Map<String, ICallback<?, ?>> callbacks = new ConcurrentHashMap<>();
+
+    public TaskRegistry register(String name, ITask<?, ?> task) {
+        tasks.put(name, task);
+        return this;
+    }
+
+    public TaskRegistry registerCallback(String name, ICallback<?, ?> callback) {
+        callbacks.put(name, callback);
+        return this;
+    }
+
+    public ITask<?, ?> getTask(String name) {
+        return tasks.get(name);
+    }
+
+    public ICallback<?, ?> getCallback(String name) {
+        return callbacks.get(name);
+    }
+}
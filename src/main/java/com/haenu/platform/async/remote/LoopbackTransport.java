@@ -0,0 +1,44 @@
+package com.haenu.platform.async.remote;
+
+import com.haenu.platform.async.exception.RemoteTaskException;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 进程内的回环传输，直接调用RemoteWorker，但请求和响应都完整地序列化一次，
+ * 用于在单个JVM内验证远程任务的参数、结果是否可序列化。
+ */
+public class LoopbackTransport implements RemoteTransport {
+    private final RemoteWorker worker;
+    private final AtomicLong requestIds = new AtomicLong();
+    private volatile boolean closed;
+
+    public LoopbackTransport(RemoteWorker worker) {
+        this.worker = worker;
+    }
+
+    @Override
+    public Object call(String taskName, Object param, long timeoutMillis) throws IOException {
+        if (closed) {
+            throw new IOException("transport closed");
+        }
+        RemoteRequest request = (RemoteRequest) RemoteCodec.decode(RemoteCodec.encode(
+                new RemoteRequest(requestIds.incrementAndGet(), taskName, param)));
+        RemoteResponse response = (RemoteResponse) RemoteCodec.decode(RemoteCodec.encode(worker.handle(request)));
+        if (!response.isSuccess()) {
+            throw new RemoteTaskException(response.getError());
+        }
+        return response.getResult();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+    }
+
+    @Override
+    public String toString() {
+        return "LoopbackTransport";
+    }
+}
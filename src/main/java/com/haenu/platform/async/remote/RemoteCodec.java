@@ -0,0 +1,91 @@
+package com.haenu.platform.async.remote;
+
+import java.io.*;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 请求、响应的编解码。每帧格式为：[int 长度][Java序列化的对象]。
+ * <p>
+ * 反序列化只接受白名单中的类，默认为请求、响应、String和基本类型的包装类，
+ * 避免对端发来任意类的序列化数据时触发gadget链执行代码。
+ * 任务的参数或结果使用其他类型时，协调方和worker都要先用allow加入白名单，
+ * 不在白名单中的数据会导致连接被关闭。
+ */
+public final class RemoteCodec {
+    /**
+     * 单帧的最大长度，超过认为数据流已损坏
+     */
+    private static final int MAX_FRAME = 64 * 1024 * 1024;
+
+    private static final Set<String> ALLOWED = ConcurrentHashMap.newKeySet();
+
+    static {
+        allow(RemoteRequest.class, RemoteResponse.class, String.class, Number.class, Boolean.class, Character.class,
+                Byte.class, Short.class, Integer.class, Long.class, Float.class, Double.class);
+    }
+
+    private RemoteCodec() {
+    }
+
+    /**
+     * 把类加入反序列化白名单，只加入类本身，父类、字段的类型需要各自加入
+     */
+    public static void allow(Class<?>... types) {
+        for (Class<?> type : types) {
+            ALLOWED.add(type.getName());
+        }
+    }
+
+    static byte[] encode(Object object) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(object);
+        }
+        return bytes.toByteArray();
+    }
+
+    static Object decode(byte[] bytes) throws IOException {
+        try (ObjectInputStream in = new AllowListInputStream(new ByteArrayInputStream(bytes))) {
+            return in.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new InvalidClassException(e.getMessage());
+        }
+    }
+
+    static void writeFrame(DataOutputStream out, Object object) throws IOException {
+        byte[] bytes = encode(object);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+        out.flush();
+    }
+
+    static Object readFrame(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > MAX_FRAME) {
+            throw new StreamCorruptedException("bad frame length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return decode(bytes);
+    }
+
+    private static final class AllowListInputStream extends ObjectInputStream {
+        private AllowListInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            if (!ALLOWED.contains(desc.getName())) {
+                throw new InvalidClassException(desc.getName(), "class not allowed in remote calls");
+            }
+            return super.resolveClass(desc);
+        }
+
+        @Override
+        protected Class<?> resolveProxyClass(String[] interfaces) throws IOException {
+            throw new InvalidClassException("proxy classes are not allowed in remote calls");
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.haenu.platform.async.remote;
+
+import com.haenu.platform.async.callback.ITask;
+import com.haenu.platform.async.exception.RemoteCallLostException;
+import com.haenu.platform.async.wrapper.TaskWrapper;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 远程执行的协调方，管理一组远程worker。
+ * <p>
+ * 负载均衡：每次选在途请求最少的可用worker。
+ * 故障转移：请求发送失败或worker回执之前连接断开（IOException）时摘除该worker cooldownMillis，请求转到下一个worker；
+ * 所有worker都不可用时在本地执行。
+ * worker回执之后的失败不做转移，直接失败，避免非幂等任务被重复执行：任务本身在worker上执行失败（RemoteTaskException）、
+ * 等待超时、以及回执之后连接断开（RemoteCallLostException，同时摘除该worker）。
+ */
+public class RemoteExecutor implements Closeable {
+    private final Endpoint[] endpoints;
+    private final long callTimeoutMillis;
+    private final long cooldownMillis;
+    private final boolean localFallback;
+    private final AtomicInteger cursor = new AtomicInteger();
+
+    private RemoteExecutor(Builder builder) {
+        this.endpoints = new Endpoint[builder.transports.size()];
+        for (int i = 0; i < endpoints.length; i++) {
+            endpoints[i] = new Endpoint(builder.transports.get(i));
+        }
+        this.callTimeoutMillis = builder.callTimeoutMillis;
+        this.cooldownMillis = builder.cooldownMillis;
+        this.localFallback = builder.localFallback;
+    }
+
+    /**
+     * 执行任务：优先在远程worker上执行，没有可用worker时用local在本地执行
+     */
+    @SuppressWarnings("unchecked")
+    public <T, V> V execute(String taskName, T param, ITask<T, V> local, Map<String, TaskWrapper> allWrappers) throws Exception {
+        IOException lastFailure = null;
+        for (int attempt = 0; attempt < endpoints.length; attempt++) {
+            Endpoint endpoint = select();
+            if (endpoint == null) {
+                break;
+            }
+            endpoint.inFlight.incrementAndGet();
+            try {
+                return (V) endpoint.transport.call(taskName, param, callTimeoutMillis);
+            } catch (IOException e) {
+                lastFailure = e;
+                endpoint.downUntil = System.currentTimeMillis() + cooldownMillis;
+            } catch (RemoteCallLostException e) {
+                endpoint.downUntil = System.currentTimeMillis() + cooldownMillis;
+                throw e;
+            } finally {
+                endpoint.inFlight.decrementAndGet();
+            }
+        }
+        if (localFallback && local != null) {
+            return local.action(param, allWrappers);
+        }
+        throw lastFailure != null ? lastFailure : new IOException("no remote worker available for " + taskName);
+    }
+
+    /**
+     * 选在途请求最少的可用worker，从轮转位置开始比较，在途数相同时请求均匀分散
+     */
+    private Endpoint select() {
+        long now = System.currentTimeMillis();
+        int start = Math.floorMod(cursor.getAndIncrement(), Math.max(1, endpoints.length));
+        Endpoint best = null;
+        for (int i = 0; i < endpoints.length; i++) {
+            Endpoint endpoint = endpoints[(start + i) % endpoints.length];
+            if (endpoint.downUntil > now) {
+                continue;
+            }
+            if (best == null || endpoint.inFlight.get() < best.inFlight.get()) {
+                best = endpoint;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 各worker当前的在途请求数
+     */
+    public int[] getInFlight() {
+        int[] inFlight = new int[endpoints.length];
+        for (int i = 0; i < endpoints.length; i++) {
+            inFlight[i] = endpoints[i].inFlight.get();
+        }
+        return inFlight;
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (Endpoint endpoint : endpoints) {
+            endpoint.transport.close();
+        }
+    }
+
+    private static final class Endpoint {
+        private final RemoteTransport transport;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private volatile long downUntil;
+
+        private Endpoint(RemoteTransport transport) {
+            this.transport = transport;
+        }
+    }
+
+    public static class Builder {
+        private final List<RemoteTransport> transports = new ArrayList<>();
+        private long callTimeoutMillis = 3000;
+        private long cooldownMillis = 1000;
+        private boolean localFallback = true;
+
+        public Builder worker(RemoteTransport transport) {
+            transports.add(transport);
+            return this;
+        }
+
+        /**
+         * 等待单个远程调用结果的超时时间
+         */
+        public Builder callTimeout(long callTimeoutMillis) {
+            this.callTimeoutMillis = callTimeoutMillis;
+            return this;
+        }
+
+        /**
+         * 传输失败的worker被摘除的时间
+         */
+        public Builder cooldown(long cooldownMillis) {
+            this.cooldownMillis = cooldownMillis;
+            return this;
+        }
+
+        /**
+         * 所有worker都不可用时是否在本地执行，默认开启
+         */
+        public Builder localFallback(boolean localFallback) {
+            this.localFallback = localFallback;
+            return this;
+        }
+
+        public RemoteExecutor build() {
+            return new RemoteExecutor(this);
+        }
+    }
+}
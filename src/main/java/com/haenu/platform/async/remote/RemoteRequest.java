@@ -0,0 +1,40 @@
+package com.haenu.platform.async.remote;
+
+import java.io.Serializable;
+
+/**
+ * 发给远程worker的执行请求：按名字引用worker上注册的ITask，参数需要可序列化
+ */
+public class RemoteRequest implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final long requestId;
+    private final String taskName;
+    private final Object param;
+
+    public RemoteRequest(long requestId, String taskName, Object param) {
+        this.requestId = requestId;
+        this.taskName = taskName;
+        this.param = param;
+    }
+
+    public long getRequestId() {
+        return requestId;
+    }
+
+    public String getTaskName() {
+        return taskName;
+    }
+
+    public Object getParam() {
+        return param;
+    }
+
+    @Override
+    public String toString() {
+        return "RemoteRequest{" +
+                "requestId=" + requestId +
+                ", taskName='" + taskName + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,69 @@
+package com.haenu.platform.async.remote;
+
+import java.io.Serializable;
+
+/**
+ * 远程worker的执行结果。任务抛出异常时只回传异常描述，异常类在协调方不一定存在。
+ * <p>
+ * worker读到请求后先回一个回执（isAck()为true），执行完再回结果，协调方据此区分请求是否已经到达worker。
+ */
+public class RemoteResponse implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final long requestId;
+    private final Object result;
+    private final String error;
+    private final boolean ack;
+
+    private RemoteResponse(long requestId, Object result, String error, boolean ack) {
+        this.requestId = requestId;
+        this.result = result;
+        this.error = error;
+        this.ack = ack;
+    }
+
+    /**
+     * 回执：worker已收到请求，即将执行
+     */
+    public static RemoteResponse ack(long requestId) {
+        return new RemoteResponse(requestId, null, null, true);
+    }
+
+    public static RemoteResponse success(long requestId, Object result) {
+        return new RemoteResponse(requestId, result, null, false);
+    }
+
+    public static RemoteResponse failure(long requestId, String error) {
+        return new RemoteResponse(requestId, null, error == null ? "unknown error" : error, false);
+    }
+
+    public long getRequestId() {
+        return requestId;
+    }
+
+    public Object getResult() {
+        return result;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+    public boolean isAck() {
+        return ack;
+    }
+
+    @Override
+    public String toString() {
+        return "RemoteResponse{" +
+                "requestId=" + requestId +
+                ", result=" + result +
+                ", error='" + error + '\'' +
+                ", ack=" + ack +
+                '}';
+    }
+}
@@ -0,0 +1,58 @@
+package com.haenu.platform.async.remote;
+
+import com.haenu.platform.async.callback.ITask;
+import com.haenu.platform.async.wrapper.TaskWrapper;
+
+import java.util.Map;
+
+/**
+ * 远程执行的ITask：把参数和任务名发给RemoteExecutor选出的worker执行，结果回到协调方，
+ * 之后的依赖判断、回调和本地任务完全一样。没有可用worker时用本地的ITask执行。
+ * <p>
+ * 一般不直接使用，通过TaskWrapper.Builder.remote(remoteExecutor, taskName)给节点打上远程标记。
+ */
+public class RemoteTask<T, V> implements ITask<T, V> {
+    private final String taskName;
+    private final ITask<T, V> local;
+    private final RemoteExecutor remoteExecutor;
+
+    public RemoteTask(String taskName, ITask<T, V> local, RemoteExecutor remoteExecutor) {
+        this.taskName = taskName;
+        this.local = local;
+        this.remoteExecutor = remoteExecutor;
+    }
+
+    /**
+     * 执行任务，异常原样抛出。TaskWrapper通过这里执行，等待结果超时的TimeoutException按超时状态处理
+     */
+    public V call(T object, Map<String, TaskWrapper> allWrappers) throws Exception {
+        return remoteExecutor.execute(taskName, object, local, allWrappers);
+    }
+
+    @Override
+    public V action(T object, Map<String, TaskWrapper> allWrappers) {
+        try {
+            return call(object, allWrappers);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("remote task " + taskName + " interrupted", e);
+        } catch (Exception e) {
+            throw new IllegalStateException("remote task " + taskName + " failed: " + e, e);
+        }
+    }
+
+    @Override
+    public V defaultValue() {
+        return local == null ? null : local.defaultValue();
+    }
+
+    public String getTaskName() {
+        return taskName;
+    }
+
+    public ITask<T, V> getLocal() {
+        return local;
+    }
+}
@@ -0,0 +1,20 @@
+package com.haenu.platform.async.remote;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 协调方到一个远程worker的传输通道，可替换为不同的实现（TCP、进程内回环等）。
+ * <p>
+ * 请求没能到达worker时抛IOException，调用方会把该worker暂时摘除并转到其他worker或本地执行；
+ * 请求到达后连接断开抛RemoteCallLostException，任务本身执行失败抛RemoteTaskException，都不做转移。
+ */
+public interface RemoteTransport extends Closeable {
+    /**
+     * 在远程worker上执行名为taskName的任务，阻塞直到返回结果
+     *
+     * @param timeoutMillis 等待结果的超时时间
+     */
+    Object call(String taskName, Object param, long timeoutMillis) throws IOException, TimeoutException, InterruptedException;
+}
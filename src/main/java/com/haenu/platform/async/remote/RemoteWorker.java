@@ -0,0 +1,31 @@
+package com.haenu.platform.async.remote;
+
+import com.haenu.platform.async.callback.ITask;
+import com.haenu.platform.async.plan.TaskRegistry;
+
+import java.util.Collections;
+
+/**
+ * worker端的请求处理：按名字从TaskRegistry找到ITask并执行。
+ * 远程执行拿不到协调方的其他TaskWrapper，action的allWrappers为空map，远程任务只能依赖自己的参数。
+ */
+public class RemoteWorker {
+    private final TaskRegistry taskRegistry;
+
+    public RemoteWorker(TaskRegistry taskRegistry) {
+        this.taskRegistry = taskRegistry;
+    }
+
+    @SuppressWarnings("unchecked")
+    public RemoteResponse handle(RemoteRequest request) {
+        ITask<Object, Object> task = (ITask<Object, Object>) taskRegistry.getTask(request.getTaskName());
+        if (task == null) {
+            return RemoteResponse.failure(request.getRequestId(), "unknown task " + request.getTaskName());
+        }
+        try {
+            return RemoteResponse.success(request.getRequestId(), task.action(request.getParam(), Collections.emptyMap()));
+        } catch (Exception e) {
+            return RemoteResponse.failure(request.getRequestId(), e.toString());
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.haenu.platform.async.remote;
+
+import com.haenu.platform.async.plan.TaskRegistry;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * 远程worker的TCP服务端，配合SocketTransport使用。
+ * 每个连接一个读线程，读到请求后先回执，再交给执行线程池执行，响应按完成顺序写回，同一连接上的写串行化。
+ * <p>
+ * 连接没有认证，默认只监听回环地址；监听其他地址时只应暴露在可信网络中，可执行的任务由TaskRegistry限定，
+ * 可反序列化的类由RemoteCodec的白名单限定。
+ * <p>
+ * 可以作为独立JVM启动：java ... RemoteWorkerServer port registrarClass [threads] [bindAddress]，
+ * registrarClass需实现Consumer&lt;TaskRegistry&gt;并有无参构造方法，用来注册本worker可执行的任务，
+ * 参数、结果用到白名单以外的类时在这里调用RemoteCodec.allow。
+ * 启动完成后在标准输出打印一行 "ready port"。
+ */
+public class RemoteWorkerServer implements Closeable {
+    private final RemoteWorker worker;
+    private final ServerSocket serverSocket;
+    private final ExecutorService executor;
+    private volatile boolean closed;
+
+    /**
+     * 监听回环地址
+     */
+    public RemoteWorkerServer(TaskRegistry taskRegistry, int port, int threads) throws IOException {
+        this(taskRegistry, InetAddress.getLoopbackAddress(), port, threads);
+    }
+
+    /**
+     * @param bindAddress 监听的地址，null表示所有地址
+     */
+    public RemoteWorkerServer(TaskRegistry taskRegistry, InetAddress bindAddress, int port, int threads) throws IOException {
+        this.worker = new RemoteWorker(taskRegistry);
+        this.serverSocket = new ServerSocket();
+        serverSocket.bind(new InetSocketAddress(bindAddress, port));
+        this.executor = Executors.newFixedThreadPool(threads, daemonFactory("Remote Worker"));
+        Thread acceptor = new Thread(this::acceptLoop, "Remote Acceptor " + getPort());
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    private void acceptLoop() {
+        while (!closed) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                Thread reader = new Thread(() -> serve(socket), "Remote Connection " + socket.getRemoteSocketAddress());
+                reader.setDaemon(true);
+                reader.start();
+            } catch (SocketException e) {
+                //close()关闭了serverSocket
+                return;
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (Socket s = socket) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+            for (; ; ) {
+                RemoteRequest request = (RemoteRequest) RemoteCodec.readFrame(in);
+                //先回执再执行，回执写不出去时连接已断开，协调方会把请求转到其他worker，这里不再执行
+                synchronized (out) {
+                    RemoteCodec.writeFrame(out, RemoteResponse.ack(request.getRequestId()));
+                }
+                executor.execute(() -> reply(s, out, worker.handle(request)));
+            }
+        } catch (EOFException | SocketException e) {
+            //协调方断开连接
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void reply(Socket socket, DataOutputStream out, RemoteResponse response) {
+        synchronized (out) {
+            try {
+                RemoteCodec.writeFrame(out, response);
+            } catch (NotSerializableException e) {
+                //结果不可序列化，改为回传失败，避免协调方一直等到超时
+                try {
+                    RemoteCodec.writeFrame(out, RemoteResponse.failure(response.getRequestId(), e.toString()));
+                } catch (IOException ex) {
+                    closeQuietly(socket);
+                }
+            } catch (IOException e) {
+                closeQuietly(socket);
+            }
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private static ThreadFactory daemonFactory(String prefix) {
+        AtomicInteger seq = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + seq.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        serverSocket.close();
+        executor.shutdownNow();
+    }
+
+    @SuppressWarnings("unchecked")
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("usage: RemoteWorkerServer port registrarClass [threads] [bindAddress]");
+            System.exit(1);
+        }
+        int port = Integer.parseInt(args[0]);
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        InetAddress bindAddress = args.length > 3 ? InetAddress.getByName(args[3]) : InetAddress.getLoopbackAddress();
+        TaskRegistry taskRegistry = new TaskRegistry();
+        Consumer<TaskRegistry> registrar = (Consumer<TaskRegistry>) Class.forName(args[1]).getDeclaredConstructor().newInstance();
+        registrar.accept(taskRegistry);
+        RemoteWorkerServer server = new RemoteWorkerServer(taskRegistry, bindAddress, port, threads);
+        System.out.println("ready " + server.getPort());
+        System.out.flush();
+        //worker线程都是守护线程，主线程阻塞住进程
+        Thread.currentThread().join();
+    }
+}
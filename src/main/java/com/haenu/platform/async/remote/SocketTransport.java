@@ -0,0 +1,161 @@
+package com.haenu.platform.async.remote;
+
+import com.haenu.platform.async.exception.RemoteCallLostException;
+import com.haenu.platform.async.exception.RemoteTaskException;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 基于TCP的传输，到一个worker只保持一条长连接，多个请求按requestId复用这条连接。
+ * <p>
+ * 发送在调用线程上完成，由后台读线程接收响应并按requestId唤醒等待的调用方。
+ * worker收到请求后先回执再执行：发送失败或收到回执之前连接断开时抛IOException，请求没有到达worker，可以转到其他worker；
+ * 收到回执之后连接断开时，等待中的调用以RemoteCallLostException失败，不再转移。下一次调用时重新建连。
+ * <p>
+ * worker刚挂掉时，请求可能在读线程发现连接断开之前写进了旧连接，写入本身不会失败，只能靠回执判断请求是否到达。
+ */
+public class SocketTransport implements RemoteTransport {
+    private static final int CONNECT_TIMEOUT_MILLIS = 1000;
+
+    private final String host;
+    private final int port;
+    private final AtomicLong requestIds = new AtomicLong();
+    private final Map<Long, PendingCall> pending = new ConcurrentHashMap<>();
+
+    private Socket socket;
+    private DataOutputStream out;
+    private volatile boolean closed;
+
+    public SocketTransport(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    @Override
+    public Object call(String taskName, Object param, long timeoutMillis) throws IOException, TimeoutException, InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        long requestId = requestIds.incrementAndGet();
+        PendingCall call = new PendingCall();
+        pending.put(requestId, call);
+        try {
+            send(new RemoteRequest(requestId, taskName, param));
+            try {
+                call.acked.get(timeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (ExecutionException e) {
+                //worker没有确认收到请求，和发送失败一样处理
+                throw new IOException("connection to " + host + ":" + port
+                        + " lost before request " + taskName + " was received", e.getCause());
+            }
+            RemoteResponse response = call.response.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            if (!response.isSuccess()) {
+                throw new RemoteTaskException(response.getError());
+            }
+            return response.getResult();
+        } catch (ExecutionException e) {
+            //worker已经收到请求，可能已经执行过
+            throw new RemoteCallLostException("connection to " + host + ":" + port
+                    + " lost after request " + taskName + " was received: " + e.getCause());
+        } finally {
+            pending.remove(requestId);
+        }
+    }
+
+    private synchronized void send(RemoteRequest request) throws IOException {
+        if (closed) {
+            throw new IOException("transport closed");
+        }
+        if (socket == null) {
+            connect();
+        }
+        try {
+            RemoteCodec.writeFrame(out, request);
+        } catch (IOException e) {
+            disconnect(socket, e);
+            throw e;
+        }
+    }
+
+    private void connect() throws IOException {
+        Socket newSocket = new Socket();
+        try {
+            newSocket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MILLIS);
+            newSocket.setTcpNoDelay(true);
+            out = new DataOutputStream(new BufferedOutputStream(newSocket.getOutputStream()));
+        } catch (IOException e) {
+            newSocket.close();
+            throw e;
+        }
+        socket = newSocket;
+        DataInputStream in = new DataInputStream(new BufferedInputStream(newSocket.getInputStream()));
+        Thread reader = new Thread(() -> readLoop(newSocket, in), "Remote Reader " + host + ":" + port);
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    private void readLoop(Socket readSocket, DataInputStream in) {
+        try {
+            for (; ; ) {
+                RemoteResponse response = (RemoteResponse) RemoteCodec.readFrame(in);
+                PendingCall call = pending.get(response.getRequestId());
+                //调用方已超时的响应直接丢弃
+                if (call == null) {
+                    continue;
+                }
+                call.acked.complete(null);
+                if (!response.isAck()) {
+                    call.response.complete(response);
+                }
+            }
+        } catch (IOException e) {
+            disconnect(readSocket, e);
+        }
+    }
+
+    /**
+     * 关闭连接，连接上所有等待中的调用以IOException失败
+     */
+    private synchronized void disconnect(Socket brokenSocket, IOException cause) {
+        if (socket != brokenSocket || brokenSocket == null) {
+            return;
+        }
+        socket = null;
+        out = null;
+        try {
+            brokenSocket.close();
+        } catch (IOException ignored) {
+        }
+        IOException failure = cause instanceof EOFException ? new IOException("connection closed by " + this) : cause;
+        for (PendingCall call : pending.values()) {
+            call.acked.completeExceptionally(failure);
+            call.response.completeExceptionally(failure);
+        }
+    }
+
+    @Override
+    public void close() {
+        Socket current;
+        synchronized (this) {
+            closed = true;
+            current = socket;
+        }
+        disconnect(current, new IOException("transport closed"));
+    }
+
+    @Override
+    public String toString() {
+        return "SocketTransport{" + host + ":" + port + '}';
+    }
+
+    /**
+     * 一个等待中的调用：先等worker的回执，再等执行结果
+     */
+    private static final class PendingCall {
+        private final CompletableFuture<Void> acked = new CompletableFuture<>();
+        private final CompletableFuture<RemoteResponse> response = new CompletableFuture<>();
+    }
+}
@@ -3,6 +3,9 @@ package com.haenu.platform.async.task;
 
 import com.haenu.platform.async.wrapper.TaskWrapper;
 
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.function.Predicate;
+
 /**
  * 对依赖的wrapper的封装
  */
@@ -23,11 +26,31 @@ public class DependWrapper {
      */
     private boolean must = true;
 
+    /**
+     * 边的条件，依赖任务完成后用它的结果判断这条边是否激活。为null时总是激活。
+     * 不激活的边会被剪掉，下游因此不可达时，整个下游子图被批量标记为跳过，不会被调度执行。
+     */
+    private Predicate<TaskResult<?>> condition;
+
+    /**
+     * 这条边是否已被剪掉，0-否 1-是，保证每条边只被剪一次
+     */
+    private volatile int pruned;
+
+    private static final AtomicIntegerFieldUpdater<DependWrapper> PRUNED =
+            AtomicIntegerFieldUpdater.newUpdater(DependWrapper.class, "pruned");
+
     public DependWrapper(TaskWrapper<?, ?> dependWrapper, boolean must) {
         this.dependWrapper = dependWrapper;
         this.must = must;
     }
 
+    public DependWrapper(TaskWrapper<?, ?> dependWrapper, boolean must, Predicate<TaskResult<?>> condition) {
+        this.dependWrapper = dependWrapper;
+        this.must = must;
+        this.condition = condition;
+    }
+
     public DependWrapper() {
     }
 
@@ -47,11 +70,33 @@ public class DependWrapper {
         this.must = must;
     }
 
+    public Predicate<TaskResult<?>> getCondition() {
+        return condition;
+    }
+
+    public void setCondition(Predicate<TaskResult<?>> condition) {
+        this.condition = condition;
+    }
+
+    public boolean isPruned() {
+        return pruned == 1;
+    }
+
+    /**
+     * 把这条边标记为已剪掉
+     *
+     * @return 本次调用是否完成了标记，已经被标记过的返回false
+     */
+    public boolean markPruned() {
+        return PRUNED.compareAndSet(this, 0, 1);
+    }
+
     @Override
     public String toString() {
         return "DependWrapper{" +
                 "dependWrapper=" + dependWrapper +
                 ", must=" + must +
+                ", conditional=" + (condition != null) +
                 '}';
     }
 }
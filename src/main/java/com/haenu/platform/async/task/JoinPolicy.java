@@ -0,0 +1,46 @@
+package com.haenu.platform.async.task;
+
+/**
+ * 多依赖任务的汇合策略。
+ * <p>
+ * 默认情况下（不设置JoinPolicy），多依赖任务按DependWrapper的must字段汇合：must依赖全部完成，或没有must时任意一个完成。
+ * 设置JoinPolicy后，忽略must字段，只要有required个依赖成功完成，就执行自己，
+ * 并取消其余尚未完成、且只被自己等待的依赖任务：未开始的不再执行，正在执行的线程被中断，它们的结果为defaultValue()；
+ * 还有其他未结束的后继依赖它的任务不取消，照常执行。
+ * 失败的依赖多到不可能再凑够required个时，自己快速失败。
+ */
+public final class JoinPolicy {
+    private final int required;
+
+    private JoinPolicy(int required) {
+        if (required < 1) {
+            throw new IllegalArgumentException("required must be >= 1");
+        }
+        this.required = required;
+    }
+
+    /**
+     * k-of-n：任意k个依赖成功即可
+     */
+    public static JoinPolicy quorum(int required) {
+        return new JoinPolicy(required);
+    }
+
+    /**
+     * 第一个成功的依赖即可
+     */
+    public static JoinPolicy firstSuccess() {
+        return new JoinPolicy(1);
+    }
+
+    public int getRequired() {
+        return required;
+    }
+
+    @Override
+    public String toString() {
+        return "JoinPolicy{" +
+                "required=" + required +
+                '}';
+    }
+}
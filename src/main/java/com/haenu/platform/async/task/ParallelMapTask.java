@@ -0,0 +1,100 @@
+package com.haenu.platform.async.task;
+
+import com.haenu.platform.async.callback.ITask;
+import com.haenu.platform.async.wrapper.TaskWrapper;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * 数据并行的map任务。param是一个集合，对其中每个元素执行elementTask，结果按原顺序收集成一个List。
+ * <p>
+ * 集合按ForkJoinPool的并行度切分成若干块，块内顺序执行，块之间通过fork-join并行执行。
+ * ForkJoinPool必须由调用方显式指定，不使用commonPool：元素任务通常会阻塞（如RPC），
+ * 放在commonPool中会拖住进程内所有使用commonPool的代码（parallelStream、CompletableFuture的默认异步等）。
+ * 相比为每个元素创建一个TaskWrapper，省去了每个元素的id、Builder、依赖关系等开销。
+ * 任何一个元素执行异常，整个任务失败，结果为defaultValue()。
+ *
+ * @param <E> 元素类型
+ * @param <R> 单个元素的结果类型
+ */
+public class ParallelMapTask<E, R> implements ITask<Collection<E>, List<R>> {
+    /**
+     * 每个worker线程平均分到的块数，块数多于线程数，便于work-stealing平衡负载
+     */
+    private static final int CHUNKS_PER_WORKER = 4;
+
+    private final ITask<E, R> elementTask;
+    private final ForkJoinPool pool;
+
+    /**
+     * @param pool 执行元素任务的ForkJoinPool，不能为null，一般为这类任务单独创建
+     */
+    public ParallelMapTask(ITask<E, R> elementTask, ForkJoinPool pool) {
+        if (elementTask == null) {
+            throw new NullPointerException("element task is null");
+        }
+        if (pool == null) {
+            throw new NullPointerException("fork join pool is null");
+        }
+        this.elementTask = elementTask;
+        this.pool = pool;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<R> action(Collection<E> elements, Map<String, TaskWrapper> allWrappers) {
+        if (elements == null || elements.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Object[] input = elements.toArray();
+        Object[] output = new Object[input.length];
+        //块大小：让每个worker平均处理CHUNKS_PER_WORKER块
+        int chunkSize = Math.max(1, input.length / (pool.getParallelism() * CHUNKS_PER_WORKER));
+        MapChunk chunk = new MapChunk(input, output, 0, input.length, chunkSize, allWrappers);
+        if (input.length <= chunkSize) {
+            chunk.compute();
+        } else {
+            pool.invoke(chunk);
+        }
+        return (List<R>) Arrays.asList(output);
+    }
+
+    /**
+     * 对[from, to)区间执行map，超过块大小就二分后fork
+     */
+    private class MapChunk extends RecursiveAction {
+        private final Object[] input;
+        private final Object[] output;
+        private final int from;
+        private final int to;
+        private final int chunkSize;
+        private final Map<String, TaskWrapper> allWrappers;
+
+        MapChunk(Object[] input, Object[] output, int from, int to, int chunkSize, Map<String, TaskWrapper> allWrappers) {
+            this.input = input;
+            this.output = output;
+            this.from = from;
+            this.to = to;
+            this.chunkSize = chunkSize;
+            this.allWrappers = allWrappers;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        protected void compute() {
+            if (to - from <= chunkSize) {
+                for (int i = from; i < to; i++) {
+                    output[i] = elementTask.action((E) input[i], allWrappers);
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            MapChunk left = new MapChunk(input, output, from, mid, chunkSize, allWrappers);
+            left.fork();
+            new MapChunk(input, output, mid, to, chunkSize, allWrappers).compute();
+            left.join();
+        }
+    }
+}
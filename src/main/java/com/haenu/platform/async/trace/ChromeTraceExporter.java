@@ -0,0 +1,84 @@
+package com.haenu.platform.async.trace;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 把追踪事件导出为Chrome Trace Event格式的JSON，可以直接用chrome://tracing或Perfetto UI打开。
+ * 每个run对应一个进程（pid为runId），每个线程对应一条轨道。
+ */
+public class ChromeTraceExporter {
+
+    private ChromeTraceExporter() {
+    }
+
+    public static void export(List<TraceEvent> events, Path file) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            export(events, writer);
+        }
+    }
+
+    public static void export(List<TraceEvent> events, Writer writer) throws IOException {
+        long origin = events.isEmpty() ? 0 : events.get(0).getBeginNanos();
+        writer.write("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[");
+        boolean first = true;
+        Set<String> namedThreads = new HashSet<>();
+        for (TraceEvent event : events) {
+            //线程名元数据，每个run、线程只写一次
+            if (namedThreads.add(event.getRunId() + ":" + event.getThreadId())) {
+                first = separator(writer, first);
+                writer.write("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":" + event.getRunId()
+                        + ",\"tid\":" + event.getThreadId() + ",\"args\":{\"name\":");
+                writeString(writer, event.getThreadName());
+                writer.write("}}");
+            }
+            first = separator(writer, first);
+            writer.write("{\"name\":");
+            writeString(writer, event.getName() == null ? event.getKind().name() : event.getName());
+            writer.write(",\"cat\":\"" + event.getKind().name() + "\"");
+            writer.write(",\"pid\":" + event.getRunId() + ",\"tid\":" + event.getThreadId());
+            writer.write(",\"ts\":" + micros(event.getBeginNanos() - origin));
+            if (event.getKind().isInstant()) {
+                writer.write(",\"ph\":\"i\",\"s\":\"t\"}");
+            } else {
+                writer.write(",\"ph\":\"X\",\"dur\":" + micros(event.getEndNanos() - event.getBeginNanos()) + "}");
+            }
+        }
+        writer.write("]}");
+        writer.flush();
+    }
+
+    private static boolean separator(Writer writer, boolean first) throws IOException {
+        if (!first) {
+            writer.write(',');
+        }
+        return false;
+    }
+
+    private static String micros(long nanos) {
+        return String.valueOf(nanos / 1000.0);
+    }
+
+    private static void writeString(Writer writer, String value) throws IOException {
+        writer.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                writer.write('\\');
+                writer.write(c);
+            } else if (c < 0x20) {
+                writer.write(String.format("\\u%04x", (int) c));
+            } else {
+                writer.write(c);
+            }
+        }
+        writer.write('"');
+    }
+}
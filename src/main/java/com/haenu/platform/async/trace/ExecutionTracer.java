@@ -0,0 +1,143 @@
+package com.haenu.platform.async.trace;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 任务执行追踪。开启后按采样率对整组任务（一次run）采样，
+ * 被采样的run中每个TaskWrapper的执行、排队、等待、跳过、超时等事件写入当前线程的预分配环形缓冲区，
+ * 记录过程不分配对象；需要分析时通过snapshot取出，再用ChromeTraceExporter导出。
+ * <p>
+ * 未开启或未被采样时，引擎只多一次volatile读，开销可以忽略。
+ * <p>
+ * 线程结束后它的缓冲区在下一次导出全部事件后移除；一直不导出时，新建缓冲区时只保留最近结束的MAX_DEAD_BUFFERS个。
+ */
+public class ExecutionTracer {
+    private static final int DEFAULT_BUFFER_CAPACITY = 8192;
+
+    /**
+     * 保留的已结束线程的缓冲区个数上限，线程池频繁创建、回收线程时不会无限增长
+     */
+    private static final int MAX_DEAD_BUFFERS = 64;
+
+    private static volatile double sampleRate;
+    private static volatile int bufferCapacity = DEFAULT_BUFFER_CAPACITY;
+
+    /**
+     * 所有线程的缓冲区，导出时遍历
+     */
+    private static final List<TraceBuffer> BUFFERS = new CopyOnWriteArrayList<>();
+
+    private static final ThreadLocal<TraceBuffer> LOCAL_BUFFER = ThreadLocal.withInitial(() -> {
+        TraceBuffer buffer = new TraceBuffer(Thread.currentThread(), bufferCapacity);
+        pruneDead(MAX_DEAD_BUFFERS);
+        BUFFERS.add(buffer);
+        return buffer;
+    });
+
+    private ExecutionTracer() {
+    }
+
+    /**
+     * 开启追踪
+     *
+     * @param rate 采样率，0~1，1表示每次run都追踪
+     */
+    public static void enable(double rate) {
+        if (rate < 0 || rate > 1) {
+            throw new IllegalArgumentException("sample rate must be in [0, 1]");
+        }
+        sampleRate = rate;
+    }
+
+    public static void disable() {
+        sampleRate = 0;
+    }
+
+    /**
+     * 设置每个线程缓冲区可保留的事件数，只对之后新建的缓冲区生效
+     */
+    public static void setBufferCapacity(int capacity) {
+        bufferCapacity = capacity;
+    }
+
+    /**
+     * 按采样率决定一次run是否追踪
+     */
+    public static boolean shouldSample() {
+        double rate = sampleRate;
+        return rate > 0 && (rate >= 1 || ThreadLocalRandom.current().nextDouble() < rate);
+    }
+
+    /**
+     * 记录一个区间事件
+     */
+    public static void record(TraceKind kind, String name, long runId, long beginNanos, long endNanos) {
+        LOCAL_BUFFER.get().record(kind, name, runId, beginNanos, endNanos);
+    }
+
+    /**
+     * 记录一个瞬时事件
+     */
+    public static void mark(TraceKind kind, String name, long runId) {
+        long now = System.nanoTime();
+        LOCAL_BUFFER.get().record(kind, name, runId, now, now);
+    }
+
+    /**
+     * 取出所有线程中仍保留的事件，按开始时间排序
+     */
+    public static List<TraceEvent> snapshot() {
+        return snapshot(-1);
+    }
+
+    /**
+     * 取出指定run的事件，按开始时间排序。runId小于0时取出所有事件，已结束线程的缓冲区导出后移除
+     */
+    public static List<TraceEvent> snapshot(long runId) {
+        List<TraceEvent> events = new ArrayList<>();
+        for (TraceBuffer buffer : BUFFERS) {
+            //先判断线程是否结束再复制，结束前写入的事件都能复制到
+            boolean alive = buffer.isOwnerAlive();
+            buffer.copyTo(events, runId);
+            if (!alive && runId < 0) {
+                BUFFERS.remove(buffer);
+            }
+        }
+        events.sort(Comparator.comparingLong(TraceEvent::getBeginNanos));
+        return events;
+    }
+
+    /**
+     * 清空所有缓冲区，移除已结束线程的缓冲区
+     */
+    public static void clear() {
+        for (TraceBuffer buffer : BUFFERS) {
+            buffer.clear();
+        }
+        pruneDead(0);
+    }
+
+    /**
+     * 移除已结束线程的缓冲区，最多保留最近的keep个
+     */
+    private static void pruneDead(int keep) {
+        int dead = 0;
+        for (TraceBuffer buffer : BUFFERS) {
+            if (!buffer.isOwnerAlive()) {
+                dead++;
+            }
+        }
+        for (TraceBuffer buffer : BUFFERS) {
+            if (dead <= keep) {
+                return;
+            }
+            if (!buffer.isOwnerAlive() && BUFFERS.remove(buffer)) {
+                dead--;
+            }
+        }
+    }
+}
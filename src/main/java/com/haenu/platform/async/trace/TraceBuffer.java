@@ -0,0 +1,81 @@
+package com.haenu.platform.async.trace;
+
+import java.lang.ref.WeakReference;
+import java.util.List;
+
+/**
+ * 单个线程的追踪环形缓冲区，所有数组在创建时预分配，记录事件时不产生任何对象分配。
+ * 只有所属线程会写入；导出时其他线程读取，写满后覆盖最旧的事件。
+ */
+final class TraceBuffer {
+    /**
+     * 弱引用所属线程，缓冲区不会让已结束的线程无法回收
+     */
+    private final WeakReference<Thread> owner;
+    private final long threadId;
+    private final String threadName;
+    private final int mask;
+
+    private final long[] runIds;
+    private final long[] begins;
+    private final long[] ends;
+    private final String[] names;
+    private final byte[] kinds;
+
+    /**
+     * 已写入的事件总数，写完数据后再更新，保证导出线程能看到完整的槽位
+     */
+    private volatile long written;
+
+    TraceBuffer(Thread thread, int capacity) {
+        this.owner = new WeakReference<>(thread);
+        this.threadId = thread.getId();
+        this.threadName = thread.getName();
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        this.mask = size - 1;
+        this.runIds = new long[size];
+        this.begins = new long[size];
+        this.ends = new long[size];
+        this.names = new String[size];
+        this.kinds = new byte[size];
+    }
+
+    void record(TraceKind kind, String name, long runId, long beginNanos, long endNanos) {
+        long seq = written;
+        int slot = (int) (seq & mask);
+        runIds[slot] = runId;
+        begins[slot] = beginNanos;
+        ends[slot] = endNanos;
+        names[slot] = name;
+        kinds[slot] = (byte) kind.ordinal();
+        written = seq + 1;
+    }
+
+    /**
+     * 复制出缓冲区中仍保留的事件，runId小于0时复制所有run的事件
+     */
+    void copyTo(List<TraceEvent> events, long runId) {
+        long end = written;
+        long start = Math.max(0, end - (mask + 1));
+        for (long seq = start; seq < end; seq++) {
+            int slot = (int) (seq & mask);
+            if (runId >= 0 && runIds[slot] != runId) {
+                continue;
+            }
+            events.add(new TraceEvent(TraceKind.of(kinds[slot]), names[slot], runIds[slot],
+                    threadId, threadName, begins[slot], ends[slot]));
+        }
+    }
+
+    void clear() {
+        written = 0;
+    }
+
+    /**
+     * 所属线程是否还在运行，结束后不会再写入
+     */
+    boolean isOwnerAlive() {
+        Thread thread = owner.get();
+        return thread != null && thread.isAlive();
+    }
+}
@@ -0,0 +1,63 @@
+package com.haenu.platform.async.trace;
+
+/**
+ * 导出时使用的追踪事件快照，时间为System.nanoTime()的纳秒值
+ */
+public class TraceEvent {
+    private final TraceKind kind;
+    private final String name;
+    private final long runId;
+    private final long threadId;
+    private final String threadName;
+    private final long beginNanos;
+    private final long endNanos;
+
+    TraceEvent(TraceKind kind, String name, long runId, long threadId, String threadName, long beginNanos, long endNanos) {
+        this.kind = kind;
+        this.name = name;
+        this.runId = runId;
+        this.threadId = threadId;
+        this.threadName = threadName;
+        this.beginNanos = beginNanos;
+        this.endNanos = endNanos;
+    }
+
+    public TraceKind getKind() {
+        return kind;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getRunId() {
+        return runId;
+    }
+
+    public long getThreadId() {
+        return threadId;
+    }
+
+    public String getThreadName() {
+        return threadName;
+    }
+
+    public long getBeginNanos() {
+        return beginNanos;
+    }
+
+    public long getEndNanos() {
+        return endNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "TraceEvent{" +
+                "kind=" + kind +
+                ", name='" + name + '\'' +
+                ", runId=" + runId +
+                ", threadName='" + threadName + '\'' +
+                ", costNanos=" + (endNanos - beginNanos) +
+                '}';
+    }
+}
@@ -0,0 +1,45 @@
+package com.haenu.platform.async.trace;
+
+/**
+ * 追踪事件的类型
+ */
+public enum TraceKind {
+    /**
+     * 任务的action执行区间（含begin、result回调）
+     */
+    ACTION,
+    /**
+     * 任务提交到线程池到开始执行之间的排队区间
+     */
+    QUEUED,
+    /**
+     * 多个后继任务并行时，发起线程阻塞等待它们完成的区间
+     */
+    JOIN_WAIT,
+    /**
+     * Async等待整组任务完成的区间
+     */
+    GROUP_WAIT,
+    /**
+     * 任务因为后继已开始执行而被跳过（瞬时事件）
+     */
+    SKIPPED,
+    /**
+     * 任务超时快速失败（瞬时事件）
+     */
+    TIMEOUT,
+    /**
+     * 任务异常快速失败（瞬时事件）
+     */
+    FAILED;
+
+    private static final TraceKind[] VALUES = values();
+
+    static TraceKind of(int ordinal) {
+        return VALUES[ordinal];
+    }
+
+    boolean isInstant() {
+        return this == SKIPPED || this == TIMEOUT || this == FAILED;
+    }
+}
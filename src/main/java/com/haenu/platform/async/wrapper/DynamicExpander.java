@@ -0,0 +1,122 @@
+package com.haenu.platform.async.wrapper;
+
+import com.haenu.platform.async.callback.IDynamicTask;
+import com.haenu.platform.async.executor.RunContext;
+import com.haenu.platform.async.executor.SystemClock;
+import com.haenu.platform.async.metrics.BlockingKind;
+import com.haenu.platform.async.task.ResultState;
+import com.haenu.platform.async.task.TaskResult;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * IDynamicTask的展开执行：生成子任务，按并行度限制提交到线程池，在剩余时间内等待全部完成，按顺序收集结果。
+ */
+final class DynamicExpander {
+
+    private DynamicExpander() {
+    }
+
+    /**
+     * 展开并执行子任务
+     *
+     * @param remainTime 剩余时间，子任务和父任务共享同一个截止时间
+     * @return 子任务的结果，顺序和expand返回的顺序一致
+     */
+    static <T, C> List<C> expandAndJoin(IDynamicTask<T, C> task, T param, ExecutorService executorService, long remainTime,
+                                        Map<String, TaskWrapper> forParamUseWrappers, RunContext runContext)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        long deadline = SystemClock.now() + remainTime;
+        List<TaskWrapper<?, C>> children = task.expand(param, forParamUseWrappers);
+        if (children == null || children.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        //1.按并行度提交子任务，在途的子任务达到并行度时，等待其中任意一个完成，等待到截止时间为止。
+        //通过runContext.join等待，FairExecutor在等待时帮忙执行排队的任务，不会因为占满线程而死锁
+        int parallelism = Math.max(1, Math.min(task.parallelism(), children.size()));
+        List<CompletableFuture<Void>> running = new ArrayList<>(parallelism);
+        CompletableFuture[] futures = new CompletableFuture[children.size()];
+        try {
+            for (int i = 0; i < children.size(); i++) {
+                TaskWrapper<?, C> child = children.get(i);
+                running.removeIf(CompletableFuture::isDone);
+                while (running.size() >= parallelism) {
+                    awaitAny(running, deadline, executorService, runContext);
+                    running.removeIf(CompletableFuture::isDone);
+                }
+                CompletableFuture<Void> future = runContext.submit(executorService, () -> child.task(executorService,
+                        deadline - SystemClock.now(), forParamUseWrappers, runContext), child::stopNow);
+                futures[i] = future;
+                running.add(future);
+            }
+
+            //2.等待全部子任务完成
+            long left = deadline - SystemClock.now();
+            if (left <= 0) {
+                throw new TimeoutException("dynamic task join timeout");
+            }
+            try {
+                runContext.join(BlockingKind.JOIN, executorService, CompletableFuture.allOf(futures), left, TimeUnit.MILLISECONDS);
+            } catch (ExecutionException e) {
+                //子任务在队列中到截止时间被丢弃
+                if (e.getCause() instanceof TimeoutException) {
+                    throw (TimeoutException) e.getCause();
+                }
+                throw e;
+            }
+        } catch (TimeoutException | InterruptedException e) {
+            //超时或中断，停止所有尚未完成的子任务
+            stopAll(children);
+            throw e;
+        }
+
+        //3.按顺序收集结果
+        List<C> results = new ArrayList<>(children.size());
+        for (TaskWrapper<?, C> child : children) {
+            TaskResult<C> childResult = child.getTaskResult();
+            if (childResult.getResultState() != ResultState.SUCCESS && !task.allowPartial()) {
+                Exception ex = childResult.getEx();
+                throw new ExecutionException("dynamic child task " + child.getId() + " " + childResult.getResultState(), ex);
+            }
+            results.add(childResult.getResult());
+        }
+        return results;
+    }
+
+    /**
+     * 等待running中任意一个子任务结束
+     */
+    private static void awaitAny(List<CompletableFuture<Void>> running, long deadline, ExecutorService executorService,
+                                 RunContext runContext) throws InterruptedException, TimeoutException {
+        long left = deadline - SystemClock.now();
+        if (left <= 0) {
+            throw new TimeoutException("dynamic task expand timeout");
+        }
+        try {
+            runContext.join(BlockingKind.JOIN, executorService, CompletableFuture.anyOf(running.toArray(new CompletableFuture[0])),
+                    left, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            //子任务在队列中到截止时间被丢弃；其他失败在收集结果时处理
+            if (e.getCause() instanceof TimeoutException) {
+                throw (TimeoutException) e.getCause();
+            }
+        }
+    }
+
+    private static void stopAll(List<? extends TaskWrapper<?, ?>> children) {
+        Set<TaskWrapper<?, ?>> visited = new HashSet<>();
+        Deque<TaskWrapper<?, ?>> stack = new ArrayDeque<>(children);
+        while (!stack.isEmpty()) {
+            TaskWrapper<?, ?> wrapper = stack.pop();
+            if (!visited.add(wrapper)) {
+                continue;
+            }
+            wrapper.stopNow();
+            if (wrapper.getNextWrappers() != null) {
+                stack.addAll(wrapper.getNextWrappers());
+            }
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package com.haenu.platform.async.wrapper;
+
+import com.haenu.platform.async.cache.SubgraphCache;
+import com.haenu.platform.async.executor.RunContext;
+import com.haenu.platform.async.executor.SystemClock;
+import com.haenu.platform.async.metrics.BlockingKind;
+import com.haenu.platform.async.task.DependWrapper;
+import com.haenu.platform.async.task.ResultState;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * 可缓存的子图：由一个起点和若干成员组成，结果只由起点的输入决定，如一组计算价格的节点。
+ * <p>
+ * 起点的依赖满足、即将执行时，用keyFunction从起点的param算出key查缓存：
+ * 命中时子图的所有成员立即完成，设置结果并回调，不执行action，也不提交任何线程池任务，随后照常调度子图的下游；
+ * 未命中时照常执行子图，所有成员都成功后把结果写入缓存；其他run正在执行同一个key时，在剩余时间内等待它的结果。
+ * 执行者以所在run的剩余时间作为租约，到期仍未结束时等待的run不再等它，各自执行。
+ * <p>
+ * 除起点外，成员只能依赖子图内的成员。成员通过id识别，必须显式设置稳定的id。
+ * 和TaskWrapper一样，Subgraph只用于一次run，每次run用新建的TaskWrapper重新构建。
+ */
+public class Subgraph {
+    private final SubgraphCache cache;
+    private final Function<Object, Object> keyFunction;
+    private final TaskWrapper<?, ?> root;
+    private final List<TaskWrapper<?, ?>> members;
+    /**
+     * 后继都在子图内的成员，命中后从它们往下只是传递完成状态，不需要单独占用线程
+     */
+    private final Set<TaskWrapper<?, ?>> internal;
+
+    /**
+     * 本次run作为执行者时的key，未命中时设置
+     */
+    private volatile Object loadingKey;
+    private volatile boolean hit;
+    /**
+     * 已经结束的成员数，每个成员结束时恰好计一次
+     */
+    private final AtomicInteger settled = new AtomicInteger();
+    private final AtomicInteger published = new AtomicInteger();
+
+    private Subgraph(Builder builder, List<TaskWrapper<?, ?>> members, Set<TaskWrapper<?, ?>> internal) {
+        this.cache = builder.cache;
+        this.keyFunction = builder.keyFunction;
+        this.root = builder.root;
+        this.members = members;
+        this.internal = internal;
+    }
+
+    public TaskWrapper<?, ?> getRoot() {
+        return root;
+    }
+
+    public List<TaskWrapper<?, ?>> getMembers() {
+        return members;
+    }
+
+    /**
+     * 本次run是否命中了缓存
+     */
+    public boolean isHit() {
+        return hit;
+    }
+
+    boolean isInternal(TaskWrapper<?, ?> wrapper) {
+        return internal.contains(wrapper);
+    }
+
+    /**
+     * 起点执行前查缓存，返回true表示起点已经完成（命中，或等待其他run时超时），不需要再执行
+     */
+    boolean tryComplete(ExecutorService executorService, long now, long remainTime,
+                        Map<String, TaskWrapper> forParamUseWrappers, RunContext runContext) {
+        Object key = keyFunction.apply(root.getParam());
+        if (key == null) {
+            return false;
+        }
+        long lease = Math.max(1, remainTime - (SystemClock.now() - now));
+        CompletableFuture<Map<String, Object>> future = cache.lookup(key, this, lease);
+        if (future == null) {
+            loadingKey = key;
+            //成员可能在设置loadingKey之前已经全部结束（如整组超时被停止），这里补一次检查
+            publish();
+            return false;
+        }
+        Map<String, Object> values;
+        if (future.isDone()) {
+            values = future.getNow(null);
+        } else {
+            long left = Math.max(1, remainTime - (SystemClock.now() - now));
+            try {
+                //执行者的租约先到期时只等到租约到期，放弃它后自己执行
+                long leaseLeft = cache.leaseLeft(key);
+                if (leaseLeft < left) {
+                    try {
+                        runContext.join(BlockingKind.CACHE, executorService, future, Math.max(1, leaseLeft), TimeUnit.MILLISECONDS);
+                    } catch (TimeoutException e) {
+                        cache.expire(key);
+                    }
+                } else {
+                    runContext.join(BlockingKind.CACHE, executorService, future, left, TimeUnit.MILLISECONDS);
+                }
+                values = future.getNow(null);
+            } catch (TimeoutException e) {
+                root.stopNow();
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                root.stopNow();
+                return true;
+            } catch (ExecutionException e) {
+                values = null;
+            }
+        }
+        //执行者失败了，或者缓存的结果和子图的成员对不上，自己执行
+        if (values == null || !values.keySet().containsAll(ids())) {
+            return false;
+        }
+        hit = true;
+        for (TaskWrapper<?, ?> member : members) {
+            member.completeCached(values.get(member.getId()), forParamUseWrappers, runContext);
+        }
+        return true;
+    }
+
+    /**
+     * 成员结束（成功、失败、跳过、被剪掉、命中）时调用
+     */
+    void settle() {
+        settled.incrementAndGet();
+        publish();
+    }
+
+    /**
+     * 执行者的所有成员都结束后，全部成功则写入缓存，否则放弃这次执行，唤醒等待的run
+     */
+    private void publish() {
+        Object key = loadingKey;
+        if (key == null || settled.get() < members.size() || !published.compareAndSet(0, 1)) {
+            return;
+        }
+        Map<String, Object> values = new HashMap<>();
+        for (TaskWrapper<?, ?> member : members) {
+            if (ResultState.SUCCESS != member.getTaskResult().getResultState()) {
+                cache.fail(key, this);
+                return;
+            }
+            values.put(member.getId(), member.getTaskResult().getResult());
+        }
+        cache.complete(key, this, values);
+    }
+
+    private List<String> ids() {
+        List<String> ids = new ArrayList<>(members.size());
+        for (TaskWrapper<?, ?> member : members) {
+            ids.add(member.getId());
+        }
+        return ids;
+    }
+
+    @Override
+    public String toString() {
+        return "Subgraph{" +
+                "root=" + root.getId() +
+                ", members=" + ids() +
+                ", hit=" + hit +
+                '}';
+    }
+
+    public static class Builder {
+        private SubgraphCache cache;
+        private Function<Object, Object> keyFunction = param -> param;
+        private TaskWrapper<?, ?> root;
+        private final List<TaskWrapper<?, ?>> members = new ArrayList<>();
+
+        public Builder cache(SubgraphCache cache) {
+            this.cache = cache;
+            return this;
+        }
+
+        /**
+         * 从起点的param计算缓存key，返回null时本次不走缓存。默认直接用param作为key，param需要实现equals和hashCode
+         */
+        public Builder key(Function<Object, Object> keyFunction) {
+            this.keyFunction = keyFunction;
+            return this;
+        }
+
+        /**
+         * 子图的起点，它的param是整个子图的输入，可以依赖子图外的任务
+         */
+        public Builder root(TaskWrapper<?, ?> root) {
+            this.root = root;
+            return this;
+        }
+
+        /**
+         * 子图的其他成员，起点可以不重复添加
+         */
+        public Builder members(TaskWrapper<?, ?>... members) {
+            if (members != null) {
+                this.members.addAll(Arrays.asList(members));
+            }
+            return this;
+        }
+
+        /**
+         * 校验子图并绑定到各个成员上
+         */
+        public Subgraph build() {
+            if (cache == null || root == null || keyFunction == null) {
+                throw new IllegalArgumentException("cache, root and key can not be null");
+            }
+            Set<TaskWrapper<?, ?>> memberSet = Collections.newSetFromMap(new IdentityHashMap<>());
+            List<TaskWrapper<?, ?>> memberList = new ArrayList<>();
+            memberSet.add(root);
+            memberList.add(root);
+            for (TaskWrapper<?, ?> member : members) {
+                if (member != null && memberSet.add(member)) {
+                    memberList.add(member);
+                }
+            }
+            Set<TaskWrapper<?, ?>> internal = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (TaskWrapper<?, ?> member : memberList) {
+                if (member.isAnonymous()) {
+                    throw new IllegalArgumentException("subgraph member needs an explicit id");
+                }
+                if (member.getSubgraph() != null) {
+                    throw new IllegalArgumentException("task " + member.getId() + " already belongs to a subgraph");
+                }
+                if (member != root && member.getDependWrappers() != null) {
+                    for (DependWrapper depend : member.getDependWrappers()) {
+                        if (!memberSet.contains(depend.getDependWrapper())) {
+                            throw new IllegalArgumentException("task " + member.getId() + " depends on "
+                                    + depend.getDependWrapper().getId() + " outside the subgraph");
+                        }
+                    }
+                }
+                boolean allInside = true;
+                if (member.getNextWrappers() != null) {
+                    for (TaskWrapper<?, ?> next : member.getNextWrappers()) {
+                        allInside &= memberSet.contains(next);
+                    }
+                }
+                if (allInside) {
+                    internal.add(member);
+                }
+            }
+            Subgraph subgraph = new Subgraph(this, Collections.unmodifiableList(memberList), internal);
+            for (TaskWrapper<?, ?> member : memberList) {
+                member.setSubgraph(subgraph);
+            }
+            return subgraph;
+        }
+    }
+}
@@ -1,19 +1,40 @@
 package com.haenu.platform.async.wrapper;
 
+import com.haenu.platform.async.callback.CallbackDispatcher;
+import com.haenu.platform.async.callback.CallbackMode;
 import com.haenu.platform.async.callback.ICallback;
+import com.haenu.platform.async.callback.IDynamicTask;
 import com.haenu.platform.async.callback.ITask;
 import com.haenu.platform.async.callback.defback.DefaultCallback;
+import com.haenu.platform.async.checkpoint.CheckpointStore;
+import com.haenu.platform.async.exception.LimitExceededException;
 import com.haenu.platform.async.exception.SkippedException;
+import com.haenu.platform.async.executor.ExecutorClass;
+import com.haenu.platform.async.executor.ExecutorRegistry;
+import com.haenu.platform.async.executor.RunContext;
 import com.haenu.platform.async.executor.SystemClock;
+import com.haenu.platform.async.limit.AdaptiveLimiter;
+import com.haenu.platform.async.limit.ConcurrencyLimiters;
+import com.haenu.platform.async.metrics.BlockingKind;
+import com.haenu.platform.async.metrics.EngineCounter;
+import com.haenu.platform.async.metrics.TaskProfile;
+import com.haenu.platform.async.metrics.TaskProfiles;
+import com.haenu.platform.async.metrics.TemplateStats;
+import com.haenu.platform.async.remote.RemoteExecutor;
+import com.haenu.platform.async.remote.RemoteTask;
 import com.haenu.platform.async.task.DependWrapper;
+import com.haenu.platform.async.task.JoinPolicy;
 import com.haenu.platform.async.task.ResultState;
 import com.haenu.platform.async.task.TaskResult;
+import com.haenu.platform.async.trace.ExecutionTracer;
+import com.haenu.platform.async.trace.TraceKind;
 
 import java.util.*;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.function.Predicate;
 
 /**
  * @author haenu
@@ -54,6 +75,13 @@ public class TaskWrapper<T, V> {
      */
     private List<DependWrapper> dependWrappers;
 
+    /**
+     * 串行链上融合执行的后继：自己只有这一个next，它也只依赖自己，且边上没有条件、没有汇合策略。
+     * 构建时随依赖关系的变化维护。融合的后继不再递归调用task()，由链头的task()循环依次执行，
+     * 长链的调用栈深度不再随链长增长，也不再在每一跳重复向下游遍历检查。
+     */
+    private TaskWrapper<?, ?> chainNext;
+
     /**
      * 用来标记Task的运行状态，框架内部运行时使用，不对外暴露。这个字段可以保证任务不被重复执行。
      * 标记该事件是否已经被处理过了，譬如已经超时返回false了，后续rpc又收到返回值了，则不再二次回调
@@ -66,6 +94,99 @@ public class TaskWrapper<T, V> {
      */
     private Map<String, TaskWrapper> forParamUseWrappers;
 
+    /**
+     * 所属run的上下文，和forParamUseWrappers一样，在task()时由上游传入
+     */
+    private RunContext runContext;
+
+    /**
+     * id是否是Builder随机生成的，随机id不参与节点级别的统计
+     */
+    private boolean anonymous;
+
+    /**
+     * task()被调用的次数，用于统计多依赖唤醒带来的重复进入，只在开启统计时累加
+     */
+    private volatile int entries;
+
+    private static final AtomicIntegerFieldUpdater<TaskWrapper> ENTRIES =
+            AtomicIntegerFieldUpdater.newUpdater(TaskWrapper.class, "entries");
+
+    /**
+     * 是否因为条件边不激活而被剪掉。被剪掉的任务不执行，也不会再被调度；剪掉时回调result(false)，结果带SkippedException
+     */
+    private volatile boolean pruned;
+
+    /**
+     * 已被剪掉的入边数量，全部入边都被剪掉时，自己也被剪掉
+     */
+    private volatile int prunedDepends;
+
+    private static final AtomicIntegerFieldUpdater<TaskWrapper> PRUNED_DEPENDS =
+            AtomicIntegerFieldUpdater.newUpdater(TaskWrapper.class, "prunedDepends");
+
+    /**
+     * 多依赖的汇合策略，为null时按must字段汇合
+     */
+    private JoinPolicy joinPolicy;
+
+    /**
+     * 正在执行action的线程，只在action执行期间不为null，用于取消时中断。
+     * 取消时先换成INTERRUPTING，中断送达后再换成INTERRUPTED，执行线程据此清除中断标记
+     */
+    private volatile Object runner;
+
+    /**
+     * 本次run中真正执行了action的线程和开始时间，task()返回时据此记录分支耗时
+     */
+    private Thread firingThread;
+    private long fireNanos;
+    /**
+     * 画像的key，第一次使用时按本次run的模板生成
+     */
+    private String profileKey;
+
+    /**
+     * 分支耗时的样本数达到该值后，才按画像决定多个后继任务的执行方式
+     */
+    private static final int FANOUT_MIN_SAMPLES = 5;
+    /**
+     * 分支耗时低于该值的后继任务认为是短分支，不值得单独占用一次线程切换
+     */
+    private static final long SHORT_BRANCH_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    /**
+     * 多个短分支合并为一个异步任务时，每组的累计耗时上限
+     */
+    private static final long BRANCH_GROUP_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+
+    private static final Object INTERRUPTING = new Object();
+    private static final Object INTERRUPTED = new Object();
+
+    private static final AtomicReferenceFieldUpdater<TaskWrapper, Object> RUNNER =
+            AtomicReferenceFieldUpdater.newUpdater(TaskWrapper.class, Object.class, "runner");
+
+    /**
+     * action专用的线程池，三者按顺序取第一个设置了的：指定的线程池、注册的线程池名、线程池类别。
+     * 都没有设置时，action在编排线程上执行；设置了时，节点交给该线程池执行action，编排线程不等待，
+     * action结束后后继回到编排线程池调度。
+     */
+    private ExecutorService actionExecutor;
+    private String actionExecutorName;
+    private ExecutorClass executorClass;
+
+    /**
+     * AUTO类别在积累到这么多次执行样本前，先在编排线程上执行并采样
+     */
+    private static final int AUTO_MIN_SAMPLES = 20;
+    /**
+     * AUTO类别中，平均耗时低于该值的任务直接在编排线程上执行
+     */
+    private static final long AUTO_INLINE_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    /**
+     * AUTO类别中，CPU占比低于该值的任务认为是IO型
+     */
+    private static final double AUTO_IO_CPU_RATIO = 0.5;
+
     /**
      * 存放任务结果，action中的返回值会赋值给它，在result的回调中，可以拿到这个结果。
      * TaskWrapper的运行结果，其中包含了：结果状态标记resultState、Task返回值result、异常信息ex
@@ -84,6 +205,22 @@ public class TaskWrapper<T, V> {
      */
     private volatile boolean needCheckNextWrapperResult = true;
 
+    /**
+     * 资源key，如该任务调用的下游后端。不为null时，action的并发受该key对应的AdaptiveLimiter限制，
+     * 超出限制且排队失败时，任务快速失败，结果为defaultValue()。
+     */
+    private String resourceKey;
+
+    /**
+     * 回调的分发方式，默认在worker线程上同步回调
+     */
+    private CallbackMode callbackMode = CallbackMode.SYNC;
+
+    /**
+     * 所属的可缓存子图，不属于任何子图时为null
+     */
+    private Subgraph subgraph;
+
     TaskWrapper(String id, ITask<T, V> task, T param, ICallback<T, V> callback) {
         if (task == null) {
             throw new NullPointerException("async.task is null");
@@ -107,6 +244,14 @@ public class TaskWrapper<T, V> {
         this.param = param;
     }
 
+    T getParam() {
+        return param;
+    }
+
+    List<DependWrapper> getDependWrappers() {
+        return dependWrappers;
+    }
+
     boolean checkIsNullResult() {
         return ResultState.DEFAULT == taskResult.getResultState();
     }
@@ -128,6 +273,56 @@ public class TaskWrapper<T, V> {
         this.needCheckNextWrapperResult = needCheckNextWrapperResult;
     }
 
+    void setResourceKey(String resourceKey) {
+        this.resourceKey = resourceKey;
+    }
+
+    public String getResourceKey() {
+        return resourceKey;
+    }
+
+    void setAnonymous(boolean anonymous) {
+        this.anonymous = anonymous;
+    }
+
+    boolean isAnonymous() {
+        return anonymous;
+    }
+
+    void setSubgraph(Subgraph subgraph) {
+        this.subgraph = subgraph;
+    }
+
+    public Subgraph getSubgraph() {
+        return subgraph;
+    }
+
+    /**
+     * 所属run的上下文，开始执行后才有值，可以读取本次run的action耗时和引擎内部的阻塞时间
+     */
+    public RunContext getRunContext() {
+        return runContext;
+    }
+
+    void setActionExecutor(ExecutorService actionExecutor, String actionExecutorName, ExecutorClass executorClass) {
+        this.actionExecutor = actionExecutor;
+        this.actionExecutorName = actionExecutorName;
+        this.executorClass = executorClass;
+    }
+
+    void setJoinPolicy(JoinPolicy joinPolicy) {
+        this.joinPolicy = joinPolicy;
+        if (dependWrappers != null) {
+            for (DependWrapper wrapper : dependWrappers) {
+                wrapper.getDependWrapper().updateChain();
+            }
+        }
+    }
+
+    void setCallbackMode(CallbackMode callbackMode) {
+        this.callbackMode = callbackMode == null ? CallbackMode.SYNC : callbackMode;
+    }
+
     protected void addDepend(TaskWrapper<?, ?> taskWrapper, boolean must) {
         addDepend(new DependWrapper(taskWrapper, must));
     }
@@ -152,6 +347,10 @@ public class TaskWrapper<T, V> {
             }
         }
         dependWrappers.add(dependWrapper);
+        //依赖数变化会影响所有上游能否和自己融合
+        for (DependWrapper wrapper : dependWrappers) {
+            wrapper.getDependWrapper().updateChain();
+        }
     }
 
     private void addNextWrappers(List<TaskWrapper<?, ?>> wrappers) {
@@ -174,10 +373,32 @@ public class TaskWrapper<T, V> {
             }
         }
         nextWrappers.add(taskWrapper);
+        updateChain();
+    }
+
+    /**
+     * 重新判断自己和唯一的next能否融合执行
+     */
+    private void updateChain() {
+        TaskWrapper<?, ?> candidate = null;
+        if (nextWrappers != null && nextWrappers.size() == 1) {
+            TaskWrapper<?, ?> next = nextWrappers.get(0);
+            if (next.joinPolicy == null && next.dependWrappers != null && next.dependWrappers.size() == 1) {
+                DependWrapper edge = next.dependWrappers.get(0);
+                if (edge.getDependWrapper() == this && edge.getCondition() == null) {
+                    candidate = next;
+                }
+            }
+        }
+        chainNext = candidate;
     }
 
     public void task(ExecutorService executorService, long remainTime, Map<String, TaskWrapper> forParamUseWrappers) {
-        task(executorService, null, remainTime, forParamUseWrappers);
+        task(executorService, remainTime, forParamUseWrappers, new RunContext());
+    }
+
+    public void task(ExecutorService executorService, long remainTime, Map<String, TaskWrapper> forParamUseWrappers, RunContext runContext) {
+        task(executorService, null, remainTime, forParamUseWrappers, runContext);
     }
 
     /**
@@ -186,57 +407,125 @@ public class TaskWrapper<T, V> {
      * fromWrapper：本次task是由哪个上游TaskWrapper发起的。
      * remainTime：剩余的时间，用来监控任务超时的。随着一组任务的执行，这个值从全局设置的timeout时间逐渐减少，当remainTime<=0时，任务就超时了。
      * forParamUseWrappers：缓存一组任务所有的TaskWrapper。key：id，value：TaskWrapper引用。
+     * runContext：本次run的上下文，一组任务共享同一个。
      * 流程图: https://img.haenu.cn/img/20241119152305.png
      * <p>
      * 1.缓存所有TaskWrapper
      * 2.任务超时处理
-     * 3.Check是否执行过了，避免重复处理
+     * 3.Check是否执行过了，避免重复处理；设置了检查点存储时，上次已完成的任务直接恢复结果
      * 4.Check 后继next是否已经开始执行了，避免多余的处理
      * 5.没有依赖Wrapper情况处理，则当前任务就是起始节点。
      * 6.有依赖Wrapper情况处理，又区分只有1个依赖任务，或者有多个依赖任务的处理。
      */
-    private void task(ExecutorService executorService, TaskWrapper fromWrapper, long remainTime, Map<String, TaskWrapper> forParamUseWrappers) {
+    private void task(ExecutorService executorService, TaskWrapper fromWrapper, long remainTime, Map<String, TaskWrapper> forParamUseWrappers, RunContext runContext) {
+        TaskWrapper<?, ?> current = this;
+        try {
+            //串行链融合执行：beginNext把融合的后继交回这里，在同一个栈帧中依次执行，
+            //链上节点的下游检查只需要从链尾开始
+            TaskWrapper<?, ?> from = fromWrapper;
+            TaskWrapper<?, ?> tail = null;
+            long now = SystemClock.now();
+            long remain = remainTime;
+            while (true) {
+                if (tail == null && from != null && from.chainNext == current) {
+                    tail = current.chainTail();
+                }
+                TaskWrapper<?, ?> next = current.doTask(executorService, from, now, remain, forParamUseWrappers, runContext, tail == null ? current : tail);
+                if (next == null) {
+                    break;
+                }
+                long end = SystemClock.now();
+                remain -= end - now;
+                now = end;
+                from = current;
+                current = next;
+            }
+        } finally {
+            //本次调用执行了action的节点，记录分支耗时（包含在当前线程执行的下游），供上游的beginNext决定执行方式
+            long end = System.nanoTime();
+            for (TaskWrapper<?, ?> wrapper = this; wrapper != null; wrapper = wrapper == current ? null : wrapper.chainNext) {
+                wrapper.recordBranch(end);
+            }
+        }
+    }
+
+    private void recordBranch(long end) {
+        if (firingThread == Thread.currentThread()) {
+            firingThread = null;
+            TaskProfile profile = TaskProfiles.get(profileKey(runContext));
+            if (profile != null) {
+                profile.recordBranch(end - fireNanos);
+            }
+        }
+    }
+
+    /**
+     * 从自己开始的融合链的最后一个节点
+     */
+    private TaskWrapper<?, ?> chainTail() {
+        TaskWrapper<?, ?> tail = this;
+        while (tail.chainNext != null) {
+            tail = tail.chainNext;
+        }
+        return tail;
+    }
+
+    /**
+     * 执行自己，返回需要在当前线程继续执行的融合后继，没有时返回null
+     *
+     * @param checkFrom 从哪个节点开始检查下游是否已经开始执行。融合链上的节点为链尾，链上的其他节点只能由本链执行，不需要检查
+     */
+    private TaskWrapper<?, ?> doTask(ExecutorService executorService, TaskWrapper fromWrapper, long now, long remainTime, Map<String, TaskWrapper> forParamUseWrappers, RunContext runContext, TaskWrapper<?, ?> checkFrom) {
+        //已被剪掉的任务在剪枝时已经登记、回调，它的下游也已一并处理，直接返回
+        if (pruned) {
+            return null;
+        }
         //引用指向
         this.forParamUseWrappers = forParamUseWrappers;
+        this.runContext = runContext;
 
         //1.收集所有的wrapper，key是id，以便用于在Task工作单元中，获取任意Task的执行结果。
         forParamUseWrappers.put(id, this);
 
-        //时钟类获取当前时间
-        long now = SystemClock.now();
+        //再次进入时记录进入时间，用于统计多余唤醒的耗时
+        long wakeupNanos = countEntry();
 
         //2.总的已经超时了，就快速失败，进行下一个
         if (remainTime <= 0) {
             fastFail(INIT, null);
-            beginNext(executorService, now, remainTime);
-            return;
+            return beginNext(executorService, now, remainTime);
         }
 
         //3.如果自己已经执行过了，继续处理下一个任务
         //可能有多个依赖，其中的一个依赖已经执行完了，并且自己也已开始执行或执行完毕。当另一个依赖执行完毕，又进来该方法时，就不重复处理了
         if (getState() == FINISH || getState() == ERROR) {
-            beginNext(executorService, now, remainTime);
-            return;
+            countDuplicateWakeup(wakeupNanos);
+            return beginNext(executorService, now, remainTime);
+        }
+        if (restoreCheckpoint()) {
+            return beginNext(executorService, now, remainTime);
         }
 
         //4.如果在执行前需要校验nextWrapper的状态，仅在nextWrappers <= 1时有效
         if (needCheckNextWrapperResult) {
             //如果自己的next链上有已经出结果或已经开始执行的任务了，自己就不用继续了，SKIP跳过任务，不执行。
-            if (!checkNextWrapperResult()) {
+            if (!checkFrom.checkNextWrapperResult()) {
                 //FastFail SKIP，new SkippedException()
-                fastFail(INIT, new SkippedException());
-                beginNext(executorService, now, remainTime);
-                return;
+                if (fastFail(INIT, new SkippedException())) {
+                    count(EngineCounter.SKIP);
+                }
+                return beginNext(executorService, now, remainTime);
             }
         }
 
         //5.如果没有任何依赖，说明自己就是第一批要执行的
         if (dependWrappers == null || dependWrappers.size() == 0) {
-            //5.1 执行当前任务
-            fire();
+            //5.1 执行当前任务，交给隔离线程池时由它执行完后调度后继
+            if (fire(executorService, now, remainTime)) {
+                return null;
+            }
             //5.2 开始后继任务
-            beginNext(executorService, now, remainTime);
-            return;
+            return beginNext(executorService, now, remainTime);
         }
 
         /*如果有前方依赖，存在两种情况
@@ -252,18 +541,22 @@ public class TaskWrapper<T, V> {
          */
 
         //6.处理前置有依赖的情况
+        //设置了汇合策略，按k-of-n汇合
+        if (joinPolicy != null) {
+            return doQuorumJobs(executorService, fromWrapper, now, remainTime, wakeupNanos, runContext.measureStart());
+        }
         //6.1只有一个依赖
         if (dependWrappers.size() == 1) {
             //6-1.1：依赖任务正常结束了，就执行自己
-            doDependsOneJob(fromWrapper);
+            if (doDependsOneJob(executorService, fromWrapper, now, remainTime)) {
+                return null;
+            }
             //6-1.2：开始后继任务
-            beginNext(executorService, now, remainTime);
-        } else {
-            //有多个依赖时
-            //6-2.1：多个依赖任务的判断处理
-            doDependsJobs(executorService, dependWrappers, fromWrapper, now, remainTime);
+            return beginNext(executorService, now, remainTime);
         }
-
+        //有多个依赖时
+        //6-2.1：多个依赖任务的判断处理，融合后继在释放锁之后再执行
+        return doDependsJobs(executorService, dependWrappers, fromWrapper, now, remainTime, wakeupNanos, runContext.measureStart());
     }
 
     /**
@@ -271,14 +564,23 @@ public class TaskWrapper<T, V> {
      * 如果没有返回true，如果有返回false
      */
     private boolean checkNextWrapperResult() {
-        //如果自己就是最后一个，或者后面有并行的多个，就返回true
-        if (nextWrappers == null || nextWrappers.size() != 1) {
-            return getState() == INIT;
+        TaskWrapper<?, ?> wrapper = this;
+        while (true) {
+            //如果自己就是最后一个，或者后面有并行的多个，就返回true
+            if (wrapper.nextWrappers == null || wrapper.nextWrappers.size() != 1) {
+                return wrapper.getState() == INIT;
+            }
+            TaskWrapper<?, ?> nextWrapper = wrapper.nextWrappers.get(0);
+            //被剪掉的next不会执行，不算作已开始
+            if (nextWrapper.pruned) {
+                return wrapper.getState() == INIT;
+            }
+            if (nextWrapper.getState() != INIT) {
+                return false;
+            }
+            //继续校验next的next的状态，长链上用循环代替递归
+            wrapper = nextWrapper;
         }
-        TaskWrapper nextWrapper = nextWrappers.get(0);
-        boolean state = nextWrapper.getState() == INIT;
-        //继续校验自己的next的状态
-        return state && nextWrapper.checkNextWrapperResult();
     }
 
     /**
@@ -300,11 +602,14 @@ public class TaskWrapper<T, V> {
      * 如果当前任务已经被某个依赖任务执行完毕了，当下一个依赖任务执行完后，还会唤醒当前任务，此时需要注意不能重复处理。task()中的第3点保证了。
      * <p>
      * 2.使用 synchronized 修饰了 doDependsJobs() 方法，保证了避免多线程中的多个依赖任务，使当前任务不能正确执行，或者重复执行。
+     * 等待进入锁的时间从monitorNanos开始计，计入BlockingKind.MONITOR。
      */
-    private synchronized void doDependsJobs(ExecutorService executorService, List<DependWrapper> dependWrappers, TaskWrapper fromWrapper, long now, long remainTime) {
+    private synchronized TaskWrapper<?, ?> doDependsJobs(ExecutorService executorService, List<DependWrapper> dependWrappers, TaskWrapper fromWrapper, long now, long remainTime, long wakeupNanos, long monitorNanos) {
+        runContext.recordBlocked(BlockingKind.MONITOR, monitorNanos);
         //如果当前任务已经完成了，依赖的其他任务拿到锁再进来时，不需要执行下面的逻辑了。
         if (!checkIsNullResult()) {
-            return;
+            countDuplicateWakeup(wakeupNanos);
+            return null;
         }
         //如果当前依赖是非必须的，跳过不处理
         boolean nowDependIsMust = false;
@@ -326,16 +631,16 @@ public class TaskWrapper<T, V> {
                 fastFail(INIT, null);
             }
             //正常执行情况
-            else {
-                fire();
+            else if (fire(executorService, now, remainTime)) {
+                return null;
             }
-            beginNext(executorService, now, remainTime);
-            return;
+            return beginNext(executorService, now, remainTime);
         }
 
         //2.如果当前依赖是非必须的，跳过不处理（非must情况）
         if (!nowDependIsMust) {
-            return;
+            countReentryNanos(wakeupNanos);
+            return null;
         }
 
 
@@ -366,16 +671,87 @@ public class TaskWrapper<T, V> {
         //3.只要有失败、异常的
         if (hasError) {
             fastFail(INIT, null);
-            beginNext(executorService, now, remainTime);
-            return;
+            return beginNext(executorService, now, remainTime);
         }
 
         //如果上游都没有失败，分为两种情况，一种是都finish了，一种是有的在tasking
         //4.依赖任务都完成了，可以执行自己了。
         if (!existNoFinish) {
-            fire();
-            beginNext(executorService, now, remainTime);
+            if (fire(executorService, now, remainTime)) {
+                return null;
+            }
+            return beginNext(executorService, now, remainTime);
         }
+        countReentryNanos(wakeupNanos);
+        return null;
+    }
+
+    /**
+     * 按JoinPolicy汇合：成功的依赖达到required个时执行自己，并取消其余只被自己等待的未完成依赖；
+     * 失败（超时、异常、被剪掉、被取消）的依赖多到凑不够required个时，快速失败。
+     * 和doDependsJobs一样用synchronized保证多个依赖同时唤醒时只处理一次。
+     */
+    private synchronized TaskWrapper<?, ?> doQuorumJobs(ExecutorService executorService, TaskWrapper fromWrapper, long now, long remainTime, long wakeupNanos, long monitorNanos) {
+        runContext.recordBlocked(BlockingKind.MONITOR, monitorNanos);
+        if (!checkIsNullResult()) {
+            countDuplicateWakeup(wakeupNanos);
+            return null;
+        }
+        int success = 0;
+        int failed = 0;
+        TaskWrapper failedWrapper = null;
+        for (DependWrapper dependWrapper : dependWrappers) {
+            TaskWrapper<?, ?> wrapper = dependWrapper.getDependWrapper();
+            int dependState = wrapper.getState();
+            if (dependState == FINISH && ResultState.SUCCESS == wrapper.getTaskResult().getResultState()) {
+                success++;
+            } else if (dependState == FINISH || dependState == ERROR) {
+                failed++;
+                failedWrapper = wrapper;
+            }
+        }
+
+        //1.凑够了，先取消其余只被自己等待的依赖，释放它们占用的线程，再执行自己
+        if (success >= joinPolicy.getRequired()) {
+            for (DependWrapper dependWrapper : dependWrappers) {
+                TaskWrapper<?, ?> wrapper = dependWrapper.getDependWrapper();
+                if (isOnlyWaiter(wrapper)) {
+                    wrapper.cancel();
+                }
+            }
+            if (fire(executorService, now, remainTime)) {
+                return null;
+            }
+            return beginNext(executorService, now, remainTime);
+        }
+
+        //2.不可能再凑够了，快速失败
+        if (failed > dependWrappers.size() - joinPolicy.getRequired()) {
+            if (ResultState.TIMEOUT == failedWrapper.getTaskResult().getResultState()) {
+                taskResult = defaultResult();
+            } else {
+                taskResult = defaultExResult(failedWrapper.getTaskResult().getEx());
+            }
+            fastFail(INIT, null);
+            return beginNext(executorService, now, remainTime);
+        }
+        countReentryNanos(wakeupNanos);
+        return null;
+    }
+
+    /**
+     * 自己是否是depend唯一尚未结束的后继。depend还要喂给其他未结束的后继时不能取消，否则它们会跟着快速失败
+     */
+    private boolean isOnlyWaiter(TaskWrapper<?, ?> depend) {
+        if (depend.nextWrappers == null) {
+            return true;
+        }
+        for (TaskWrapper<?, ?> next : depend.nextWrappers) {
+            if (next != this && !next.pruned && (next.getState() == INIT || next.getState() == WORKING)) {
+                return false;
+            }
+        }
+        return true;
     }
 
     /**
@@ -388,8 +764,10 @@ public class TaskWrapper<T, V> {
      * 1.判断依赖任务是否超时，如果超时，则自己也超时。
      * 2.判断依赖任务是否异常，如果异常，则自己也异常。
      * 3.依赖任务正常完成了，则自己正常执行。
+     *
+     * @return 自己是否已交给隔离线程池执行，是时后继由隔离线程池执行完后调度
      */
-    private void doDependsOneJob(TaskWrapper dependWrapper) {
+    private boolean doDependsOneJob(ExecutorService executorService, TaskWrapper dependWrapper, long now, long remainTime) {
         //1.依赖超时？
         if (ResultState.TIMEOUT == dependWrapper.getTaskResult().getResultState()) {
             taskResult = defaultResult();
@@ -403,8 +781,9 @@ public class TaskWrapper<T, V> {
         //3.依赖正常
         else {
             //前面任务正常完毕了，该自己了
-            fire();
+            return fire(executorService, now, remainTime);
         }
+        return false;
     }
 
     /**
@@ -412,9 +791,14 @@ public class TaskWrapper<T, V> {
      * 流程图: https://img.haenu.cn/img/20241119161354.png
      * <p>
      * 1.判断当前任务是否有next后续任务，如果没有任务了，就是最后一个任务，就结束了。
-     * 2.next后续只有1个任务：判断next任务数量，如果数量只有1个，使用当前任务的线程执行next任务（调用task()方法）
-     * 3.next后续有多个任务：判断next任务数量，如果有多个，有几个任务就新起几个线程执行（调用task()方法）
-     * 4.阻塞get获取结果。（针对处理next任务有多个的场景）
+     * 按条件边过滤next，不激活的边被剪掉，剩下的next继续下面的处理。
+     * 2.next后续只有1个任务：判断next任务数量，如果数量只有1个，使用当前任务的线程执行next任务（调用task()方法）；
+     * next是融合后继时不调用task()，返回给链头的task()循环执行
+     * 3.next后续有多个任务：最长的分支留在当前线程执行（调用task()方法），其余的长分支各自提交到线程池异步执行，
+     * 短分支按耗时合并成组，每组提交一次、在同一个线程上依次执行；所有分支都短时全部在当前线程依次执行。
+     * 分支长短按RunOptions.adaptiveFanout开启后积累的画像估算，未开启或样本不足时都按长分支处理，
+     * 即第0个分支在当前线程执行，其余每个分支各提交一次
+     * 4.当前线程上的分支执行完后，等待异步提交的分支结束。（针对处理next任务有多个的场景）
      * <p>
      * <p>
      * 注意点:
@@ -423,46 +807,299 @@ public class TaskWrapper<T, V> {
      * 整组任务的超时时间是1000ms，A执行消耗了200ms，到B执行时，B的可用时间 = 1000-200 = 800ms，这个时间是逐渐减小的。
      * 如果这个值小于0了，说明已经超过了整组任务设定的超时时间，任务就 FastFail() 了。
      * <p>
-     * 2.beginNext() 中第4点针对后续有多个任务的处理，这里并没有使用带有超时的get方法。单个任务是没有超时监控的，
-     * 如果要监控每个任务的超时，就需要一个额外的线程，有几个任务就需要几个线程，高并发场景下，会造成线程 ”爆炸“。全组任务超时，是在Async执行器中控制的。
+     * 2.beginNext() 中第4点等待异步分支时，并没有使用带有超时的get方法。单个任务是没有超时监控的，
+     * 如果要监控每个任务的超时，就需要为每个分支额外占用线程，高并发场景下，会造成线程 ”爆炸“。全组任务超时，是在Async执行器中控制的。
+     * 等待期间线程池为FairExecutor时，当前线程会帮忙执行队列中的任务，不会空等。
      */
-    private void beginNext(ExecutorService executorService, long now, long remainTime) {
+    private TaskWrapper<?, ?> beginNext(ExecutorService executorService, long now, long remainTime) {
+        //1.后续没有任务了；自己还在其他线程上执行时（重复唤醒），由执行它的线程结束后再调度后继
+        if (nextWrappers == null || getState() == WORKING) {
+            return null;
+        }
+        //2.融合后继交给task()循环执行，剩余时间由循环扣减
+        if (chainNext != null && !chainNext.pruned) {
+            return chainNext;
+        }
+        List<TaskWrapper<?, ?>> nextWrappers = activeNextWrappers();
+        if (nextWrappers.isEmpty()) {
+            return null;
+        }
         //花费的时间
         long costTime = SystemClock.now() - now;
 
-        //1.后续没有任务了
-        if (nextWrappers == null) {
-            return;
+        //后续只有1个任务，使用当前任务的线程执行next任务
+        if (nextWrappers.size() == 1) {
+            nextWrappers.get(0).task(executorService, TaskWrapper.this, remainTime - costTime, forParamUseWrappers, runContext);
+            return null;
         }
 
-        //2.后续只有1个任务，使用当前任务的线程执行next任务
-        if (nextWrappers.size() == 1) {
-            nextWrappers.get(0).task(executorService, TaskWrapper.this, remainTime - costTime, forParamUseWrappers);
-            return;
+        //3.后续有多个任务，按各分支的历史耗时决定执行方式：
+        //最长的分支留在当前线程执行；其余长分支各自异步执行；短分支合并成组异步执行，每组只占用一次线程切换；
+        //所有分支都很短时，全部在当前线程依次执行。没有足够的历史数据时按长分支处理。
+        int size = nextWrappers.size();
+        long[] estimates = new long[size];
+        int longest = 0;
+        for (int i = 0; i < size; i++) {
+            estimates[i] = nextWrappers.get(i).branchEstimate(runContext);
+            if (estimates[i] > estimates[longest]) {
+                longest = i;
+            }
+        }
+        long remain = remainTime - costTime;
+        if (estimates[longest] < SHORT_BRANCH_NANOS) {
+            for (TaskWrapper<?, ?> next : nextWrappers) {
+                next.task(executorService, TaskWrapper.this, remain, forParamUseWrappers, runContext);
+            }
+            return null;
         }
+        List<CompletableFuture<Void>> futures = new ArrayList<>(size - 1);
+        List<TaskWrapper<?, ?>> group = null;
+        long groupNanos = 0;
+        for (int i = 0; i < size; i++) {
+            if (i == longest) {
+                continue;
+            }
+            if (estimates[i] >= SHORT_BRANCH_NANOS) {
+                futures.add(dispatchBranches(executorService, Collections.singletonList(nextWrappers.get(i)), remain));
+                continue;
+            }
+            if (group == null) {
+                group = new ArrayList<>();
+            }
+            group.add(nextWrappers.get(i));
+            groupNanos += estimates[i];
+            if (groupNanos >= BRANCH_GROUP_NANOS) {
+                futures.add(dispatchBranches(executorService, group, remain));
+                group = null;
+                groupNanos = 0;
+            }
+        }
+        if (group != null) {
+            futures.add(dispatchBranches(executorService, group, remain));
+        }
+        nextWrappers.get(longest).task(executorService, TaskWrapper.this, remain, forParamUseWrappers, runContext);
+
+        //4.阻塞获取Future结果，注意这里没有超时时间，超时时间由全局统一控制。
+        boolean traced = runContext.isTraced();
+        long waitNanos = traced ? System.nanoTime() : 0;
+        TimeoutException dropped = null;
+        try {
+            runContext.join(BlockingKind.JOIN, executorService, CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])));
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof TimeoutException) {
+                dropped = (TimeoutException) e.getCause();
+            } else {
+                e.printStackTrace();
+            }
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+        if (traced) {
+            ExecutionTracer.record(TraceKind.JOIN_WAIT, id, runContext.getRunId(), waitNanos, System.nanoTime());
+        }
+        //分支在队列中到截止时间被丢弃，向上传给发起方，由它按整组超时处理
+        if (dropped != null) {
+            throw new CompletionException(dropped);
+        }
+        return null;
+    }
+
+    /**
+     * 把一组后继任务作为一个异步任务提交，在同一个线程上依次执行
+     */
+    private CompletableFuture<Void> dispatchBranches(ExecutorService executorService, List<TaskWrapper<?, ?>> branches, long remain) {
+        boolean traced = runContext.isTraced();
+        long submitNanos = traced ? System.nanoTime() : 0;
+        return runContext.submit(executorService, () -> {
+            for (TaskWrapper<?, ?> next : branches) {
+                if (traced) {
+                    ExecutionTracer.record(TraceKind.QUEUED, next.id, runContext.getRunId(), submitNanos, System.nanoTime());
+                }
+                next.task(executorService, TaskWrapper.this, remain, forParamUseWrappers, runContext);
+            }
+        }, () -> {
+            for (TaskWrapper<?, ?> next : branches) {
+                next.stopNow();
+            }
+        });
+    }
 
-        //3.后续有多个任务，使用CompletableFuture[]包装，有几个任务就起几个线程执行
-        CompletableFuture[] futures = new CompletableFuture[nextWrappers.size()];
+    /**
+     * 按画像估算从自己开始的分支耗时，未开启自适应扇出或样本不足时返回Long.MAX_VALUE。
+     * 由上游调用，自己可能还没有进入本次run，使用上游的runContext
+     */
+    private long branchEstimate(RunContext context) {
+        //命中缓存的子图内部只传递完成状态
+        if (subgraph != null && subgraph.isHit() && subgraph.isInternal(this)) {
+            return 0;
+        }
+        if (!context.getOptions().isAdaptiveFanout()) {
+            return Long.MAX_VALUE;
+        }
+        TaskProfile profile = TaskProfiles.peek(profileKey(context));
+        return profile == null || profile.getBranchSamples() < FANOUT_MIN_SAMPLES ? Long.MAX_VALUE : profile.getBranchNanos();
+    }
+
+    /**
+     * 过滤出需要继续调度的next：跳过已被剪掉的next，以及条件不满足的边。
+     * 没有条件边、也没有被剪掉的next时，直接返回nextWrappers，不产生新对象。
+     */
+    private List<TaskWrapper<?, ?>> activeNextWrappers() {
+        List<TaskWrapper<?, ?>> active = null;
         for (int i = 0; i < nextWrappers.size(); i++) {
-            int finalI = i;
-            futures[i] = CompletableFuture.runAsync(() -> nextWrappers.get(finalI)
-                    .task(executorService, TaskWrapper.this, remainTime - costTime, forParamUseWrappers), executorService);
+            TaskWrapper<?, ?> next = nextWrappers.get(i);
+            boolean skip = next.pruned || !next.isEdgeActive(this);
+            if (skip && active == null) {
+                active = new ArrayList<>(nextWrappers.subList(0, i));
+            } else if (!skip && active != null) {
+                active.add(next);
+            }
         }
+        return active == null ? nextWrappers : active;
+    }
 
-        //4.阻塞获取Future结果，注意这里没有超时时间，超时时间由全局统一控制。
+    /**
+     * 判断从fromWrapper到自己的边是否激活，不激活就剪掉这条边
+     */
+    private boolean isEdgeActive(TaskWrapper<?, ?> fromWrapper) {
+        DependWrapper edge = findDepend(fromWrapper);
+        if (edge == null) {
+            return true;
+        }
+        if (edge.isPruned()) {
+            return false;
+        }
+        Predicate<TaskResult<?>> condition = edge.getCondition();
+        if (condition == null) {
+            return true;
+        }
+        boolean active;
         try {
-            CompletableFuture.allOf(futures).get();
-        } catch (InterruptedException | ExecutionException e) {
+            active = condition.test(fromWrapper.getTaskResult());
+        } catch (RuntimeException e) {
+            //条件判断异常，按不激活处理
             e.printStackTrace();
+            active = false;
+        }
+        if (!active) {
+            pruneEdge(edge, fromWrapper.forParamUseWrappers, fromWrapper.runContext);
+        }
+        return active;
+    }
+
+    private DependWrapper findDepend(TaskWrapper<?, ?> fromWrapper) {
+        if (dependWrappers == null) {
+            return null;
+        }
+        for (DependWrapper dependWrapper : dependWrappers) {
+            if (dependWrapper.getDependWrapper() == fromWrapper) {
+                return dependWrapper;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 剪掉一条入边。如果这条边是must，或者所有入边都被剪掉了，自己就不可达了，
+     * 把自己和因此不可达的整个下游批量标记为跳过，不提交任何线程池任务
+     */
+    private void pruneEdge(DependWrapper edge, Map<String, TaskWrapper> forParamUseWrappers, RunContext runContext) {
+        if (!reachableAfterPruned(edge)) {
+            return;
+        }
+        Deque<TaskWrapper<?, ?>> unreachable = new ArrayDeque<>();
+        unreachable.push(this);
+        while (!unreachable.isEmpty()) {
+            TaskWrapper<?, ?> wrapper = unreachable.pop();
+            if (!wrapper.markPruned(forParamUseWrappers, runContext) || wrapper.nextWrappers == null) {
+                continue;
+            }
+            for (TaskWrapper<?, ?> next : wrapper.nextWrappers) {
+                DependWrapper nextEdge = next.findDepend(wrapper);
+                if (nextEdge != null && next.reachableAfterPruned(nextEdge)) {
+                    unreachable.push(next);
+                }
+            }
+        }
+    }
+
+    /**
+     * 标记入边被剪掉
+     *
+     * @return 自己是否因此不可达
+     */
+    private boolean reachableAfterPruned(DependWrapper edge) {
+        if (!edge.markPruned()) {
+            return false;
+        }
+        int prunedCount = PRUNED_DEPENDS.incrementAndGet(this);
+        if (joinPolicy != null) {
+            return prunedCount > dependWrappers.size() - joinPolicy.getRequired();
+        }
+        return edge.isMust() || prunedCount >= dependWrappers.size();
+    }
+
+    /**
+     * 把自己标记为被剪掉：状态置为ERROR，结果为defaultValue()和SkippedException，
+     * 和其他跳过的任务一样放入forParamUseWrappers并回调result(false)
+     */
+    private boolean markPruned(Map<String, TaskWrapper> forParamUseWrappers, RunContext runContext) {
+        if (!compareAndSetState(INIT, ERROR)) {
+            return false;
         }
+        this.forParamUseWrappers = forParamUseWrappers;
+        this.runContext = runContext;
+        forParamUseWrappers.put(id, this);
+        taskResult = defaultExResult(new SkippedException("pruned"));
+        pruned = true;
+        settle();
+        callbackResult(false);
+        return true;
+    }
+
+    public boolean isPruned() {
+        return pruned;
     }
 
     /**
      * 执行自己的job.具体的执行是在另一个线程里,但判断阻塞超时是在task线程
+     *
+     * @return 是否已交给隔离线程池执行。是时当前线程不能再调度后继，只由隔离线程池执行完后的resumeNext调度
+     */
+    private boolean fire(ExecutorService executorService, long now, long remainTime) {
+        //可缓存子图的起点，命中时整个子图已经完成
+        if (subgraph != null && subgraph.getRoot() == this
+                && subgraph.tryComplete(executorService, now, remainTime, forParamUseWrappers, runContext)) {
+            return false;
+        }
+        return taskDoJob(executorService, now, remainTime);
+    }
+
+    /**
+     * 可缓存子图命中，直接以缓存的结果完成，回调begin和result，不执行action
+     */
+    @SuppressWarnings("unchecked")
+    void completeCached(Object value, Map<String, TaskWrapper> forParamUseWrappers, RunContext runContext) {
+        this.forParamUseWrappers = forParamUseWrappers;
+        this.runContext = runContext;
+        forParamUseWrappers.put(id, this);
+        if (!compareAndSetState(INIT, FINISH)) {
+            return;
+        }
+        taskResult.setResultState(ResultState.SUCCESS);
+        taskResult.setResult((V) value);
+        settle();
+        callbackBegin();
+        callbackResult(true);
+    }
+
+    /**
+     * 结束时通知所属的子图
      */
-    private void fire() {
-        //阻塞取结果
-        taskResult = taskDoJob();
+    private void settle() {
+        if (subgraph != null) {
+            subgraph.settle();
+        }
     }
 
     /**
@@ -473,15 +1110,18 @@ public class TaskWrapper<T, V> {
      * 1.Check 重复执行，避免任务重复执行。
      * 2.CAS设置任务状态，state运行状态由 init - > working
      * 3.回调 callback.begin()
-     * 4.执行耗时操作action
+     * 4.执行耗时操作action，设置了resourceKey时，需要先获取该key的并发许可，获取失败则快速失败
      * 5.CAS设置任务状态，state运行状态由 tasking - > finsh
      * 6.回调 callback.result()
      * 7.异常处理 fastFail()。CAS设置任务状态，state运行状态由 tasking - > finsh；设置默认值、异常信息；
+     *
+     * @return 是否已交给隔离线程池执行，4-7步由隔离线程池完成
      */
-    private TaskResult<V> taskDoJob() {
+    private boolean taskDoJob(ExecutorService executorService, long now, long remainTime) {
         //1.Check重复执行
         if (!checkIsNullResult()) {
-            return taskResult;
+            countDuplicateWakeup(0);
+            return false;
         }
         try {
 
@@ -490,34 +1130,297 @@ public class TaskWrapper<T, V> {
              * 如果当前未init,说明第一次运行 则把状态init - > tasking
              */
             if (!compareAndSetState(INIT, WORKING)) {
-                return taskResult;
+                countDuplicateWakeup(0);
+                return false;
             }
+            //开启了自适应扇出时记录分支耗时的起点
+            if (runContext.getOptions().isAdaptiveFanout()) {
+                fireNanos = System.nanoTime();
+                firingThread = Thread.currentThread();
+            }
+            long beginNanos = traced() ? System.nanoTime() : 0;
 
             //3.回调begin
-            callback.begin();
+            callbackBegin();
+
+            //4.action配置了隔离线程池时，把自己交给隔离线程池执行，当前线程不等待，继续调度其他任务；
+            //隔离线程池执行完action后，后继回到编排线程池调度
+            ExecutorService isolated = resolveActionExecutor();
+            if (isolated != null && runContext.detach(isolated,
+                    () -> isolatedJob(executorService, now, remainTime, beginNanos), this::stopNow)) {
+                firingThread = null;
+                return true;
+            }
+            completeJob(isolated, executorService, now, remainTime, beginNanos);
+            return false;
+        } catch (Exception e) {
+            //7.异常处理：设置状态ERROR\EXCEPTION，结果设置为默认值
+            if (!checkIsNullResult()) {
+                return false;
+            }
+            fastFail(WORKING, e);
+            return false;
+        }
+    }
 
+    /**
+     * taskDoJob的4-7步：执行action，设置结果并回调
+     *
+     * @param isolated 不为null时，在隔离线程池中执行action，当前线程等待结果
+     */
+    private void completeJob(ExecutorService isolated, ExecutorService executorService, long now, long remainTime, long beginNanos) {
+        try {
             //4.执行耗时操作action
-            V resultValue = task.action(param, forParamUseWrappers);
+            long actionNanos = runContext.measureStart();
+            V resultValue;
+            try {
+                resultValue = resourceKey == null
+                        ? runAction(isolated, executorService, now, remainTime)
+                        : limitedAction(isolated, executorService, now, remainTime);
+            } finally {
+                runContext.recordAction(actionNanos);
+            }
 
             //5.设置Wrapper状态为FINISH
             //如果状态不是在tasking,说明别的地方已经修改了
             if (!compareAndSetState(WORKING, FINISH)) {
-                return taskResult;
+                return;
             }
 
             taskResult.setResultState(ResultState.SUCCESS);
             taskResult.setResult(resultValue);
+            saveCheckpoint();
+            settle();
             //6.回调成功
-            callback.result(true, param, taskResult);
+            callbackResult(true);
 
-            return taskResult;
+            if (beginNanos != 0) {
+                ExecutionTracer.record(TraceKind.ACTION, id, runContext.getRunId(), beginNanos, System.nanoTime());
+            }
         } catch (Exception e) {
             //7.异常处理：设置状态ERROR\EXCEPTION，结果设置为默认值
             if (!checkIsNullResult()) {
-                return taskResult;
+                return;
             }
             fastFail(WORKING, e);
-            return taskResult;
+        }
+    }
+
+    /**
+     * 在隔离线程池中执行自己的action，完成后把后继交回编排线程池调度，隔离线程池只被action本身占用
+     */
+    private void isolatedJob(ExecutorService executorService, long now, long remainTime, long beginNanos) {
+        completeJob(null, executorService, now, remainTime, beginNanos);
+        if (!runContext.detach(executorService, () -> resumeNext(executorService, now, remainTime), this::stopNext)) {
+            resumeNext(executorService, now, remainTime);
+        }
+    }
+
+    /**
+     * 隔离执行的action结束后，调度后继，融合后继由当前线程继续执行
+     */
+    private void resumeNext(ExecutorService executorService, long now, long remainTime) {
+        TaskWrapper<?, ?> next = beginNext(executorService, now, remainTime);
+        if (next != null) {
+            next.task(executorService, this, remainTime - (SystemClock.now() - now), forParamUseWrappers, runContext);
+        }
+    }
+
+    private void stopNext() {
+        if (nextWrappers != null) {
+            for (TaskWrapper<?, ?> next : nextWrappers) {
+                next.stopNow();
+            }
+        }
+    }
+
+    /**
+     * 在resourceKey对应的并发限制下执行action，并把action的耗时反馈给限制器
+     */
+    private V limitedAction(ExecutorService isolated, ExecutorService executorService, long now, long remainTime) throws Exception {
+        AdaptiveLimiter limiter = ConcurrencyLimiters.get(resourceKey);
+        if (!limiter.acquire()) {
+            throw new LimitExceededException(resourceKey);
+        }
+        long start = System.nanoTime();
+        boolean dropped = true;
+        try {
+            V resultValue = runAction(isolated, executorService, now, remainTime);
+            dropped = false;
+            return resultValue;
+        } finally {
+            limiter.release(System.nanoTime() - start, dropped);
+        }
+    }
+
+    /**
+     * 在隔离的线程池中执行action，编排线程在剩余时间内等待结果。
+     * 只在不能把节点交给隔离线程池时使用（当前线程不在本次run提交的任务中，如直接调用task()）。
+     * 等待超时或被中断（如被取消）时，取消action并中断隔离线程池中的执行线程。
+     */
+    private V isolatedAction(ExecutorService isolated, ExecutorService executorService, long now, long remainTime) throws Exception {
+        Future<V> future = isolated.submit(() -> profiledAction(executorService, now, remainTime));
+        long left = Math.max(1, remainTime - (SystemClock.now() - now));
+        long waitNanos = runContext.measureStart();
+        try {
+            return future.get(left, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            //还原action抛出的异常，和在当前线程执行时保持一致
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        } catch (TimeoutException | InterruptedException e) {
+            future.cancel(true);
+            throw e;
+        } finally {
+            runContext.recordBlocked(BlockingKind.ISOLATED, waitNanos);
+        }
+    }
+
+    /**
+     * 解析action使用的线程池，返回null表示在当前线程执行
+     */
+    private ExecutorService resolveActionExecutor() {
+        if (actionExecutor != null) {
+            return actionExecutor;
+        }
+        if (actionExecutorName != null) {
+            return ExecutorRegistry.get(actionExecutorName);
+        }
+        if (executorClass == null || executorClass == ExecutorClass.INLINE) {
+            return null;
+        }
+        if (executorClass != ExecutorClass.AUTO) {
+            return ExecutorRegistry.get(executorClass);
+        }
+        //AUTO：样本不足或耗时极短时在当前线程执行，否则按CPU占比选择IO或CPU线程池
+        TaskProfile profile = TaskProfiles.peek(profileKey(runContext));
+        if (profile == null || profile.getSamples() < AUTO_MIN_SAMPLES || profile.getWallNanos() < AUTO_INLINE_NANOS) {
+            return null;
+        }
+        return ExecutorRegistry.get(profile.getCpuRatio() < AUTO_IO_CPU_RATIO ? ExecutorClass.IO : ExecutorClass.CPU);
+    }
+
+    /**
+     * 执行action，需要画像的任务同时记录耗时和CPU耗时
+     */
+    private V profiledAction(ExecutorService executorService, long now, long remainTime) throws Exception {
+        if (executorClass != ExecutorClass.AUTO) {
+            return invokeAction(executorService, now, remainTime);
+        }
+        long wallStart = System.nanoTime();
+        long cpuStart = TaskProfiles.currentThreadCpuTime();
+        V resultValue = invokeAction(executorService, now, remainTime);
+        TaskProfile profile = TaskProfiles.get(profileKey(runContext));
+        if (profile != null) {
+            long cpuEnd = TaskProfiles.currentThreadCpuTime();
+            profile.record(System.nanoTime() - wallStart, cpuStart < 0 ? -1 : cpuEnd - cpuStart);
+        }
+        return resultValue;
+    }
+
+    /**
+     * 画像的key：模板名/任务名，任务名显式设置了id的用id，否则用ITask的类名。
+     * 不同模板的图可能复用"0"、"A"这样的id，按模板区分，互不影响
+     */
+    private String profileKey(RunContext context) {
+        String key = profileKey;
+        if (key == null) {
+            key = context.getOptions().getTemplate() + "/" + (anonymous ? task.getClass().getName() : id);
+            profileKey = key;
+        }
+        return key;
+    }
+
+    /**
+     * 执行action。动态任务不调用action，而是展开子任务，在剩余时间内并行执行并收集结果；
+     * 远程任务直接调用，等待远程结果超时时抛出TimeoutException，和其他超时一样是TIMEOUT状态
+     */
+    @SuppressWarnings("unchecked")
+    private V invokeAction(ExecutorService executorService, long now, long remainTime) throws Exception {
+        if (task instanceof IDynamicTask) {
+            return (V) DynamicExpander.expandAndJoin((IDynamicTask<T, Object>) task, param, executorService,
+                    remainTime - (SystemClock.now() - now), forParamUseWrappers, runContext);
+        }
+        if (task instanceof RemoteTask) {
+            return ((RemoteTask<T, V>) task).call(param, forParamUseWrappers);
+        }
+        return task.action(param, forParamUseWrappers);
+    }
+
+    /**
+     * 从检查点恢复上次已完成的结果，恢复成功的任务直接置为FINISH，不执行action，也不再回调
+     */
+    @SuppressWarnings("unchecked")
+    private boolean restoreCheckpoint() {
+        CheckpointStore store = runContext.getOptions().getCheckpointStore();
+        if (store == null || anonymous || getState() != INIT) {
+            return false;
+        }
+        TaskResult<?> restored = store.load(id);
+        if (restored == null || !compareAndSetState(INIT, FINISH)) {
+            return false;
+        }
+        taskResult.setResultState(ResultState.SUCCESS);
+        taskResult.setResult((V) restored.getResult());
+        settle();
+        return true;
+    }
+
+    private void saveCheckpoint() {
+        CheckpointStore store = runContext.getOptions().getCheckpointStore();
+        if (store != null && !anonymous) {
+            store.save(id, taskResult);
+        }
+    }
+
+    /**
+     * 执行action，执行期间记录当前线程，以便被取消时中断。
+     * 如果action结束时发现已被取消，等中断送达后清除中断标记，避免中断泄漏给线程池中的后续任务
+     */
+    private V runAction(ExecutorService isolated, ExecutorService executorService, long now, long remainTime) throws Exception {
+        Thread current = Thread.currentThread();
+        runner = current;
+        try {
+            return isolated == null
+                    ? profiledAction(executorService, now, remainTime)
+                    : isolatedAction(isolated, executorService, now, remainTime);
+        } finally {
+            if (!RUNNER.compareAndSet(this, current, null)) {
+                while (runner != INTERRUPTED) {
+                    Thread.yield();
+                }
+                Thread.interrupted();
+                runner = null;
+            }
+        }
+    }
+
+    /**
+     * 取消任务：未开始的不再执行，正在执行的中断执行线程，结果为defaultValue()和CancellationException
+     */
+    public void cancel() {
+        while (true) {
+            int current = getState();
+            if (current != INIT && current != WORKING) {
+                return;
+            }
+            if (fastFail(current, new CancellationException("cancelled"))) {
+                break;
+            }
+        }
+        interruptRunner();
+    }
+
+    /**
+     * 中断正在执行action的线程，action没有在执行时不做任何事
+     */
+    private void interruptRunner() {
+        Object thread = runner;
+        if (thread instanceof Thread && RUNNER.compareAndSet(this, thread, INTERRUPTING)) {
+            ((Thread) thread).interrupt();
+            runner = INTERRUPTED;
         }
     }
 
@@ -530,6 +1433,16 @@ public class TaskWrapper<T, V> {
         }
     }
 
+    /**
+     * 停止任务，interrupt为true时同时中断正在执行的action
+     */
+    public void stopNow(boolean interrupt) {
+        stopNow();
+        if (interrupt) {
+            interruptRunner();
+        }
+    }
+
     /**
      * 快速失败
      */
@@ -544,16 +1457,94 @@ public class TaskWrapper<T, V> {
             if (e == null) {
                 // 将task结果设置为超时状态
                 taskResult = defaultResult();
+            } else if (e instanceof TimeoutException) {
+                // 执行中到了截止时间（如动态任务等待子任务、隔离线程池等待action），同样是超时状态，保留异常
+                taskResult = defaultResult();
+                taskResult.setEx(e);
             } else {
                 // 将task结果设置为对应异常
                 taskResult = defaultExResult(e);
             }
         }
+        settle();
         // 回调result
-        callback.result(false, param, taskResult);
+        callbackResult(false);
+        count(EngineCounter.FAST_FAIL);
+        if (traced()) {
+            TraceKind kind = e == null || e instanceof TimeoutException ? TraceKind.TIMEOUT
+                    : e instanceof SkippedException ? TraceKind.SKIPPED : TraceKind.FAILED;
+            ExecutionTracer.mark(kind, id, runContext.getRunId());
+        }
         return true;
     }
 
+    /**
+     * 记录一次task()进入，如果是再次进入，返回进入时的纳秒时间，否则返回0
+     */
+    private long countEntry() {
+        TemplateStats stats = runContext.getStats();
+        if (stats == null || ENTRIES.incrementAndGet(this) == 1) {
+            return 0;
+        }
+        stats.increment(EngineCounter.REENTRY, statsNodeId());
+        return System.nanoTime();
+    }
+
+    /**
+     * 记录一次多余的唤醒：唤醒时任务已经开始或执行完毕
+     */
+    private void countDuplicateWakeup(long wakeupNanos) {
+        count(EngineCounter.DUPLICATE_WAKEUP);
+        countReentryNanos(wakeupNanos);
+    }
+
+    private void countReentryNanos(long wakeupNanos) {
+        RunContext context = runContext;
+        if (wakeupNanos != 0 && context != null && context.getStats() != null) {
+            context.getStats().addReentryNanos(System.nanoTime() - wakeupNanos);
+        }
+    }
+
+    private void count(EngineCounter counter) {
+        RunContext context = runContext;
+        if (context != null && context.getStats() != null) {
+            context.getStats().increment(counter, statsNodeId());
+        }
+    }
+
+    private String statsNodeId() {
+        return anonymous ? null : id;
+    }
+
+    private boolean traced() {
+        RunContext context = runContext;
+        return context != null && context.isTraced();
+    }
+
+    /**
+     * 按callbackMode回调begin，异步模式下交给CallbackDispatcher，不阻塞后继任务
+     */
+    private void callbackBegin() {
+        if (callbackMode == CallbackMode.SYNC) {
+            callback.begin();
+            return;
+        }
+        CallbackDispatcher.getDefault().dispatch(callback::begin, callbackMode);
+    }
+
+    /**
+     * 按callbackMode回调result
+     */
+    private void callbackResult(boolean success) {
+        if (callbackMode == CallbackMode.SYNC) {
+            callback.result(success, param, taskResult);
+            return;
+        }
+        T resultParam = param;
+        TaskResult<V> result = taskResult;
+        CallbackDispatcher.getDefault().dispatch(() -> callback.result(success, resultParam, result), callbackMode);
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) {
@@ -599,9 +1590,9 @@ public class TaskWrapper<T, V> {
      */
     public static class Builder<W, C> {
         /**
-         * 该wrapper的唯一标识
+         * 该wrapper的唯一标识，未设置时在build时随机生成
          */
-        private String id = UUID.randomUUID().toString();
+        private String id;
         /**
          * task将来要处理的param
          */
@@ -620,9 +1611,26 @@ public class TaskWrapper<T, V> {
          * 存储强依赖于自己的wrapper集合
          */
         private Set<TaskWrapper<?, ?>> selfIsMustSet;
+        /**
+         * 自己到后继任务的边的条件
+         */
+        private Map<TaskWrapper<?, ?>, Predicate<TaskResult<?>>> nextConditions;
 
         private boolean needCheckNextWrapperResult = true;
 
+        private String resourceKey;
+
+        private CallbackMode callbackMode = CallbackMode.SYNC;
+
+        private JoinPolicy joinPolicy;
+
+        private ExecutorService actionExecutor;
+        private String actionExecutorName;
+        private ExecutorClass executorClass;
+
+        private RemoteExecutor remoteExecutor;
+        private String remoteTaskName;
+
         public Builder<W, C> task(ITask<W, C> task) {
             this.task = task;
             return this;
@@ -645,11 +1653,69 @@ public class TaskWrapper<T, V> {
             return this;
         }
 
+        /**
+         * 标记任务使用的资源，同一个资源key上的action共享一个自适应并发限制
+         */
+        public Builder<W, C> resourceKey(String resourceKey) {
+            this.resourceKey = resourceKey;
+            return this;
+        }
+
         public Builder<W, C> callback(ICallback<W, C> callback) {
             this.callback = callback;
             return this;
         }
 
+        /**
+         * 指定action执行的线程池，用于隔离不同负载的任务
+         */
+        public Builder<W, C> executor(ExecutorService executorService) {
+            this.actionExecutor = executorService;
+            return this;
+        }
+
+        /**
+         * 指定action执行的线程池，按名字从ExecutorRegistry获取
+         */
+        public Builder<W, C> executor(String executorName) {
+            this.actionExecutorName = executorName;
+            return this;
+        }
+
+        /**
+         * 指定action执行的线程池类别，AUTO根据历史执行情况自动选择
+         */
+        public Builder<W, C> executorClass(ExecutorClass executorClass) {
+            this.executorClass = executorClass;
+            return this;
+        }
+
+        /**
+         * 标记为远程节点：action发到remoteExecutor的worker上执行，taskName是worker上注册的任务名。
+         * 参数和结果需要可序列化；没有可用worker时用task()设置的ITask在本地执行。
+         */
+        public Builder<W, C> remote(RemoteExecutor remoteExecutor, String taskName) {
+            this.remoteExecutor = remoteExecutor;
+            this.remoteTaskName = taskName;
+            return this;
+        }
+
+        /**
+         * 设置多依赖的汇合策略，如任意k个依赖成功、第一个成功的依赖。设置后忽略依赖的must字段
+         */
+        public Builder<W, C> joinPolicy(JoinPolicy joinPolicy) {
+            this.joinPolicy = joinPolicy;
+            return this;
+        }
+
+        /**
+         * 设置回调的分发方式，异步分发时回调不再阻塞后继任务的执行
+         */
+        public Builder<W, C> callbackMode(CallbackMode callbackMode) {
+            this.callbackMode = callbackMode;
+            return this;
+        }
+
         public Builder<W, C> depend(TaskWrapper<?, ?>... wrappers) {
             if (wrappers == null) {
                 return this;
@@ -666,10 +1732,19 @@ public class TaskWrapper<T, V> {
 
         // Builder.depend()：用于绑定当前TaskWrapper任务前置依赖了哪些任务，可以指定依赖项是否必须执行完成，才能执行自己。
         public Builder<W, C> depend(TaskWrapper<?, ?> wrapper, boolean isMust) {
+            return depend(wrapper, isMust, null);
+        }
+
+        /**
+         * 条件依赖：依赖任务完成后，用它的结果判断condition，不满足时这条边被剪掉。
+         * 自己因此不可达时（边是must，或所有依赖边都被剪掉），自己及下游不可达的任务都被标记为跳过，
+         * 结果为defaultValue()和SkippedException，不会执行，回调result(false)。
+         */
+        public Builder<W, C> depend(TaskWrapper<?, ?> wrapper, boolean isMust, Predicate<TaskResult<?>> condition) {
             if (wrapper == null) {
                 return this;
             }
-            DependWrapper dependWrapper = new DependWrapper(wrapper, isMust);
+            DependWrapper dependWrapper = new DependWrapper(wrapper, isMust, condition);
             if (dependWrappers == null) {
                 dependWrappers = new ArrayList<>();
             }
@@ -693,15 +1768,28 @@ public class TaskWrapper<T, V> {
         }
 
         public Builder<W, C> next(TaskWrapper<?, ?> wrapper, boolean selfIsMust) {
+            return next(wrapper, selfIsMust, null);
+        }
+
+        /**
+         * 条件后继：自己完成后，用自己的结果判断condition，不满足时不激活这个后继，语义同depend的条件依赖
+         */
+        public Builder<W, C> next(TaskWrapper<?, ?> wrapper, boolean selfIsMust, Predicate<TaskResult<?>> condition) {
             if (nextWrappers == null) {
                 nextWrappers = new ArrayList<>();
             }
             nextWrappers.add(wrapper);
+            if (condition != null) {
+                if (nextConditions == null) {
+                    nextConditions = new IdentityHashMap<>();
+                }
+                nextConditions.put(wrapper, condition);
+            }
 
             //强依赖自己
             if (selfIsMust) {
                 if (selfIsMustSet == null) {
-                    selfIsMustSet = new HashSet<>();
+                    selfIsMustSet = Collections.newSetFromMap(new IdentityHashMap<>());
                 }
                 selfIsMustSet.add(wrapper);
             }
@@ -711,8 +1799,16 @@ public class TaskWrapper<T, V> {
         // 构建过程。绑定了任务的前置依赖和后置依赖。最终形成任务的相互依赖关系。
         // 图解: https://img.haenu.cn/img/20241119132133.png
         public TaskWrapper<W, C> build() {
-            TaskWrapper<W, C> wrapper = new TaskWrapper<>(id, task, param, callback);
+            //没有设置id时才生成随机id，避免显式设置id时也付出UUID的开销
+            boolean anonymous = id == null;
+            ITask<W, C> actualTask = remoteExecutor == null ? task : new RemoteTask<>(remoteTaskName, task, remoteExecutor);
+            TaskWrapper<W, C> wrapper = new TaskWrapper<>(anonymous ? UUID.randomUUID().toString() : id, actualTask, param, callback);
             wrapper.setNeedCheckNextWrapperResult(needCheckNextWrapperResult);
+            wrapper.setResourceKey(resourceKey);
+            wrapper.setCallbackMode(callbackMode);
+            wrapper.setAnonymous(anonymous);
+            wrapper.setJoinPolicy(joinPolicy);
+            wrapper.setActionExecutor(actionExecutor, actionExecutorName, executorClass);
             // 1.添加前置依赖
             if (dependWrappers != null) {
                 for (DependWrapper dependWrapper : dependWrappers) {
@@ -729,7 +1825,8 @@ public class TaskWrapper<T, V> {
                         must = true;
                     }
                     // 2.1.后置任务的前置依赖是自己
-                    nextWrapper.addDepend(wrapper, must);
+                    Predicate<TaskResult<?>> condition = nextConditions == null ? null : nextConditions.get(nextWrapper);
+                    nextWrapper.addDepend(new DependWrapper(wrapper, must, condition));
                     // 2.2.添加后置任务
                     wrapper.addNext(nextWrapper);
                 }
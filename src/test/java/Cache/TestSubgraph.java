@@ -0,0 +1,101 @@
+package Cache;
+
+import com.haenu.platform.async.cache.SubgraphCache;
+import com.haenu.platform.async.executor.Async;
+import com.haenu.platform.async.executor.SystemClock;
+import com.haenu.platform.async.wrapper.Subgraph;
+import com.haenu.platform.async.wrapper.TaskWrapper;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 可缓存子图测试：price(起点) -> tax 组成子图，report在子图外依赖tax。
+ * 1.未命中：执行子图并写入缓存；
+ * 2.命中：子图不执行action，report照常拿到tax的结果；
+ * 3.single-flight：两个run同时执行同一个key，只有一个执行子图，另一个等待它的结果；
+ * 4.执行者失败：等待的run自己执行；
+ * 5.执行者一直不结束：租约到期后等待的run不再等它，自己执行。
+ *
+ * @author haenu
+ * @version 1.0
+ */
+public class TestSubgraph {
+    private static final AtomicInteger ACTIONS = new AtomicInteger();
+    private static final AtomicBoolean FAIL_ONCE = new AtomicBoolean();
+
+    public static void main(String[] args) throws ExecutionException, InterruptedException {
+        SubgraphCache cache = new SubgraphCache(100);
+
+        System.out.println("miss " + run(cache, "apple", 0) + " actions=" + ACTIONS.getAndSet(0));
+        System.out.println("hit " + run(cache, "apple", 0) + " actions=" + ACTIONS.getAndSet(0));
+
+        CompletableFuture<String> first = CompletableFuture.supplyAsync(() -> runQuietly(cache, "pear", 200));
+        Thread.sleep(50);
+        String second = run(cache, "pear", 200);
+        System.out.println("single-flight " + first.join() + " / " + second + " actions=" + ACTIONS.getAndSet(0));
+
+        FAIL_ONCE.set(true);
+        first = CompletableFuture.supplyAsync(() -> runQuietly(cache, "plum", 200));
+        Thread.sleep(50);
+        second = run(cache, "plum", 0);
+        System.out.println("failed load " + first.join() + " / " + second + " actions=" + ACTIONS.getAndSet(0));
+
+        //模拟一个成员一直不结束的执行者：占住key，租约100毫秒，不complete也不fail
+        cache.lookup("kiwi", new Object(), 100);
+        long start = SystemClock.now();
+        second = run(cache, "kiwi", 0);
+        System.out.println("stuck load " + second + " actions=" + ACTIONS.getAndSet(0)
+                + " expired=" + cache.getExpired() + " cost-" + (SystemClock.now() - start));
+
+        System.out.println(cache);
+        Async.shutDown();
+    }
+
+    private static String runQuietly(SubgraphCache cache, String key, long sleep) {
+        try {
+            return run(cache, key, sleep);
+        } catch (Exception e) {
+            return e.toString();
+        }
+    }
+
+    /**
+     * 构建并执行一次，返回report的结果
+     */
+    private static String run(SubgraphCache cache, String key, long sleep) throws ExecutionException, InterruptedException {
+        TaskWrapper<String, String> price = new TaskWrapper.Builder<String, String>()
+                .id("price")
+                .param(key)
+                .task((param, allWrappers) -> {
+                    ACTIONS.incrementAndGet();
+                    if (sleep > 0) {
+                        try {
+                            Thread.sleep(sleep);
+                        } catch (InterruptedException e) {
+                            throw new IllegalStateException("interrupted");
+                        }
+                    }
+                    if (FAIL_ONCE.compareAndSet(true, false)) {
+                        throw new IllegalStateException("price of " + param + " failed");
+                    }
+                    return param + "-price";
+                })
+                .build();
+        TaskWrapper<String, String> tax = new TaskWrapper.Builder<String, String>()
+                .id("tax")
+                .task((param, allWrappers) -> allWrappers.get("price").getTaskResult().getResult() + "-tax")
+                .depend(price)
+                .build();
+        TaskWrapper<String, String> report = new TaskWrapper.Builder<String, String>()
+                .id("report")
+                .task((param, allWrappers) -> "report " + allWrappers.get("tax").getTaskResult().getResult())
+                .depend(tax)
+                .build();
+        new Subgraph.Builder().cache(cache).root(price).members(tax).build();
+        Async.beginTask(1000, price);
+        return report.getTaskResult().getResultState() + " " + report.getTaskResult().getResult();
+    }
+}
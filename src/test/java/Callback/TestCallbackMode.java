@@ -0,0 +1,108 @@
+package Callback;
+
+import com.haenu.platform.async.callback.CallbackDispatcher;
+import com.haenu.platform.async.callback.CallbackMode;
+import com.haenu.platform.async.callback.ICallback;
+import com.haenu.platform.async.executor.Async;
+import com.haenu.platform.async.executor.SystemClock;
+import com.haenu.platform.async.task.TaskResult;
+import com.haenu.platform.async.wrapper.TaskWrapper;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 回调分发测试：
+ * 1.a-b-c串行，每个回调耗时20ms。SYNC时回调拖慢整条链；ASYNC_ORDERED时链不等回调，回调之后按begin、result的顺序依次执行；
+ * 2.分发队列满时，ASYNC_ORDERED的投递方等待队列空出位置，事件顺序不变；ASYNC_UNORDERED不等待，直接在投递线程上执行，先于排队的事件。
+ *
+ * @author haenu
+ * @version 1.0
+ */
+public class TestCallbackMode {
+
+    public static void main(String[] args) throws ExecutionException, InterruptedException {
+        testChain(CallbackMode.SYNC);
+        testChain(CallbackMode.ASYNC_ORDERED);
+        testQueueFull(CallbackMode.ASYNC_ORDERED);
+        testQueueFull(CallbackMode.ASYNC_UNORDERED);
+
+        Async.shutDown();
+    }
+
+    private static void testChain(CallbackMode mode) throws ExecutionException, InterruptedException {
+        List<String> events = new CopyOnWriteArrayList<>();
+        TaskWrapper<String, String> c = step("c", mode, events, null);
+        TaskWrapper<String, String> b = step("b", mode, events, c);
+        TaskWrapper<String, String> a = step("a", mode, events, b);
+        long now = SystemClock.now();
+        Async.beginTask(1000, a);
+        long cost = SystemClock.now() - now;
+        CallbackDispatcher.getDefault().drain(1, TimeUnit.SECONDS);
+        System.out.println(mode + " chain cost-" + cost + " callbacks=" + events);
+    }
+
+    private static TaskWrapper<String, String> step(String id, CallbackMode mode, List<String> events, TaskWrapper<String, String> next) {
+        TaskWrapper.Builder<String, String> builder = new TaskWrapper.Builder<String, String>()
+                .id(id)
+                .task((param, allWrappers) -> id)
+                .callbackMode(mode)
+                .callback(new ICallback<String, String>() {
+                    @Override
+                    public void begin() {
+                        slowLog(events, id + ".begin");
+                    }
+
+                    @Override
+                    public void result(boolean success, String param, TaskResult<String> taskResult) {
+                        slowLog(events, id + ".result");
+                    }
+                });
+        if (next != null) {
+            builder.next(next);
+        }
+        return builder.build();
+    }
+
+    private static void slowLog(List<String> events, String event) {
+        try {
+            Thread.sleep(20);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        events.add(event);
+    }
+
+    /**
+     * 容量为1的分发器：消费线程被第一个事件卡住，第二个事件占满队列，再投递第三个事件
+     */
+    private static void testQueueFull(CallbackMode mode) throws InterruptedException {
+        CallbackDispatcher dispatcher = new CallbackDispatcher(1, 1);
+        List<String> events = new CopyOnWriteArrayList<>();
+        CountDownLatch consuming = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        dispatcher.dispatch(() -> {
+            consuming.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            events.add("first");
+        }, mode);
+        consuming.await();
+        dispatcher.dispatch(() -> events.add("second"), mode);
+        Thread producer = new Thread(() -> dispatcher.dispatch(
+                () -> events.add("third on " + Thread.currentThread().getName()), mode), "producer");
+        producer.start();
+        producer.join(100);
+        boolean producerBlocked = producer.isAlive();
+        release.countDown();
+        producer.join();
+        dispatcher.drain(1, TimeUnit.SECONDS);
+        System.out.println(mode + " queue full: producerBlocked=" + producerBlocked + " events=" + events);
+    }
+}
@@ -0,0 +1,140 @@
+package Checkpoint;
+
+import com.haenu.platform.async.checkpoint.FileCheckpointStore;
+import com.haenu.platform.async.executor.Async;
+import com.haenu.platform.async.executor.RunOptions;
+import com.haenu.platform.async.task.ResultState;
+import com.haenu.platform.async.task.TaskResult;
+import com.haenu.platform.async.wrapper.TaskWrapper;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 检查点测试：
+ * 1.子JVM执行a-b-c，a、b完成落盘后在c中直接halt模拟崩溃；用同一个文件重新执行，a、b从检查点恢复不再执行，只执行c；
+ * 2.flush和clear并发时，clear之后重新打开文件，不会恢复出clear之前的记录。
+ *
+ * @author haenu
+ * @version 1.0
+ */
+public class TestCheckpoint {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 2 && "crash".equals(args[0])) {
+            runChain(new File(args[1]).toPath(), true);
+            return;
+        }
+        testCrashResume();
+        testClearDuringFlush();
+
+        Async.shutDown();
+    }
+
+    private static void testCrashResume() throws Exception {
+        Path file = Files.createTempFile("checkpoint", ".log");
+        try {
+            String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+            Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                    TestCheckpoint.class.getName(), "crash", file.toString())
+                    .inheritIO()
+                    .start();
+            System.out.println("crashed run exit=" + process.waitFor());
+            List<String> executed = runChain(file, false);
+            System.out.println("resumed run executed=" + executed);
+            if (!executed.equals(Collections.singletonList("c"))) {
+                throw new IllegalStateException("a and b should be restored from checkpoint: " + executed);
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * 执行a-b-c，返回实际执行了action的任务，crash为true时c等a、b落盘后halt
+     */
+    private static List<String> runChain(Path file, boolean crash) throws Exception {
+        List<String> executed = new CopyOnWriteArrayList<>();
+        TaskWrapper<String, String> a = step("a", executed, null, false);
+        TaskWrapper<String, String> b = step("b", executed, a, false);
+        TaskWrapper<String, String> c = step("c", executed, b, crash);
+        try (FileCheckpointStore store = new FileCheckpointStore(file)) {
+            RunOptions options = new RunOptions.Builder().checkpointStore(store).build();
+            Async.beginTask(3000, options, a);
+            System.out.println((crash ? "crash" : "resume") + " run c=" + c.getTaskResult().getResult());
+        }
+        return executed;
+    }
+
+    private static TaskWrapper<String, String> step(String id, List<String> executed, TaskWrapper<String, String> prev, boolean crash) {
+        TaskWrapper.Builder<String, String> builder = new TaskWrapper.Builder<String, String>()
+                .id(id)
+                .task((param, allWrappers) -> {
+                    executed.add(id);
+                    if (crash) {
+                        //等后台线程把a、b的结果落盘，然后不经任何清理直接退出
+                        try {
+                            Thread.sleep(300);
+                        } catch (InterruptedException ignored) {
+                        }
+                        Runtime.getRuntime().halt(1);
+                    }
+                    return prev == null ? id : prev.getTaskResult().getResult() + id;
+                });
+        if (prev != null) {
+            builder.depend(prev);
+        }
+        return builder.build();
+    }
+
+    /**
+     * 几个线程不停flush，同时反复save再clear，每次clear之后文件里不应残留clear之前的记录
+     */
+    private static void testClearDuringFlush() throws Exception {
+        Path file = Files.createTempFile("checkpoint", ".log");
+        try {
+            AtomicBoolean stop = new AtomicBoolean();
+            int leaked = 0;
+            List<Thread> flushers = new ArrayList<>();
+            try (FileCheckpointStore store = new FileCheckpointStore(file, 1)) {
+                for (int i = 0; i < 4; i++) {
+                    Thread flusher = new Thread(() -> {
+                        while (!stop.get()) {
+                            store.flush();
+                        }
+                    });
+                    flusher.start();
+                    flushers.add(flusher);
+                }
+                for (int round = 0; round < 500; round++) {
+                    for (int i = 0; i < 20; i++) {
+                        store.save("task-" + i, new TaskResult<>(i, ResultState.SUCCESS));
+                    }
+                    store.clear();
+                    //clear之后没有新的save，文件应一直为空
+                    Thread.sleep(1);
+                    if (Files.size(file) > 0) {
+                        leaked++;
+                        store.clear();
+                    }
+                }
+                stop.set(true);
+                for (Thread flusher : flushers) {
+                    flusher.join();
+                }
+            }
+            System.out.println("clear during flush leaked rounds=" + leaked);
+            if (leaked > 0) {
+                throw new IllegalStateException("cleared records came back after flush");
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package Compact;
+
+import com.haenu.platform.async.compact.CompactGraph;
+import com.haenu.platform.async.compact.CompactRun;
+import com.haenu.platform.async.compact.EventLoopGroup;
+import com.haenu.platform.async.executor.SystemClock;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 紧凑图测试：100层、每层1000个节点的网格，每个节点依赖上一层相邻的两个节点，结果为上游结果之和；
+ * 另外验证抛出Error的节点、一直不返回的offload节点不会让run的future和事件循环卡住，
+ * 以及投递run的同时关闭循环时，run要么正常执行要么被拒绝，不会等到超时
+ *
+ * @author haenu
+ * @version 1.0
+ */
+public class TestCompact {
+    private static final int WIDTH = 1000;
+    private static final int LAYERS = 100;
+
+    public static void main(String[] args) throws InterruptedException {
+        CompactGraph.Builder builder = new CompactGraph.Builder(WIDTH * LAYERS, 2 * WIDTH * LAYERS);
+        for (int i = 0; i < WIDTH * LAYERS; i++) {
+            builder.addNode((run, node) -> {
+                CompactGraph graph = run.getGraph();
+                long sum = graph.getDependCount(node) == 0 ? 1 : 0;
+                for (int index = graph.predecessorStart(node); index < graph.predecessorEnd(node); index++) {
+                    Long upstream = run.getResult(graph.predecessor(index));
+                    sum += upstream == null ? 0 : upstream;
+                }
+                return sum % 1_000_000_007L;
+            });
+        }
+        for (int i = WIDTH; i < WIDTH * LAYERS; i++) {
+            builder.edge(i - WIDTH, i);
+            if (i % WIDTH != 0) {
+                builder.edge(i - WIDTH - 1, i);
+            }
+        }
+        CompactGraph graph = builder.build();
+        System.out.println(graph);
+
+        ExecutorService executorService = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        for (int round = 0; round < 3; round++) {
+            long now = SystemClock.now();
+            CompactRun run = graph.newRun();
+            boolean success = run.execute(executorService, 5000);
+            System.out.println("round " + round + " success=" + success + " last=" + run.getResult(WIDTH * LAYERS - 1)
+                    + " cost-" + (SystemClock.now() - now));
+        }
+        executorService.shutdown();
+
+        //同一张图在单个事件循环上执行，不再提交线程池
+        EventLoopGroup group = new EventLoopGroup.Builder().loops(1).build();
+        for (int round = 0; round < 3; round++) {
+            long now = SystemClock.now();
+            CompactRun run = graph.newRun();
+            boolean success = run.execute(group, 5000);
+            System.out.println("loop round " + round + " success=" + success + " last=" + run.getResult(WIDTH * LAYERS - 1)
+                    + " cost-" + (SystemClock.now() - now));
+        }
+        group.shutdown();
+
+        testStuckOffload();
+        testShutdownRace();
+    }
+
+    /**
+     * 事件循环上抛出Error的节点照常失败；offload的阻塞节点一直不返回时，超时停止后run的future完成，循环可以正常退出
+     */
+    private static void testStuckOffload() throws InterruptedException {
+        CompactGraph.Builder builder = new CompactGraph.Builder();
+        int broken = builder.addNode((run, node) -> {
+            throw new AssertionError("broken node");
+        });
+        int afterBroken = builder.addNode((run, node) -> "after broken");
+        int stuck = builder.addNode((run, node) -> {
+            try {
+                Thread.sleep(2000);
+            } catch (InterruptedException e) {
+                return "stuck interrupted";
+            }
+            return "stuck";
+        });
+        int afterStuck = builder.addNode((run, node) -> "after stuck");
+        builder.edge(broken, afterBroken).edge(stuck, afterStuck).blocking(stuck);
+        CompactGraph graph = builder.build();
+
+        ExecutorService offload = Executors.newCachedThreadPool();
+        EventLoopGroup group = new EventLoopGroup.Builder().loops(1).offload(offload).build();
+        long now = SystemClock.now();
+        CompactRun run = graph.newRun();
+        boolean success = run.execute(group, 200);
+        System.out.println("stuck offload success=" + success + " done=" + run.getFuture().isDone()
+                + " broken=" + run.getError(broken) + " afterBroken=" + run.getState(afterBroken)
+                + " stuck=" + run.getError(stuck) + " afterStuck=" + run.getState(afterStuck)
+                + " cost-" + (SystemClock.now() - now));
+        group.shutdown();
+        System.out.println("loop terminated=" + group.awaitTermination(500, TimeUnit.MILLISECONDS));
+        offload.shutdownNow();
+    }
+
+    /**
+     * 另一个线程关闭循环的同时投递run，run的future总是立即完成：执行成功或以RejectedExecutionException失败
+     */
+    private static void testShutdownRace() throws InterruptedException {
+        CompactGraph.Builder builder = new CompactGraph.Builder();
+        int first = builder.addNode((run, node) -> 1);
+        int second = builder.addNode((run, node) -> 2);
+        builder.edge(first, second);
+        CompactGraph graph = builder.build();
+
+        int success = 0;
+        int rejected = 0;
+        int timeout = 0;
+        long now = SystemClock.now();
+        for (int round = 0; round < 500; round++) {
+            EventLoopGroup group = new EventLoopGroup.Builder().loops(1).spin(0, TimeUnit.NANOSECONDS).build();
+            Thread closer = new Thread(group::shutdown);
+            closer.start();
+            CompactRun run = graph.newRun();
+            if (run.execute(group, 1000)) {
+                success++;
+            } else if (run.getFuture().isCompletedExceptionally()) {
+                rejected++;
+            } else {
+                timeout++;
+            }
+            closer.join();
+            group.awaitTermination(1, TimeUnit.SECONDS);
+        }
+        System.out.println("shutdown race success=" + success + " rejected=" + rejected + " timeout=" + timeout
+                + " cost-" + (SystemClock.now() - now));
+    }
+}
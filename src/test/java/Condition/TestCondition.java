@@ -0,0 +1,72 @@
+package Condition;
+
+import com.haenu.platform.async.callback.ICallback;
+import com.haenu.platform.async.executor.Async;
+import com.haenu.platform.async.task.TaskResult;
+import com.haenu.platform.async.wrapper.TaskWrapper;
+
+import java.util.concurrent.ExecutionException;
+
+/**
+ * 条件边测试：route返回"fast"，只有fast分支的条件满足；slow和它的下游slowDetail被剪掉，
+ * 被剪掉的任务照常回调result(false)，也能在allWrappers中查到，结果为SkippedException。
+ *
+ * @author haenu
+ * @version 1.0
+ */
+public class TestCondition {
+
+    public static void main(String[] args) throws ExecutionException, InterruptedException {
+        TaskWrapper<String, String> route = new TaskWrapper.Builder<String, String>()
+                .id("route")
+                .task((param, allWrappers) -> "fast")
+                .callback(printer("route"))
+                .build();
+        TaskWrapper<String, String> fast = new TaskWrapper.Builder<String, String>()
+                .id("fast")
+                .task((param, allWrappers) -> "fast done")
+                .callback(printer("fast"))
+                .depend(route, true, result -> "fast".equals(result.getResult()))
+                .build();
+        TaskWrapper<String, String> slow = new TaskWrapper.Builder<String, String>()
+                .id("slow")
+                .task((param, allWrappers) -> "slow done")
+                .callback(printer("slow"))
+                .depend(route, true, result -> "slow".equals(result.getResult()))
+                .build();
+        TaskWrapper<String, String> slowDetail = new TaskWrapper.Builder<String, String>()
+                .id("slowDetail")
+                .task((param, allWrappers) -> "slowDetail done")
+                .callback(printer("slowDetail"))
+                .depend(slow)
+                .build();
+        new TaskWrapper.Builder<String, String>()
+                .id("report")
+                .task((param, allWrappers) -> {
+                    System.out.println("report sees slow=" + allWrappers.get("slow").getTaskResult().getEx()
+                            + " slowDetail=" + allWrappers.get("slowDetail").getTaskResult().getEx());
+                    return "report";
+                })
+                .callback(printer("report"))
+                .depend(fast, true)
+                .depend(slowDetail, false)
+                .build();
+
+        Async.beginTask(1000, route);
+        Async.shutDown();
+    }
+
+    private static ICallback<String, String> printer(String id) {
+        return new ICallback<String, String>() {
+            @Override
+            public void begin() {
+            }
+
+            @Override
+            public void result(boolean success, String param, TaskResult<String> taskResult) {
+                System.out.println("callback " + id + " success=" + success + " " + taskResult.getResultState()
+                        + (taskResult.getEx() == null ? "" : " " + taskResult.getEx()));
+            }
+        };
+    }
+}
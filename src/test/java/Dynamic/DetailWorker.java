@@ -0,0 +1,40 @@
+package Dynamic;
+
+import com.haenu.platform.async.callback.IDynamicTask;
+import com.haenu.platform.async.wrapper.TaskWrapper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 动态任务，根据上游返回的id列表，为每个id生成一个查询详情的子任务
+ */
+public class DetailWorker implements IDynamicTask<String, String> {
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<TaskWrapper<?, String>> expand(String upstreamId, Map<String, TaskWrapper> allWrappers) {
+        List<String> ids = (List<String>) allWrappers.get(upstreamId).getTaskResult().getResult();
+        List<TaskWrapper<?, String>> children = new ArrayList<>();
+        for (String id : ids) {
+            children.add(new TaskWrapper.Builder<String, String>()
+                    .task((param, wrappers) -> {
+                        try {
+                            Thread.sleep(200);
+                        } catch (InterruptedException e) {
+                            e.printStackTrace();
+                        }
+                        return "detail of " + param + "-threadName:" + Thread.currentThread().getName();
+                    })
+                    .param(id)
+                    .build());
+        }
+        return children;
+    }
+
+    @Override
+    public int parallelism() {
+        return 4;
+    }
+}
@@ -0,0 +1,32 @@
+package Dynamic;
+
+import com.haenu.platform.async.callback.ICallback;
+import com.haenu.platform.async.callback.ITask;
+import com.haenu.platform.async.executor.SystemClock;
+import com.haenu.platform.async.task.TaskResult;
+import com.haenu.platform.async.wrapper.TaskWrapper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 上游任务，返回数量在运行时才确定的id列表
+ */
+public class IdsWorker implements ITask<Integer, List<String>>, ICallback<Integer, List<String>> {
+
+    @Override
+    public List<String> action(Integer count, Map<String, TaskWrapper> allWrappers) {
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            ids.add("id-" + i);
+        }
+        return ids;
+    }
+
+    @Override
+    public void result(boolean success, Integer param, TaskResult<List<String>> workResult) {
+        System.out.println("callback ids " + success + "--" + SystemClock.now() + "----" + workResult.getResult()
+                + "-threadName:" + Thread.currentThread().getName());
+    }
+}
@@ -0,0 +1,45 @@
+package Dynamic;
+
+import com.haenu.platform.async.executor.Async;
+import com.haenu.platform.async.executor.SystemClock;
+import com.haenu.platform.async.wrapper.TaskWrapper;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * 动态展开测试：ids返回8个id，detail展开成8个子任务，并行度4，约400ms完成
+ *
+ * @author haenu
+ * @version 1.0
+ */
+public class TestDynamic {
+    public static void main(String[] args) throws ExecutionException, InterruptedException {
+        TaskWrapper<String, List<String>> detailWrapper = new TaskWrapper.Builder<String, List<String>>()
+                .id("detail")
+                .task(new DetailWorker())
+                .param("ids")
+                .build();
+
+        TaskWrapper<Integer, List<String>> idsWrapper = new TaskWrapper.Builder<Integer, List<String>>()
+                .id("ids")
+                .task(new IdsWorker())
+                .callback(new IdsWorker())
+                .param(8)
+                .next(detailWrapper)
+                .build();
+
+        long now = SystemClock.now();
+        System.out.println("begin-" + now);
+
+        Async.beginTask(1500, idsWrapper);
+
+        for (String detail : detailWrapper.getTaskResult().getResult()) {
+            System.out.println(detail);
+        }
+        System.out.println("end-" + SystemClock.now());
+        System.err.println("cost-" + (SystemClock.now() - now));
+
+        Async.shutDown();
+    }
+}
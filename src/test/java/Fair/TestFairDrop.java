@@ -0,0 +1,67 @@
+package Fair;
+
+import com.haenu.platform.async.executor.Async;
+import com.haenu.platform.async.executor.FairExecutor;
+import com.haenu.platform.async.executor.RunContext;
+import com.haenu.platform.async.executor.RunOptions;
+import com.haenu.platform.async.wrapper.TaskWrapper;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * 截止时间丢弃测试：FairExecutor只有1个线程，先被一个300ms的任务占住，
+ * 之后提交的任务排队到截止时间后被丢弃：提交返回的future以TimeoutException异常完成，
+ * 整组任务返回false，被丢弃任务的后继也被停止，不会停在INIT。
+ *
+ * @author haenu
+ * @version 1.0
+ */
+public class TestFairDrop {
+    public static void main(String[] args) throws ExecutionException, InterruptedException {
+        FairExecutor fairExecutor = new FairExecutor(1);
+        try {
+            //1.单个任务被丢弃
+            block(fairExecutor, 300);
+            RunContext runContext = new RunContext(RunOptions.defaults(), 50);
+            CompletableFuture<Void> future = runContext.submit(fairExecutor,
+                    () -> System.out.println("should not run"), () -> System.out.println("dropped"));
+            try {
+                future.get();
+                System.out.println("future completed normally");
+            } catch (ExecutionException e) {
+                System.out.println("future failed with " + e.getCause());
+            }
+
+            //2.整组任务：a排队到截止时间，b是a的后继
+            block(fairExecutor, 300);
+            TaskWrapper<String, String> b = new TaskWrapper.Builder<String, String>()
+                    .id("b")
+                    .task((param, allWrappers) -> "b")
+                    .build();
+            TaskWrapper<String, String> a = new TaskWrapper.Builder<String, String>()
+                    .id("a")
+                    .task((param, allWrappers) -> "a")
+                    .next(b)
+                    .build();
+            boolean success = Async.beginTask(100, fairExecutor, a);
+            //丢弃回调在300ms后出队时执行
+            Thread.sleep(300);
+            System.out.println("beginTask=" + success
+                    + " a=" + a.getTaskResult().getResultState()
+                    + " b=" + b.getTaskResult().getResultState());
+        } finally {
+            fairExecutor.shutdown();
+        }
+    }
+
+    private static void block(FairExecutor fairExecutor, long millis) {
+        fairExecutor.execute(() -> {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+    }
+}
@@ -0,0 +1,57 @@
+package Fair;
+
+import com.haenu.platform.async.executor.Async;
+import com.haenu.platform.async.executor.FairExecutor;
+import com.haenu.platform.async.executor.RunOptions;
+import com.haenu.platform.async.executor.RunPriority;
+import com.haenu.platform.async.wrapper.TaskWrapper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 优先级测试：FairExecutor只有1个线程，先被一个200ms的任务占住，
+ * 之后依次提交BACKGROUND、NORMAL、INTERACTIVE各3个run。线程空出来后按类别严格分级执行：
+ * INTERACTIVE先于NORMAL，NORMAL先于BACKGROUND，与提交顺序相反。
+ *
+ * @author haenu
+ * @version 1.0
+ */
+public class TestPriority {
+    public static void main(String[] args) {
+        FairExecutor fairExecutor = new FairExecutor(1);
+        try {
+            fairExecutor.execute(() -> {
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            List<String> order = new CopyOnWriteArrayList<>();
+            List<CompletableFuture<List<TaskWrapper>>> futures = new ArrayList<>();
+            RunPriority[] submitOrder = {RunPriority.BACKGROUND, RunPriority.NORMAL, RunPriority.INTERACTIVE};
+            for (RunPriority priority : submitOrder) {
+                RunOptions options = new RunOptions.Builder().priority(priority).build();
+                for (int i = 0; i < 3; i++) {
+                    String id = priority + "-" + i;
+                    TaskWrapper<String, String> wrapper = new TaskWrapper.Builder<String, String>()
+                            .id(id)
+                            .task((param, allWrappers) -> {
+                                order.add(id);
+                                return id;
+                            })
+                            .build();
+                    futures.add(Async.run(2000, fairExecutor, options, wrapper));
+                }
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+            System.out.println("execution order=" + order);
+        } finally {
+            fairExecutor.shutdown();
+            Async.shutDown();
+        }
+    }
+}
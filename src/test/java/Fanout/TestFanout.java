@@ -0,0 +1,62 @@
+package Fanout;
+
+import com.haenu.platform.async.executor.Async;
+import com.haenu.platform.async.executor.RunOptions;
+import com.haenu.platform.async.wrapper.TaskWrapper;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * 自适应扇出测试：root后面有6个很短的分支，同一个模板重复执行。
+ * 开启adaptiveFanout后，前几次样本不足，分支各自提交线程池；样本足够后全部在root的线程上执行。
+ * 另一个模板复用同样的id，画像互不影响，重新积累样本；未开启时不记录画像，始终各自提交。
+ *
+ * @author haenu
+ * @version 1.0
+ */
+public class TestFanout {
+    private static final int BRANCHES = 6;
+
+    public static void main(String[] args) throws ExecutionException, InterruptedException {
+        RunOptions fanout = new RunOptions.Builder().template("fanout").adaptiveFanout(true).build();
+        for (int round = 1; round <= 8; round++) {
+            System.out.println("fanout round " + round + " threads=" + runOnce(fanout));
+        }
+        RunOptions other = new RunOptions.Builder().template("other").adaptiveFanout(true).build();
+        System.out.println("other round 1 threads=" + runOnce(other));
+
+        RunOptions off = new RunOptions.Builder().template("fanout").build();
+        System.out.println("off round 1 threads=" + runOnce(off));
+
+        Async.shutDown();
+    }
+
+    /**
+     * 执行一次，返回执行root和各分支的不同线程数
+     */
+    private static int runOnce(RunOptions options) throws ExecutionException, InterruptedException {
+        Set<String> threads = Collections.newSetFromMap(new ConcurrentHashMap<>());
+        TaskWrapper<String, String> root = new TaskWrapper.Builder<String, String>()
+                .id("root")
+                .task((param, allWrappers) -> {
+                    threads.add(Thread.currentThread().getName());
+                    return "root";
+                })
+                .build();
+        for (int i = 0; i < BRANCHES; i++) {
+            new TaskWrapper.Builder<String, String>()
+                    .id("branch-" + i)
+                    .task((param, allWrappers) -> {
+                        threads.add(Thread.currentThread().getName());
+                        return "branch";
+                    })
+                    .depend(root)
+                    .build();
+        }
+        Async.beginTask(1000, options, root);
+        return threads.size();
+    }
+}
@@ -0,0 +1,79 @@
+package Limit;
+
+import com.haenu.platform.async.executor.Async;
+import com.haenu.platform.async.limit.AdaptiveLimiter;
+import com.haenu.platform.async.limit.ConcurrencyLimiters;
+import com.haenu.platform.async.wrapper.TaskWrapper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 自适应并发限制测试：一个起点扇出32个访问同一resourceKey的任务。
+ * 下游耗时正常（2ms）时limit保持在初始值附近；下游变慢（30ms）后，耗时超过基线的2倍，limit逐轮乘性下降，
+ * 同时执行的action数跟着变少，超出limit又等不到许可的任务快速失败；下游恢复后limit重新加性增长。
+ *
+ * @author haenu
+ * @version 1.0
+ */
+public class TestLimiter {
+    private static final String BACKEND = "backend";
+    private static final int FAN_OUT = 32;
+
+    private static volatile long latencyMillis = 2;
+
+    public static void main(String[] args) throws ExecutionException, InterruptedException {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(16, 2, 64, FAN_OUT, 200, 0.9, 2.0);
+        ConcurrencyLimiters.register(BACKEND, limiter);
+        ExecutorService executorService = Executors.newFixedThreadPool(FAN_OUT + 1);
+        try {
+            for (int round = 0; round < 15; round++) {
+                //第5轮开始下游变慢，第10轮开始恢复
+                latencyMillis = round >= 5 && round < 10 ? 30 : 2;
+                AtomicInteger peak = new AtomicInteger();
+                AtomicInteger running = new AtomicInteger();
+                TaskWrapper.Builder<String, String> root = new TaskWrapper.Builder<String, String>()
+                        .id("root")
+                        .task((param, allWrappers) -> "root");
+                List<TaskWrapper<Integer, String>> calls = new ArrayList<>();
+                for (int i = 0; i < FAN_OUT; i++) {
+                    TaskWrapper<Integer, String> call = new TaskWrapper.Builder<Integer, String>()
+                            .id("call-" + i)
+                            .resourceKey(BACKEND)
+                            .param(i)
+                            .task((param, allWrappers) -> {
+                                peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+                                try {
+                                    Thread.sleep(latencyMillis);
+                                } catch (InterruptedException e) {
+                                    Thread.currentThread().interrupt();
+                                } finally {
+                                    running.decrementAndGet();
+                                }
+                                return "ok-" + param;
+                            })
+                            .build();
+                    calls.add(call);
+                    root.next(call);
+                }
+                Async.beginTask(3000, executorService, root.build());
+                int failed = 0;
+                for (TaskWrapper<Integer, String> call : calls) {
+                    if (call.getTaskResult().getResult() == null) {
+                        failed++;
+                    }
+                }
+                System.out.println("round " + round + " latency=" + latencyMillis + "ms limit=" + limiter.getLimit()
+                        + " peakInFlight=" + peak.get() + " failed=" + failed);
+            }
+        } finally {
+            ConcurrencyLimiters.remove(BACKEND);
+            executorService.shutdown();
+            Async.shutDown();
+        }
+    }
+}
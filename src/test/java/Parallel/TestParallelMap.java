@@ -0,0 +1,78 @@
+package Parallel;
+
+import com.haenu.platform.async.executor.Async;
+import com.haenu.platform.async.executor.SystemClock;
+import com.haenu.platform.async.task.ParallelMapTask;
+import com.haenu.platform.async.wrapper.TaskWrapper;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * 数据并行测试：64个元素，每个元素耗时5ms，在并行度为4的ForkJoinPool中执行，切成16块、每块4个连续元素。
+ * 块在线程之间通过work-stealing分配，结果仍按原顺序收集；任意一个元素抛异常时整个任务失败。
+ *
+ * @author haenu
+ * @version 1.0
+ */
+public class TestParallelMap {
+
+    public static void main(String[] args) throws ExecutionException, InterruptedException {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            List<Integer> elements = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                elements.add(i);
+            }
+            Map<String, List<Integer>> byThread = new ConcurrentHashMap<>();
+            ParallelMapTask<Integer, Integer> square = new ParallelMapTask<>((element, allWrappers) -> {
+                //每个线程只写自己的列表
+                byThread.computeIfAbsent(Thread.currentThread().getName(), name -> new ArrayList<>()).add(element);
+                sleep(5);
+                return element * element;
+            }, pool);
+            TaskWrapper<Collection<Integer>, List<Integer>> map = new TaskWrapper.Builder<Collection<Integer>, List<Integer>>()
+                    .id("square")
+                    .task(square)
+                    .param(elements)
+                    .build();
+            long now = SystemClock.now();
+            Async.beginTask(3000, map);
+            System.out.println("map cost-" + (SystemClock.now() - now) + " result=" + map.getTaskResult().getResult());
+            for (Map.Entry<String, List<Integer>> entry : new TreeMap<>(byThread).entrySet()) {
+                System.out.println("  " + entry.getKey() + " handled " + entry.getValue());
+            }
+
+            ParallelMapTask<Integer, Integer> broken = new ParallelMapTask<>((element, allWrappers) -> {
+                if (element == 42) {
+                    throw new IllegalStateException("bad element " + element);
+                }
+                return element;
+            }, pool);
+            TaskWrapper<Collection<Integer>, List<Integer>> failing = new TaskWrapper.Builder<Collection<Integer>, List<Integer>>()
+                    .id("broken")
+                    .task(broken)
+                    .param(elements)
+                    .build();
+            Async.beginTask(3000, failing);
+            System.out.println("broken element: " + failing.getTaskResult());
+        } finally {
+            pool.shutdown();
+            Async.shutDown();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package Plan;
+
+import com.haenu.platform.async.callback.ICallback;
+import com.haenu.platform.async.callback.ITask;
+import com.haenu.platform.async.executor.Async;
+import com.haenu.platform.async.executor.SystemClock;
+import com.haenu.platform.async.plan.ExecutionPlan;
+import com.haenu.platform.async.plan.PlanInstance;
+import com.haenu.platform.async.plan.PlanRegistry;
+import com.haenu.platform.async.plan.TaskRegistry;
+import com.haenu.platform.async.wrapper.TaskWrapper;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * 声明式DAG测试：user、coupon并行，price依赖两者
+ *
+ * @author haenu
+ * @version 1.0
+ */
+public class TestPlan {
+    private static final String PRICING = "{\n" +
+            "  \"name\": \"pricing\",\n" +
+            "  \"nodes\": [\n" +
+            "    {\"id\": \"user\", \"task\": \"echo\", \"callback\": \"log\", \"param\": \"user-1\"},\n" +
+            "    {\"id\": \"coupon\", \"task\": \"echo\", \"callback\": \"log\", \"param\": \"coupon-9\"},\n" +
+            "    {\"id\": \"price\", \"task\": \"price\", \"callback\": \"log\", \"depends\": [\"user\", {\"id\": \"coupon\", \"must\": true}]}\n" +
+            "  ]\n" +
+            "}";
+
+    public static void main(String[] args) throws ExecutionException, InterruptedException {
+        ITask<String, String> echo = (param, allWrappers) -> {
+            try {
+                Thread.sleep(500);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+            return param;
+        };
+        ITask<String, String> price = (param, allWrappers) -> "price for " + result(allWrappers, "user")
+                + " with " + result(allWrappers, "coupon");
+        ICallback<String, String> log = (success, param, taskResult) -> System.out.println("callback " + success
+                + "--" + SystemClock.now() + "----" + taskResult.getResult() + "-threadName:" + Thread.currentThread().getName());
+
+        TaskRegistry taskRegistry = new TaskRegistry()
+                .register("echo", echo)
+                .register("price", price)
+                .registerCallback("log", log);
+        PlanRegistry planRegistry = new PlanRegistry(taskRegistry);
+        ExecutionPlan plan = planRegistry.load(PRICING);
+        System.out.println(plan + " order=" + plan.getIds());
+
+        long now = SystemClock.now();
+        PlanInstance instance = planRegistry.instantiate("pricing", Collections.singletonMap("user", "user-2"));
+        instance.run(1500);
+        System.out.println(instance.getResult("price"));
+        System.err.println("cost-" + (SystemClock.now() - now));
+
+        Async.shutDown();
+    }
+
+    private static Object result(Map<String, TaskWrapper> allWrappers, String id) {
+        return allWrappers.get(id).getTaskResult().getResult();
+    }
+}
@@ -0,0 +1,63 @@
+package Quorum;
+
+import com.haenu.platform.async.executor.Async;
+import com.haenu.platform.async.executor.SystemClock;
+import com.haenu.platform.async.task.JoinPolicy;
+import com.haenu.platform.async.wrapper.TaskWrapper;
+
+import java.util.concurrent.ExecutionException;
+
+/**
+ * k-of-n汇合测试：fast、shared、slow三个依赖，first按firstSuccess汇合，fast完成后first立即执行。
+ * slow只被first等待，被取消；shared还被report依赖，不取消，report照常拿到shared的结果。
+ *
+ * @author haenu
+ * @version 1.0
+ */
+public class TestQuorum {
+    private static long start;
+
+    public static void main(String[] args) throws ExecutionException, InterruptedException {
+        TaskWrapper<String, String> fast = sleeper("fast", 50);
+        TaskWrapper<String, String> shared = sleeper("shared", 300);
+        TaskWrapper<String, String> slow = sleeper("slow", 800);
+
+        TaskWrapper<String, String> first = new TaskWrapper.Builder<String, String>()
+                .id("first")
+                .task((param, allWrappers) -> "first at " + (SystemClock.now() - start))
+                .joinPolicy(JoinPolicy.firstSuccess())
+                .depend(fast, shared, slow)
+                .build();
+        TaskWrapper<String, String> report = new TaskWrapper.Builder<String, String>()
+                .id("report")
+                .task((param, allWrappers) -> "report of " + allWrappers.get("shared").getTaskResult().getResult())
+                .depend(shared, true)
+                .build();
+
+        start = SystemClock.now();
+        Async.beginTask(2000, fast, shared, slow);
+
+        System.out.println(fast.getTaskResult().getResult());
+        System.out.println(first.getTaskResult());
+        System.out.println("shared " + shared.getTaskResult().getResultState());
+        System.out.println("slow " + slow.getTaskResult().getResultState() + " " + slow.getTaskResult().getEx());
+        System.out.println(report.getTaskResult());
+        System.err.println("cost-" + (SystemClock.now() - start));
+
+        Async.shutDown();
+    }
+
+    private static TaskWrapper<String, String> sleeper(String id, long millis) {
+        return new TaskWrapper.Builder<String, String>()
+                .id(id)
+                .task((param, allWrappers) -> {
+                    try {
+                        Thread.sleep(millis);
+                    } catch (InterruptedException e) {
+                        return id + " interrupted";
+                    }
+                    return id + " at " + (SystemClock.now() - start);
+                })
+                .build();
+    }
+}
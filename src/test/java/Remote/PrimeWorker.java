@@ -0,0 +1,39 @@
+package Remote;
+
+import com.haenu.platform.async.callback.ITask;
+import com.haenu.platform.async.plan.TaskRegistry;
+import com.haenu.platform.async.wrapper.TaskWrapper;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * CPU密集的任务：统计[0, n)中的素数个数，结果带上执行它的进程
+ * 同时作为worker JVM的注册类，把自己注册为"primes"
+ */
+public class PrimeWorker implements ITask<Integer, String>, Consumer<TaskRegistry> {
+
+    @Override
+    public String action(Integer n, Map<String, TaskWrapper> allWrappers) {
+        int count = 0;
+        for (int i = 2; i < n; i++) {
+            boolean prime = true;
+            for (int j = 2; (long) j * j <= i; j++) {
+                if (i % j == 0) {
+                    prime = false;
+                    break;
+                }
+            }
+            if (prime) {
+                count++;
+            }
+        }
+        return "primes(" + n + ")=" + count + " on " + ManagementFactory.getRuntimeMXBean().getName();
+    }
+
+    @Override
+    public void accept(TaskRegistry taskRegistry) {
+        taskRegistry.register("primes", this);
+    }
+}
@@ -0,0 +1,98 @@
+package Remote;
+
+import com.haenu.platform.async.executor.Async;
+import com.haenu.platform.async.executor.SystemClock;
+import com.haenu.platform.async.remote.RemoteExecutor;
+import com.haenu.platform.async.remote.RemoteWorkerServer;
+import com.haenu.platform.async.remote.SocketTransport;
+import com.haenu.platform.async.wrapper.TaskWrapper;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 远程执行测试：启动2个worker JVM，4个素数任务分到两个worker上执行，sum依赖这4个任务在本地汇总。
+ * 之后杀掉一个worker，任务转到另一个worker；两个都杀掉后，任务在本地执行。每次sum都应有结果，否则抛异常退出。
+ *
+ * @author haenu
+ * @version 1.0
+ */
+public class TestRemote {
+    private static final int[] PORTS = {17101, 17102};
+
+    public static void main(String[] args) throws Exception {
+        List<Process> workers = new ArrayList<>();
+        RemoteExecutor.Builder builder = new RemoteExecutor.Builder().callTimeout(5000);
+        for (int port : PORTS) {
+            workers.add(startWorker(port));
+            builder.worker(new SocketTransport("127.0.0.1", port));
+        }
+        RemoteExecutor remoteExecutor = builder.build();
+        try {
+            runGraph(remoteExecutor);
+            workers.get(0).destroy();
+            workers.get(0).waitFor();
+            System.out.println("---- worker 1 killed");
+            runGraph(remoteExecutor);
+            workers.get(1).destroy();
+            workers.get(1).waitFor();
+            System.out.println("---- worker 2 killed");
+            runGraph(remoteExecutor);
+        } finally {
+            for (Process worker : workers) {
+                worker.destroyForcibly();
+            }
+            remoteExecutor.close();
+            Async.shutDown();
+        }
+    }
+
+    private static void runGraph(RemoteExecutor remoteExecutor) throws Exception {
+        List<TaskWrapper<Integer, String>> primes = new ArrayList<>();
+        TaskWrapper.Builder<String, String> sumBuilder = new TaskWrapper.Builder<String, String>()
+                .id("sum")
+                .task((param, allWrappers) -> {
+                    StringBuilder sb = new StringBuilder();
+                    for (int i = 0; i < 4; i++) {
+                        sb.append("\n  ").append(allWrappers.get("primes-" + i).getTaskResult().getResult());
+                    }
+                    return sb.toString();
+                });
+        for (int i = 0; i < 4; i++) {
+            TaskWrapper<Integer, String> wrapper = new TaskWrapper.Builder<Integer, String>()
+                    .id("primes-" + i)
+                    .task(new PrimeWorker())
+                    .remote(remoteExecutor, "primes")
+                    .param(2_000_000 + i)
+                    .build();
+            primes.add(wrapper);
+            sumBuilder.depend(wrapper);
+        }
+        TaskWrapper<String, String> sum = sumBuilder.build();
+
+        long now = SystemClock.now();
+        Async.beginTask(10000, primes.toArray(new TaskWrapper[0]));
+        System.out.println(sum.getTaskResult().getResult() + "\ncost-" + (SystemClock.now() - now));
+        //杀掉worker后请求应转到其他worker或本地执行，sum不应为空
+        if (sum.getTaskResult().getResult() == null) {
+            throw new IllegalStateException("failover failed: " + sum.getTaskResult());
+        }
+    }
+
+    private static Process startWorker(int port) throws Exception {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                RemoteWorkerServer.class.getName(), String.valueOf(port), PrimeWorker.class.getName(), "2")
+                .redirectErrorStream(true)
+                .start();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+        String line = reader.readLine();
+        if (line == null || !line.startsWith("ready")) {
+            throw new IllegalStateException("worker on port " + port + " failed to start: " + line);
+        }
+        return process;
+    }
+}
@@ -0,0 +1,72 @@
+package Run;
+
+import com.haenu.platform.async.executor.Async;
+import com.haenu.platform.async.executor.SystemClock;
+import com.haenu.platform.async.wrapper.TaskWrapper;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * 非阻塞执行测试：Async.run立即返回future，调用线程不等待。
+ * 1.a、b并行，c依赖两者，全部完成时future以传入的起点完成，结果在回调里读取；
+ * 2.超时的run：到达超时时间时future以TimeoutException异常完成，未完成的任务被停止。
+ *
+ * @author haenu
+ * @version 1.0
+ */
+public class TestRun {
+
+    public static void main(String[] args) throws InterruptedException {
+        //预热，排除第一次调用时的类加载
+        Async.run(1000, sleeper("warmup", 0, null)).join();
+
+        TaskWrapper<String, String> c = new TaskWrapper.Builder<String, String>()
+                .id("c")
+                .task((param, allWrappers) -> allWrappers.get("a").getTaskResult().getResult() + "+"
+                        + allWrappers.get("b").getTaskResult().getResult())
+                .build();
+        TaskWrapper<String, String> a = sleeper("a", 100, c);
+        TaskWrapper<String, String> b = sleeper("b", 150, c);
+        long now = SystemClock.now();
+        CompletableFuture<List<TaskWrapper>> completed = Async.run(1000, a, b);
+        System.out.println("run returned after " + (SystemClock.now() - now) + "ms, done=" + completed.isDone());
+        CompletableFuture<Void> printed = completed.thenAccept(roots ->
+                System.out.println("completed after " + (SystemClock.now() - now) + "ms roots=" + roots.size()
+                        + " c=" + c.getTaskResult().getResult()));
+
+        long timeoutStart = SystemClock.now();
+        TaskWrapper<String, String> slow = sleeper("slow", 2000, null);
+        CompletableFuture<List<TaskWrapper>> timedOut = Async.run(200, slow);
+        CompletableFuture<Void> failed = timedOut.handle((roots, ex) -> {
+            System.out.println("timed out after " + (SystemClock.now() - timeoutStart) + "ms ex=" + ex
+                    + " slow=" + slow.getTaskResult().getResultState());
+            return null;
+        });
+
+        try {
+            CompletableFuture.allOf(printed, failed).get();
+        } catch (ExecutionException e) {
+            e.printStackTrace();
+        }
+        Async.shutDown();
+    }
+
+    private static TaskWrapper<String, String> sleeper(String id, long millis, TaskWrapper<String, String> next) {
+        TaskWrapper.Builder<String, String> builder = new TaskWrapper.Builder<String, String>()
+                .id(id)
+                .task((param, allWrappers) -> {
+                    try {
+                        Thread.sleep(millis);
+                    } catch (InterruptedException e) {
+                        return id + " interrupted";
+                    }
+                    return id;
+                });
+        if (next != null) {
+            builder.next(next);
+        }
+        return builder.build();
+    }
+}
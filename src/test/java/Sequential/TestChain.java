@@ -0,0 +1,159 @@
+package Sequential;
+
+import com.haenu.platform.async.executor.Async;
+import com.haenu.platform.async.executor.SystemClock;
+import com.haenu.platform.async.task.JoinPolicy;
+import com.haenu.platform.async.wrapper.TaskWrapper;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * 串行链融合测试：
+ * 1.10万个节点的长链，在一个线程上依次执行，不会栈溢出；
+ * 2.链的下游已经被其他依赖触发执行时，链上needCheckNextWrapperResult的节点跳过，关闭检查的节点照常执行；
+ * 3.链建好后又给链上节点添加依赖、设置joinPolicy，不再融合，按新的依赖关系执行。
+ *
+ * @author haenu
+ * @version 1.0
+ */
+public class TestChain {
+
+    public static void main(String[] args) throws ExecutionException, InterruptedException {
+        testLongChain();
+        testNeedCheckNext(true);
+        testNeedCheckNext(false);
+        testRelink();
+        testRelinkJoinPolicy();
+
+        Async.shutDown();
+    }
+
+    private static void testLongChain() throws ExecutionException, InterruptedException {
+        int length = 100000;
+        Set<String> threads = Collections.newSetFromMap(new ConcurrentHashMap<>());
+        TaskWrapper<Integer, Integer> head = counter(threads, null);
+        TaskWrapper<Integer, Integer> tail = head;
+        for (int i = 1; i < length; i++) {
+            tail = counter(threads, tail);
+        }
+        long start = SystemClock.now();
+        boolean success = Async.beginTask(30000, head);
+        System.out.println("long chain success=" + success + " last=" + tail.getTaskResult().getResult()
+                + " threads=" + threads.size() + " cost-" + (SystemClock.now() - start));
+    }
+
+    /**
+     * 每个节点把上游的结果加1，头节点返回1
+     */
+    private static TaskWrapper<Integer, Integer> counter(Set<String> threads, TaskWrapper<Integer, Integer> prev) {
+        TaskWrapper.Builder<Integer, Integer> builder = new TaskWrapper.Builder<Integer, Integer>()
+                .task((param, allWrappers) -> {
+                    threads.add(Thread.currentThread().getName());
+                    return prev == null ? 1 : prev.getTaskResult().getResult() + 1;
+                });
+        if (prev != null) {
+            builder.depend(prev);
+        }
+        return builder.build();
+    }
+
+    /**
+     * a-b-c融合成链，c的后继report还依赖fast（非must的c），fast先完成并执行了report，
+     * 等a执行完，b、c检查到下游已开始执行
+     */
+    private static void testNeedCheckNext(boolean needCheck) throws ExecutionException, InterruptedException {
+        TaskWrapper<String, String> a = sleeper("a", 100);
+        TaskWrapper<String, String> b = new TaskWrapper.Builder<String, String>()
+                .id("b")
+                .task((param, allWrappers) -> "b")
+                .needCheckNextWrapperResult(needCheck)
+                .depend(a)
+                .build();
+        TaskWrapper<String, String> c = new TaskWrapper.Builder<String, String>()
+                .id("c")
+                .task((param, allWrappers) -> "c")
+                .needCheckNextWrapperResult(needCheck)
+                .depend(b)
+                .build();
+        TaskWrapper<String, String> fast = sleeper("fast", 10);
+        TaskWrapper<String, String> report = new TaskWrapper.Builder<String, String>()
+                .id("report")
+                .task((param, allWrappers) -> "report")
+                .depend(c, false)
+                .depend(fast, true)
+                .build();
+        Async.beginTask(1000, a, fast);
+        System.out.println("needCheck=" + needCheck
+                + " a=" + a.getTaskResult().getResultState()
+                + " b=" + b.getTaskResult().getResultState()
+                + " c=" + c.getTaskResult().getResultState()
+                + " report=" + report.getTaskResult().getResultState());
+    }
+
+    /**
+     * a-b先融合成链，再由c的next给b添加一个must依赖，b要等c完成才执行
+     */
+    private static void testRelink() throws ExecutionException, InterruptedException {
+        TaskWrapper<String, String> a = sleeper("a", 10);
+        TaskWrapper<String, String> b = new TaskWrapper.Builder<String, String>()
+                .id("b")
+                .task((param, allWrappers) -> "b after " + allWrappers.get("a").getTaskResult().getResult()
+                        + ", " + allWrappers.get("c").getTaskResult().getResult())
+                .depend(a)
+                .build();
+        TaskWrapper<String, String> c = new TaskWrapper.Builder<String, String>()
+                .id("c")
+                .task((param, allWrappers) -> {
+                    try {
+                        Thread.sleep(100);
+                    } catch (InterruptedException e) {
+                        return "c interrupted";
+                    }
+                    return "c";
+                })
+                .next(b, true)
+                .build();
+        Async.beginTask(1000, a, c);
+        System.out.println("relink " + b.getTaskResult());
+    }
+
+    /**
+     * b只依赖a时设置了firstSuccess，之后c-c2也成为b的依赖，b在c2先完成后立即执行，a只被b等待，被取消
+     */
+    private static void testRelinkJoinPolicy() throws ExecutionException, InterruptedException {
+        long start = SystemClock.now();
+        TaskWrapper<String, String> a = sleeper("a", 300);
+        TaskWrapper<String, String> b = new TaskWrapper.Builder<String, String>()
+                .id("b")
+                .task((param, allWrappers) -> "b at " + (SystemClock.now() - start))
+                .joinPolicy(JoinPolicy.firstSuccess())
+                .depend(a)
+                .build();
+        TaskWrapper<String, String> c = sleeper("c", 20);
+        new TaskWrapper.Builder<String, String>()
+                .id("c2")
+                .task((param, allWrappers) -> "c2")
+                .depend(c)
+                .next(b)
+                .build();
+        Async.beginTask(1000, a, c);
+        System.out.println("relink joinPolicy " + b.getTaskResult() + " a=" + a.getTaskResult().getResultState());
+    }
+
+    private static TaskWrapper<String, String> sleeper(String id, long millis) {
+        return new TaskWrapper.Builder<String, String>()
+                .id(id)
+                .task((param, allWrappers) -> {
+                    try {
+                        Thread.sleep(millis);
+                    } catch (InterruptedException e) {
+                        return id + " interrupted";
+                    }
+                    return id;
+                })
+                .build();
+    }
+}